@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2016 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ * 
+ * This file is part of KONNEKTING DeviceConfig.
+ *
+ *   KONNEKTING DeviceConfig is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   KONNEKTING DeviceConfig is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with KONNEKTING DeviceConfig.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.benchmarks;
+
+import de.konnekting.deviceconfig.DeviceConfigContainer;
+import de.konnekting.deviceconfig.Program;
+import de.konnekting.mgnt.simulation.SimulatedDevice;
+import de.konnekting.mgnt.simulation.VirtualBus;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * End-to-end commissioning benchmark: programs synthetic device
+ * configurations with {@link Program#program} against simulated devices on a
+ * {@link VirtualBus}, and reports devices/hour, telegrams/s, p50/p99 round
+ * trip time per telegram and the time the bus was idle.
+ * <p>
+ * Arguments are given as <code>key=value</code>:
+ * <ul>
+ * <li><code>params</code> number of parameters, 10..255</li>
+ * <li><code>comobjects</code> number of comobjects, 0..255</li>
+ * <li><code>devices</code> number of devices to program, default 5</li>
+ * <li><code>latency</code> answer latency of the devices in ms, default
+ * 20</li>
+ * <li><code>jitter</code> max. additional random latency in ms, default
+ * 0</li>
+ * <li><code>window</code> number of unacknowledged writes, default
+ * {@link Program#DEFAULT_WINDOW_SIZE}</li>
+ * <li><code>faststart</code> 1 to start programming with the fast start,
+ * default 0</li>
+ * </ul>
+ * Without <code>params</code> and <code>comobjects</code>, a small, medium
+ * and maximum sized configuration is run.
+ *
+ * @author achristian
+ */
+public class CommissioningBenchmark {
+
+    private static final int MANUFACTURER_ID = 0xDEAD;
+    private static final short DEVICE_ID = 0xBE;
+    private static final short REVISION = 0xAF;
+
+    private static final int[][] DEFAULT_SIZES = {{10, 10}, {64, 32}, {255, 255}};
+
+    private int devices = 5;
+    private int latency = 20;
+    private int jitter = 0;
+    private int windowSize = Program.DEFAULT_WINDOW_SIZE;
+    private boolean fastStart;
+
+    public static void main(String[] args) throws Exception {
+        CommissioningBenchmark benchmark = new CommissioningBenchmark();
+        int params = -1;
+        int comObjects = -1;
+        for (String arg : args) {
+            String[] keyValue = arg.split("=", 2);
+            if (keyValue.length != 2) {
+                throw new IllegalArgumentException("Expected key=value, got '" + arg + "'");
+            }
+            int value = Integer.parseInt(keyValue[1]);
+            switch (keyValue[0]) {
+                case "params":
+                    params = value;
+                    break;
+                case "comobjects":
+                    comObjects = value;
+                    break;
+                case "devices":
+                    benchmark.devices = value;
+                    break;
+                case "latency":
+                    benchmark.latency = value;
+                    break;
+                case "jitter":
+                    benchmark.jitter = value;
+                    break;
+                case "window":
+                    benchmark.windowSize = value;
+                    break;
+                case "faststart":
+                    benchmark.fastStart = value != 0;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument '" + keyValue[0] + "'");
+            }
+        }
+
+        System.out.println(String.format("%6s %6s %7s %8s %12s %10s %9s %9s %9s",
+            "params", "coms", "devices", "seconds", "devices/h", "telegr/s", "p50[ms]", "p99[ms]", "idle[s]"));
+        if (params < 0 && comObjects < 0) {
+            for (int[] size : DEFAULT_SIZES) {
+                benchmark.run(size[0], size[1]);
+            }
+        } else {
+            benchmark.run(params < 0 ? 10 : params, comObjects < 0 ? 0 : comObjects);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Programs all devices with the given configuration size and prints one
+     * result line
+     *
+     * @param params number of parameters
+     * @param comObjects number of comobjects
+     * @throws Exception
+     */
+    void run(int params, int comObjects) throws Exception {
+        if (params < 10 || params > 255) {
+            throw new IllegalArgumentException("params must be 10..255");
+        }
+        if (comObjects < 0 || comObjects > 255) {
+            throw new IllegalArgumentException("comobjects must be 0..255");
+        }
+
+        File dir = Files.createTempDirectory("konnekting-benchmark").toFile();
+        VirtualBus bus = new VirtualBus(0);
+        try {
+            // parse configurations up front, only programming is measured
+            List<DeviceConfigContainer> configs = new ArrayList<>();
+            for (int i = 1; i <= devices; i++) {
+                String individualAddress = "1.1." + i;
+                File file = new File(dir, "device" + i + ".kdevice.xml");
+                writeConfiguration(file, individualAddress, params, comObjects);
+                configs.add(new DeviceConfigContainer(file));
+
+                SimulatedDevice device = new SimulatedDevice(individualAddress, MANUFACTURER_ID, DEVICE_ID, REVISION, params, comObjects);
+                device.setLatency(latency, jitter);
+                bus.addDevice(device);
+            }
+
+            TimingTransport timing = new TimingTransport(bus);
+            long start = System.nanoTime();
+            try (Program program = new Program(timing)) {
+                program.setWindowSize(windowSize);
+                program.setFastStart(fastStart);
+                for (DeviceConfigContainer config : configs) {
+                    program.program(config, false, comObjects > 0, true);
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+
+            double seconds = elapsed / 1e9;
+            System.out.println(String.format("%6d %6d %7d %8.2f %12.1f %10.1f %9.2f %9.2f %9.2f",
+                params, comObjects, devices, seconds,
+                devices * 3600 / seconds,
+                (timing.getSentCount() + timing.getReceivedCount()) / seconds,
+                timing.getRoundTripPercentile(50) / 1e6,
+                timing.getRoundTripPercentile(99) / 1e6,
+                timing.getIdleNanos() / 1e9));
+        } finally {
+            bus.shutdown();
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    /**
+     * Writes a synthetic device description with configuration. Parameters
+     * are 1 byte values, comobjects get consecutive group addresses.
+     */
+    private static void writeConfiguration(File file, String individualAddress, int params, int comObjects) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))) {
+            out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            out.println("<KonnektingDevice xmlns:xsi='http://www.w3.org/2001/XMLSchema-instance'");
+            out.println("                  xmlns='http://konnekting.de/xml/KonnektingDevice/v0'");
+            out.println("                  xsi:schemaLocation='http://konnekting.de/xml/KonnektingDevice/v0/KonnektingDeviceV0.xsd'>");
+            out.println("    <Device ManufacturerId=\"" + MANUFACTURER_ID + "\" DeviceId=\"" + DEVICE_ID + "\" Revision=\"" + REVISION + "\">");
+            out.println("        <ManufacturerName>KONNEKTING</ManufacturerName>");
+            out.println("        <DeviceName>Benchmark</DeviceName>");
+            out.println("        <Parameters>");
+            out.println("            <Group name=\"Benchmark\">");
+            for (int id = 0; id < params; id++) {
+                out.println("                <Parameter Id=\"" + id + "\">");
+                out.println("                    <Description>Parameter #" + id + "</Description>");
+                out.println("                    <Value Type=\"uint8\" Default=\"00\" Options=\"\"/>");
+                out.println("                </Parameter>");
+            }
+            out.println("            </Group>");
+            out.println("        </Parameters>");
+            out.println("        <CommObjects>");
+            for (int id = 0; id < comObjects; id++) {
+                out.println("            <CommObject Id=\"" + id + "\">");
+                out.println("                <Name>KO #" + id + "</Name>");
+                out.println("                <Function>Function #" + id + "</Function>");
+                out.println("                <DataPointType>1</DataPointType>");
+                out.println("            </CommObject>");
+            }
+            out.println("        </CommObjects>");
+            out.println("    </Device>");
+            out.println("    <Configuration ManufacturerId=\"" + MANUFACTURER_ID + "\" DeviceId=\"" + DEVICE_ID + "\" Revision=\"" + REVISION + "\">");
+            out.println("        <IndividualAddress Address=\"" + individualAddress + "\" Description=\"Benchmark " + individualAddress + "\"/>");
+            out.println("        <CommObjectConfigurations>");
+            for (int id = 0; id < comObjects; id++) {
+                out.println("            <CommObjectConfiguration Id=\"" + id + "\" GroupAddress=\"1/" + (id >> 8) + "/" + (id & 0xff) + "\" Description=\"GA #" + id + "\" Flags=\"0\"/>");
+            }
+            out.println("        </CommObjectConfigurations>");
+            out.println("        <ParameterConfigurations>");
+            for (int id = 0; id < params; id++) {
+                out.println("            <ParameterConfiguration Id=\"" + id + "\" Value=\"" + String.format("%02X", id) + "\"/>");
+            }
+            out.println("        </ParameterConfigurations>");
+            out.println("    </Configuration>");
+            out.println("</KonnektingDevice>");
+        }
+    }
+
+}
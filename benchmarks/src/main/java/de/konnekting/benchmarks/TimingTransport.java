@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2016 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ * 
+ * This file is part of KONNEKTING DeviceConfig.
+ *
+ *   KONNEKTING DeviceConfig is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   KONNEKTING DeviceConfig is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with KONNEKTING DeviceConfig.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.benchmarks;
+
+import de.konnekting.mgnt.protocol0x00.TelegramTransport;
+import de.root1.slicknx.KnxException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import static de.konnekting.mgnt.protocol0x00.ProgProtocol0x00.*;
+
+/**
+ * Transport decorator which measures the time from sending a request until
+ * its answer arrives, and the time the bus is idle, i.e. no request is waiting
+ * for an answer. Answers are matched to the oldest request expecting this
+ * answer type.
+ *
+ * @author achristian
+ */
+class TimingTransport implements TelegramTransport {
+
+    private static final int NO_ANSWER = -1;
+
+    private final TelegramTransport transport;
+    private final Deque<Long>[] pending;
+    private long[] roundTrips = new long[1024];
+    private int roundTripCount;
+    private int outstanding;
+    private long idleSince;
+    private long idleNanos;
+    private long sent;
+    private long received;
+
+    @SuppressWarnings("unchecked")
+    TimingTransport(TelegramTransport transport) {
+        this.transport = transport;
+        pending = new Deque[256];
+        for (int i = 0; i < pending.length; i++) {
+            pending[i] = new ArrayDeque<>();
+        }
+        idleSince = System.nanoTime();
+    }
+
+    @Override
+    public void open(final Receiver receiver) {
+        transport.open(telegram -> {
+            answered(telegram);
+            receiver.received(telegram);
+        });
+    }
+
+    @Override
+    public void close() {
+        transport.close();
+    }
+
+    @Override
+    public void send(byte[] telegram) throws KnxException {
+        sending(telegram);
+        transport.send(telegram);
+    }
+
+    private synchronized void sending(byte[] telegram) {
+        sent++;
+        int answerType = getAnswerType(telegram[1]);
+        if (answerType == NO_ANSWER) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (outstanding++ == 0) {
+            idleNanos += now - idleSince;
+        }
+        pending[answerType].add(now);
+    }
+
+    private synchronized void answered(byte[] telegram) {
+        if (telegram.length < 2 || getAnswerType(telegram[1]) != NO_ANSWER) {
+            // too short, or an echo of our own request
+            return;
+        }
+        received++;
+        Long sentAt = pending[telegram[1] & 0xff].poll();
+        if (sentAt == null) {
+            // duplicate or additional answer to a broadcast
+            return;
+        }
+        long now = System.nanoTime();
+        if (roundTripCount == roundTrips.length) {
+            roundTrips = Arrays.copyOf(roundTrips, roundTrips.length * 2);
+        }
+        roundTrips[roundTripCount++] = now - sentAt;
+        if (--outstanding == 0) {
+            idleSince = now;
+        }
+    }
+
+    private static int getAnswerType(byte requestType) {
+        switch (requestType) {
+            case MSGTYPE_WRITE_PROGRAMMING_MODE:
+            case MSGTYPE_WRITE_INDIVIDUAL_ADDRESS:
+            case MSGTYPE_WRITE_PARAMETER:
+            case MSGTYPE_WRITE_COM_OBJECT:
+                return MSGTYPE_ACK;
+            case MSGTYPE_READ_DEVICE_INFO:
+                return MSGTYPE_ANSWER_DEVICE_INFO;
+            case MSGTYPE_READ_PROGRAMMING_MODE:
+                return MSGTYPE_ANSWER_PROGRAMMING_MODE;
+            case MSGTYPE_READ_INDIVIDUAL_ADDRESS:
+                return MSGTYPE_ANSWER_INDIVIDUAL_ADDRESS;
+            case MSGTYPE_READ_PARAMETER:
+                return MSGTYPE_ANSWER_PARAMETER;
+            case MSGTYPE_READ_COM_OBJECT:
+                return MSGTYPE_ANSWER_COM_OBJECT;
+            default:
+                // restart, answers and unknown types
+                return NO_ANSWER;
+        }
+    }
+
+    /**
+     * @return number of telegrams sent
+     */
+    synchronized long getSentCount() {
+        return sent;
+    }
+
+    /**
+     * @return number of answers received
+     */
+    synchronized long getReceivedCount() {
+        return received;
+    }
+
+    /**
+     * @return nanoseconds no request has been waiting for an answer, up to
+     * now
+     */
+    synchronized long getIdleNanos() {
+        return outstanding == 0 ? idleNanos + System.nanoTime() - idleSince : idleNanos;
+    }
+
+    /**
+     * @param percentile 0..100
+     * @return round trip time in nanoseconds, 0 if nothing measured
+     */
+    synchronized long getRoundTripPercentile(double percentile) {
+        if (roundTripCount == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(roundTrips, roundTripCount);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+}
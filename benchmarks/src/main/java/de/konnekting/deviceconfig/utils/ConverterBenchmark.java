@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2016 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ * 
+ * This file is part of KONNEKTING DeviceConfig.
+ *
+ *   KONNEKTING DeviceConfig is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   KONNEKTING DeviceConfig is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with KONNEKTING DeviceConfig.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.deviceconfig.utils;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Typed value converters {@link Bytes2ReadableValue} and
+ * {@link ReadableValue2Bytes}
+ *
+ * @author achristian
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConverterBenchmark {
+
+    private final Bytes2ReadableValue b2r = new Bytes2ReadableValue();
+    private final ReadableValue2Bytes r2b = new ReadableValue2Bytes();
+
+    private byte[] int8 = {(byte) 0x80};
+    private byte[] int16 = {(byte) 0x80, 0x01};
+    private byte[] int32 = {(byte) 0x80, 0x01, 0x02, 0x03};
+    private byte[] float32 = {0x40, 0x49, 0x0F, (byte) 0xDB};
+
+    private byte int8Value = -128;
+    private short uint8Value = 255;
+    private short int16Value = -32767;
+    private int uint16Value = 65535;
+    private int int32Value = -2147417597;
+    private long uint32Value = 4294967295L;
+    private float float32Value = 3.1415927f;
+
+    @Benchmark
+    public byte bytesToINT8() {
+        return b2r.convertINT8(int8);
+    }
+
+    @Benchmark
+    public short bytesToUINT8() {
+        return b2r.convertUINT8(int8);
+    }
+
+    @Benchmark
+    public short bytesToINT16() {
+        return b2r.convertINT16(int16);
+    }
+
+    @Benchmark
+    public int bytesToUINT16() {
+        return b2r.convertUINT16(int16);
+    }
+
+    @Benchmark
+    public int bytesToINT32() {
+        return b2r.convertINT32(int32);
+    }
+
+    @Benchmark
+    public long bytesToUINT32() {
+        return b2r.convertUINT32(int32);
+    }
+
+    @Benchmark
+    public float bytesToFLOAT32() {
+        return b2r.convertFLOAT32(float32);
+    }
+
+    @Benchmark
+    public byte[] int8ToBytes() {
+        return r2b.convertINT8(int8Value);
+    }
+
+    @Benchmark
+    public byte[] uint8ToBytes() {
+        return r2b.convertUINT8(uint8Value);
+    }
+
+    @Benchmark
+    public byte[] int16ToBytes() {
+        return r2b.convertINT16(int16Value);
+    }
+
+    @Benchmark
+    public byte[] uint16ToBytes() {
+        return r2b.convertUINT16(uint16Value);
+    }
+
+    @Benchmark
+    public byte[] int32ToBytes() {
+        return r2b.convertINT32(int32Value);
+    }
+
+    @Benchmark
+    public byte[] uint32ToBytes() {
+        return r2b.convertUINT32(uint32Value);
+    }
+
+    @Benchmark
+    public byte[] float32ToBytes() {
+        return r2b.convertFLOAT32(float32Value);
+    }
+
+}
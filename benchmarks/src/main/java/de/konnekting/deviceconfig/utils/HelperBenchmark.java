@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2016 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ * 
+ * This file is part of KONNEKTING DeviceConfig.
+ *
+ *   KONNEKTING DeviceConfig is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   KONNEKTING DeviceConfig is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with KONNEKTING DeviceConfig.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.deviceconfig.utils;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Address validation and hex conversion of {@link Helper}
+ *
+ * @author achristian
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HelperBenchmark {
+
+    private String pa = "1.1.254";
+    private String ga = "15/7/255";
+    private String hex = "7F00FF1A2B3C4D5E";
+    private byte[] bytes = {0x7F, 0x00, (byte) 0xFF, 0x1A, 0x2B, 0x3C, 0x4D, 0x5E};
+
+    @Benchmark
+    public boolean checkValidPa() {
+        return Helper.checkValidPa(pa);
+    }
+
+    @Benchmark
+    public boolean checkValidGa() {
+        return Helper.checkValidGa(ga);
+    }
+
+    @Benchmark
+    public byte[] hexToBytes() {
+        return Helper.hexToBytes(hex);
+    }
+
+    @Benchmark
+    public String bytesToHex() {
+        return Helper.bytesToHex(bytes);
+    }
+
+}
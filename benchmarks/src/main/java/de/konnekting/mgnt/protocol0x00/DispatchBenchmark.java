@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2015 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of slicKnx.
+ *
+ *   slicKnx is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   slicKnx is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with slicKnx.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.protocol0x00;
+
+import de.konnekting.mgnt.simulation.SimulatedDevice;
+import de.konnekting.mgnt.simulation.VirtualBus;
+import de.root1.slicknx.KnxException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decoding and dispatching of received telegrams: the listener side filter,
+ * frame/message decoding, and a full request/answer round trip through
+ * {@link ProgProtocol0x00} against a {@link SimulatedDevice} without latency.
+ *
+ * @author achristian
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DispatchBenchmark {
+
+    /**
+     * Transport that only keeps the receiver, so telegrams can be fed into
+     * the listener directly
+     */
+    private static class CapturingTransport implements TelegramTransport {
+
+        private Receiver receiver;
+
+        @Override
+        public void open(Receiver receiver) {
+            this.receiver = receiver;
+        }
+
+        @Override
+        public void close() {
+            receiver = null;
+        }
+
+        @Override
+        public void send(byte[] telegram) {
+        }
+    }
+
+    private byte[] answerParameter;
+    private byte[] requestEcho;
+    private final Frame frame = new Frame();
+
+    private CapturingTransport listenerTransport;
+    private ProgProtocol0x00 listenerProtocol;
+
+    private VirtualBus bus;
+    private ProgProtocol0x00 protocol;
+    private byte[] paramData = {0x01, 0x02, 0x03, 0x04};
+
+    @Setup
+    public void setup() throws KnxException {
+        answerParameter = new byte[Frame.LENGTH];
+        answerParameter[1] = ProgProtocol0x00.MSGTYPE_ANSWER_PARAMETER;
+        answerParameter[2] = 0x01;
+        answerParameter[3] = 0x2A;
+        requestEcho = new MsgReadParameter((byte) 0x01).data;
+
+        listenerTransport = new CapturingTransport();
+        listenerProtocol = ProgProtocol0x00.getInstance(listenerTransport);
+
+        bus = new VirtualBus(0);
+        SimulatedDevice device = new SimulatedDevice("1.1.1", 0xDEAD, (short) 0x01, (short) 0x00, 16, 16);
+        device.setProgMode(true);
+        bus.addDevice(device);
+        protocol = ProgProtocol0x00.getInstance(bus);
+        // no bus load limit, only the protocol path is measured
+        protocol.getSendScheduler().setTelegramsPerSecond(1000000);
+        protocol.getSendScheduler().setBurst(Integer.MAX_VALUE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        listenerProtocol.close();
+        protocol.close();
+        bus.shutdown();
+    }
+
+    /**
+     * Own requests are echoed on the programming group address and must be
+     * filtered by the listener without further work
+     */
+    @Benchmark
+    public void listenerRequestEcho() {
+        listenerTransport.receiver.received(requestEcho);
+    }
+
+    @Benchmark
+    public int decodeFrame() {
+        frame.wrap(answerParameter);
+        return frame.getType() + frame.getId() + frame.getProtocolVersion();
+    }
+
+    @Benchmark
+    public ProgMessage decodeMessage() {
+        return ProgMessage.fromData(answerParameter);
+    }
+
+    @Benchmark
+    public void writeParameterRoundTrip() {
+        protocol.writeParameterAsync((byte) 0x01, paramData).join();
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2015 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of slicKnx.
+ *
+ *   slicKnx is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   slicKnx is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with slicKnx.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.protocol0x00;
+
+import de.konnekting.mgnt.ComObject;
+import de.root1.slicknx.KnxException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding of outgoing messages, including group address parsing for
+ * comobjects.
+ *
+ * @author achristian
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageEncodingBenchmark {
+
+    private byte id = 0x2A;
+    private byte[] paramData = {0x01, 0x02, 0x03, 0x04};
+    private ComObject activeComObject;
+    private ComObject inactiveComObject;
+
+    @Setup
+    public void setup() {
+        activeComObject = new ComObject((byte) 0x05, "1/2/3");
+        inactiveComObject = new ComObject((byte) 0x06, "");
+    }
+
+    @Benchmark
+    public byte[] writeParameter() {
+        return new MsgWriteParameter(id, paramData).data;
+    }
+
+    @Benchmark
+    public byte[] writeComObject() throws KnxException {
+        return new MsgWriteComObject(activeComObject).data;
+    }
+
+    @Benchmark
+    public byte[] writeInactiveComObject() throws KnxException {
+        return new MsgWriteComObject(inactiveComObject).data;
+    }
+
+    @Benchmark
+    public byte[] readParameter() {
+        return new MsgReadParameter(id).data;
+    }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2016 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ * 
+ * This file is part of KONNEKTING DeviceConfig.
+ *
+ *   KONNEKTING DeviceConfig is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   KONNEKTING DeviceConfig is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with KONNEKTING DeviceConfig.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.deviceconfig;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.TreeSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Progress of one programming run of a device: the comobjects and parameters
+ * the device acknowledged so far. Every acknowledged value is appended to the
+ * checkpoint file right away.
+ *
+ * @author achristian
+ * @see CheckpointJournal
+ */
+public class Checkpoint implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(Checkpoint.class);
+
+    private final File file;
+    private final String individualAddress;
+    private final String configurationHash;
+    private final boolean comObjects;
+    private final boolean parameters;
+    private final Set<Byte> acknowledgedComObjects = new TreeSet<>();
+    private final Set<Short> acknowledgedParameters = new TreeSet<>();
+    private Writer out;
+    private boolean failed;
+
+    Checkpoint(File file, String individualAddress, String configurationHash, boolean comObjects, boolean parameters) {
+        this.file = file;
+        this.individualAddress = individualAddress;
+        this.configurationHash = configurationHash;
+        this.comObjects = comObjects;
+        this.parameters = parameters;
+    }
+
+    public String getIndividualAddress() {
+        return individualAddress;
+    }
+
+    /**
+     * @return hash of the configuration being programmed
+     */
+    public String getConfigurationHash() {
+        return configurationHash;
+    }
+
+    /**
+     * @return true if the run writes comobjects
+     */
+    public boolean isComObjects() {
+        return comObjects;
+    }
+
+    /**
+     * @return true if the run writes parameters
+     */
+    public boolean isParameters() {
+        return parameters;
+    }
+
+    public synchronized boolean isComObjectAcknowledged(byte id) {
+        return acknowledgedComObjects.contains(id);
+    }
+
+    public synchronized boolean isParameterAcknowledged(short id) {
+        return acknowledgedParameters.contains(id);
+    }
+
+    /**
+     * Records that the device acknowledged a comobject. Failing to write the
+     * checkpoint file does not fail programming, it only makes the run
+     * impossible to resume.
+     *
+     * @param id
+     */
+    public synchronized void comObjectAcknowledged(byte id) {
+        if (addComObject(id)) {
+            append(CheckpointJournal.KEY_COMOBJECT + "=" + (id & 0xff));
+        }
+    }
+
+    /**
+     * Records that the device acknowledged a parameter, see
+     * {@link #comObjectAcknowledged(byte)}
+     *
+     * @param id
+     */
+    public synchronized void parameterAcknowledged(short id) {
+        if (addParameter(id)) {
+            append(CheckpointJournal.KEY_PARAMETER + "=" + id);
+        }
+    }
+
+    /**
+     * @return number of acknowledged comobjects and parameters
+     */
+    public synchronized int getAcknowledgedCount() {
+        return acknowledgedComObjects.size() + acknowledgedParameters.size();
+    }
+
+    /**
+     * Closes the checkpoint file. The checkpoint stays in the journal until
+     * removed.
+     */
+    @Override
+    public synchronized void close() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException ex) {
+            log.warn("Cannot close checkpoint file " + file, ex);
+        }
+        out = null;
+    }
+
+    synchronized boolean addComObject(byte id) {
+        return acknowledgedComObjects.add(id);
+    }
+
+    synchronized boolean addParameter(short id) {
+        return acknowledgedParameters.add(id);
+    }
+
+    synchronized void writeHeader() throws IOException {
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            w.write("# KONNEKTING programming checkpoint of " + individualAddress + "\n");
+            w.write(CheckpointJournal.KEY_CONFIGURATION + "=" + configurationHash + "\n");
+            w.write(CheckpointJournal.KEY_COMOBJECTS + "=" + comObjects + "\n");
+            w.write(CheckpointJournal.KEY_PARAMETERS + "=" + parameters + "\n");
+        }
+    }
+
+    private void append(String line) {
+        if (failed) {
+            return;
+        }
+        try {
+            if (out == null) {
+                out = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8);
+            }
+            out.write(line);
+            out.write('\n');
+            // one short line per ACK, cheap compared to the telegram itself
+            out.flush();
+        } catch (IOException ex) {
+            failed = true;
+            log.warn("Cannot write checkpoint file " + file + ", programming of " + individualAddress + " can't be resumed", ex);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Checkpoint{" + individualAddress + ", config=" + configurationHash + ", comObjects=" + acknowledgedComObjects + ", parameters=" + acknowledgedParameters + "}";
+    }
+
+}
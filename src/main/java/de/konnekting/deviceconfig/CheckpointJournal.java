@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2016 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ * 
+ * This file is part of KONNEKTING DeviceConfig.
+ *
+ *   KONNEKTING DeviceConfig is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   KONNEKTING DeviceConfig is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with KONNEKTING DeviceConfig.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.deviceconfig;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Journal of programming runs in progress, so that a run which died halfway
+ * can be resumed with {@link Program#resume(DeviceConfigContainer)} instead
+ * of starting from scratch.
+ * <p>
+ * One file per device is stored in the journal directory. It starts with the
+ * hash of the configuration being programmed, followed by one line per
+ * comobject and parameter the device acknowledged. The file is removed when
+ * the run completed.
+ *
+ * @author achristian
+ */
+public class CheckpointJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(CheckpointJournal.class);
+
+    static final String KEY_CONFIGURATION = "config";
+    static final String KEY_COMOBJECTS = "comobjects";
+    static final String KEY_PARAMETERS = "parameters";
+    static final String KEY_COMOBJECT = "co";
+    static final String KEY_PARAMETER = "param";
+
+    private final File dir;
+
+    /**
+     * @param dir directory to store checkpoint files in, created on first
+     * checkpoint
+     */
+    public CheckpointJournal(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Starts a new checkpoint for a programming run, replacing any former one
+     * of this device
+     *
+     * @param individualAddress
+     * @param configurationHash hash of the configuration being programmed
+     * @param comObjects true if the run writes comobjects
+     * @param parameters true if the run writes parameters
+     * @return new checkpoint without acknowledged values
+     * @throws IOException
+     */
+    public synchronized Checkpoint create(String individualAddress, String configurationHash, boolean comObjects, boolean parameters) throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Cannot create directory " + dir);
+        }
+        Checkpoint checkpoint = new Checkpoint(getFile(individualAddress), individualAddress, configurationHash, comObjects, parameters);
+        checkpoint.writeHeader();
+        log.debug("Created checkpoint {}", checkpoint);
+        return checkpoint;
+    }
+
+    /**
+     * Loads the checkpoint of an unfinished programming run. Further
+     * acknowledged values are appended to it. Only complete lines count, an
+     * entry cut off while writing it is removed from the file.
+     *
+     * @param individualAddress
+     * @return checkpoint, or <code>null</code> if there is no unfinished run
+     * of this device
+     * @throws IOException
+     */
+    public synchronized Checkpoint load(String individualAddress) throws IOException {
+        File f = getFile(individualAddress);
+        if (!f.exists()) {
+            return null;
+        }
+
+        byte[] data = Files.readAllBytes(f.toPath());
+        int length = data.length;
+        while (length > 0 && data[length - 1] != '\n') {
+            length--;
+        }
+        if (length < data.length) {
+            // last line has been cut off while writing it, f.i. "param=28" of
+            // "param=281": it was never completely recorded, so not acknowledged
+            log.warn("Ignoring incomplete checkpoint entry {} of {}", new String(data, length, data.length - length, StandardCharsets.UTF_8), individualAddress);
+            try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.WRITE)) {
+                // further entries are appended after the last complete line
+                channel.truncate(length);
+            }
+        }
+
+        String configurationHash = null;
+        boolean comObjects = false;
+        boolean parameters = false;
+        Checkpoint checkpoint = null;
+        try (BufferedReader in = new BufferedReader(new StringReader(new String(data, 0, length, StandardCharsets.UTF_8)))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                int sep = line.indexOf('=');
+                if (line.startsWith("#") || sep < 0) {
+                    continue;
+                }
+                String key = line.substring(0, sep);
+                String value = line.substring(sep + 1);
+                try {
+                    switch (key) {
+                        case KEY_CONFIGURATION:
+                            configurationHash = value;
+                            break;
+                        case KEY_COMOBJECTS:
+                            comObjects = Boolean.parseBoolean(value);
+                            break;
+                        case KEY_PARAMETERS:
+                            parameters = Boolean.parseBoolean(value);
+                            break;
+                        case KEY_COMOBJECT:
+                            checkpoint = getCheckpoint(checkpoint, f, individualAddress, configurationHash, comObjects, parameters);
+                            checkpoint.addComObject((byte) Integer.parseInt(value));
+                            break;
+                        case KEY_PARAMETER:
+                            checkpoint = getCheckpoint(checkpoint, f, individualAddress, configurationHash, comObjects, parameters);
+                            checkpoint.addParameter(Short.parseShort(value));
+                            break;
+                        default:
+                            log.warn("Ignoring unknown checkpoint entry {} of {}", line, individualAddress);
+                    }
+                } catch (NumberFormatException ex) {
+                    log.warn("Ignoring invalid checkpoint entry {} of {}", line, individualAddress);
+                }
+            }
+        }
+        checkpoint = getCheckpoint(checkpoint, f, individualAddress, configurationHash, comObjects, parameters);
+        log.debug("Loaded checkpoint {}", checkpoint);
+        return checkpoint;
+    }
+
+    /**
+     * Forgets the checkpoint of a device
+     *
+     * @param individualAddress
+     */
+    public synchronized void remove(String individualAddress) {
+        File f = getFile(individualAddress);
+        if (f.exists() && !f.delete()) {
+            log.warn("Cannot delete checkpoint file {}", f);
+        }
+    }
+
+    private static Checkpoint getCheckpoint(Checkpoint checkpoint, File f, String individualAddress, String configurationHash, boolean comObjects, boolean parameters) throws IOException {
+        if (checkpoint != null) {
+            return checkpoint;
+        }
+        if (configurationHash == null) {
+            throw new IOException("Checkpoint file " + f + " has no configuration hash");
+        }
+        return new Checkpoint(f, individualAddress, configurationHash, comObjects, parameters);
+    }
+
+    private File getFile(String individualAddress) {
+        return new File(dir, individualAddress + ".checkpoint");
+    }
+
+}
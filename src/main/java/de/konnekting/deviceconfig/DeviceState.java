@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2016 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ * 
+ * This file is part of KONNEKTING DeviceConfig.
+ *
+ *   KONNEKTING DeviceConfig is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   KONNEKTING DeviceConfig is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with KONNEKTING DeviceConfig.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.deviceconfig;
+
+import de.konnekting.mgnt.ComObject;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The comobject and parameter values a device is known to have stored, f.i.
+ * because it acknowledged writing them.
+ *
+ * @author achristian
+ */
+public class DeviceState {
+
+    private final String individualAddress;
+    private final int manufacturerId;
+    private final short deviceId;
+    private final short revision;
+    private final Map<Byte, String> comObjects = new TreeMap<>();
+    private final Map<Short, byte[]> parameters = new TreeMap<>();
+
+    public DeviceState(String individualAddress, int manufacturerId, short deviceId, short revision) {
+        this.individualAddress = individualAddress;
+        this.manufacturerId = manufacturerId;
+        this.deviceId = deviceId;
+        this.revision = revision;
+    }
+
+    public String getIndividualAddress() {
+        return individualAddress;
+    }
+
+    public int getManufacturerId() {
+        return manufacturerId;
+    }
+
+    public short getDeviceId() {
+        return deviceId;
+    }
+
+    public short getRevision() {
+        return revision;
+    }
+
+    /**
+     * @param manufacturerId
+     * @param deviceId
+     * @param revision
+     * @return true if this state belongs to given device type
+     */
+    public boolean isDevice(int manufacturerId, short deviceId, short revision) {
+        return this.manufacturerId == manufacturerId && this.deviceId == deviceId && this.revision == revision;
+    }
+
+    /**
+     * @param comObject
+     * @return true if device is known to have stored exactly this comobject
+     */
+    public synchronized boolean isUpToDate(ComObject comObject) {
+        String known = comObjects.get(comObject.getId());
+        return known != null && known.equals(toValue(comObject));
+    }
+
+    /**
+     * @param id
+     * @param value
+     * @return true if device is known to have stored exactly this parameter
+     * value
+     */
+    public synchronized boolean isUpToDate(short id, byte[] value) {
+        byte[] known = parameters.get(id);
+        return known != null && Arrays.equals(known, value);
+    }
+
+    /**
+     * Remembers that device has stored this comobject
+     *
+     * @param comObject
+     */
+    public synchronized void setComObject(ComObject comObject) {
+        comObjects.put(comObject.getId(), toValue(comObject));
+    }
+
+    /**
+     * Remembers that device has stored this parameter value
+     *
+     * @param id
+     * @param value
+     */
+    public synchronized void setParameter(short id, byte[] value) {
+        parameters.put(id, value.clone());
+    }
+
+    /**
+     * @return known group address per comobject id, "" for inactive
+     * comobjects, read-only copy
+     */
+    public synchronized Map<Byte, String> getComObjects() {
+        return new TreeMap<>(comObjects);
+    }
+
+    /**
+     * @return known value per parameter id, read-only copy
+     */
+    public synchronized Map<Short, byte[]> getParameters() {
+        return new TreeMap<>(parameters);
+    }
+
+    private static String toValue(ComObject comObject) {
+        // the group address of an inactive comobject is not used by the device
+        return comObject.isActive() ? comObject.getGroupAddress() : "";
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DeviceState{individualAddress=" + individualAddress + ", comObjects=" + comObjects.size() + ", parameters=" + parameters.size() + "}";
+    }
+
+}
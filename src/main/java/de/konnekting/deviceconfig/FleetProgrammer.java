@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2016 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ * 
+ * This file is part of KONNEKTING DeviceConfig.
+ *
+ *   KONNEKTING DeviceConfig is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   KONNEKTING DeviceConfig is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with KONNEKTING DeviceConfig.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.deviceconfig;
+
+import de.konnekting.deviceconfig.utils.Helper;
+import de.konnekting.mgnt.protocol0x00.TelegramTransport;
+import de.root1.slicknx.Knx;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Programs many already addressed devices at once, with one worker thread per
+ * KNX interface. Devices are assigned to an interface by area and line of
+ * their individual address, devices of the same interface are programmed one
+ * after another.
+ * <p>
+ * Interfaces are registered by line ("1.2"), by area ("1") or as fallback
+ * ("*"). The most specific registration wins.
+ *
+ * @author achristian
+ */
+public class FleetProgrammer {
+
+    private static final Logger log = LoggerFactory.getLogger(FleetProgrammer.class);
+
+    /**
+     * key for the interface used for devices of all not registered lines
+     */
+    public static final String ANY_LINE = "*";
+
+    /**
+     * {@link Knx} or {@link TelegramTransport} per line, area or ANY_LINE
+     */
+    private final Map<String, Object> interfaces;
+    private final List<FleetProgressListener> listeners = new CopyOnWriteArrayList<>();
+    private final List<Program> programs = new CopyOnWriteArrayList<>();
+    private Consumer<Program> programConfigurator;
+    private volatile boolean abort;
+
+    /**
+     * @param interfaces KNX interface per line ("1.2"), area ("1") or
+     * {@link #ANY_LINE}
+     */
+    public FleetProgrammer(Map<String, Knx> interfaces) {
+        this.interfaces = new LinkedHashMap<String, Object>(interfaces);
+    }
+
+    private FleetProgrammer() {
+        this.interfaces = new LinkedHashMap<>();
+    }
+
+    /**
+     * Same as {@link #FleetProgrammer(java.util.Map)}, but on any transports,
+     * f.i. a {@link de.konnekting.mgnt.simulation.VirtualBus}
+     *
+     * @param transports transport per line ("1.2"), area ("1") or
+     * {@link #ANY_LINE}
+     * @return new fleet programmer
+     */
+    public static FleetProgrammer forTransports(Map<String, ? extends TelegramTransport> transports) {
+        FleetProgrammer fleet = new FleetProgrammer();
+        fleet.interfaces.putAll(transports);
+        return fleet;
+    }
+
+    /**
+     * Sets a callback to configure each {@link Program} instance before use,
+     * f.i. to set window size or programming history.
+     *
+     * @param programConfigurator
+     */
+    public void setProgramConfigurator(Consumer<Program> programConfigurator) {
+        this.programConfigurator = programConfigurator;
+    }
+
+    public void addProgressListener(FleetProgressListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeProgressListener(FleetProgressListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Aborts the running devices and skips all devices not started yet
+     */
+    public void abort() {
+        abort = true;
+        log.info("Abort triggered!");
+        for (Program program : programs) {
+            program.abort();
+        }
+    }
+
+    /**
+     * Finds the interface for a device
+     *
+     * @param individualAddress
+     * @return interface, or null if none is registered for this line
+     */
+    Object getInterface(String individualAddress) {
+        String[] split = individualAddress.split("\\.");
+        Object knx = interfaces.get(split[0] + "." + split[1]);
+        if (knx == null) {
+            knx = interfaces.get(split[0]);
+        }
+        if (knx == null) {
+            knx = interfaces.get(ANY_LINE);
+        }
+        return knx;
+    }
+
+    /**
+     * Programs all devices. This will block until all devices are done.
+     *
+     * @param devices devices to program, individual address must already be
+     * set in the devices
+     * @param doComObjects
+     * @param doParams
+     * @return which devices succeeded and failed, and the throughput
+     * @throws InterruptedException
+     */
+    public FleetResult program(Collection<DeviceConfigContainer> devices, final boolean doComObjects, final boolean doParams) throws InterruptedException {
+        abort = false;
+        final FleetResult result = new FleetResult();
+
+        // partition by interface, several lines may share one interface
+        Map<Object, List<DeviceConfigContainer>> partitions = new LinkedHashMap<>();
+        for (DeviceConfigContainer device : devices) {
+            String individualAddress = device.getIndividualAddress();
+            Object knx = null;
+            if (individualAddress != null && Helper.checkValidPa(individualAddress)) {
+                knx = getInterface(individualAddress);
+            }
+            if (knx == null) {
+                ProgramException ex = new ProgramException("No KNX interface for individual address '" + individualAddress + "' of " + device);
+                log.warn(ex.getMessage());
+                result.addFailure(device, ex);
+                fireDeviceDone(device, ex);
+                continue;
+            }
+            List<DeviceConfigContainer> partition = partitions.get(knx);
+            if (partition == null) {
+                partition = new ArrayList<>();
+                partitions.put(knx, partition);
+            }
+            partition.add(device);
+        }
+        log.info("Programming {} devices on {} interfaces", devices.size() - result.getFailed().size(), partitions.size());
+
+        long start = System.currentTimeMillis();
+        if (!partitions.isEmpty()) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            ExecutorService workers = Executors.newFixedThreadPool(partitions.size(), r -> new Thread(r, "FleetProgrammer-" + threadCount.incrementAndGet()));
+            try {
+                for (final Map.Entry<Object, List<DeviceConfigContainer>> partition : partitions.entrySet()) {
+                    workers.execute(() -> programPartition(partition.getKey(), partition.getValue(), doComObjects, doParams, result));
+                }
+                workers.shutdown();
+                while (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+                    log.info("Still programming, {} devices done", result.getSucceeded().size() + result.getFailed().size());
+                }
+            } finally {
+                workers.shutdownNow();
+            }
+        }
+        result.setDurationMillis(System.currentTimeMillis() - start);
+        log.info("All done: {}", result);
+        return result;
+    }
+
+    private void programPartition(Object knx, List<DeviceConfigContainer> devices, boolean doComObjects, boolean doParams, FleetResult result) {
+        Program program = knx instanceof Knx ? new Program((Knx) knx) : new Program((TelegramTransport) knx);
+        if (programConfigurator != null) {
+            programConfigurator.accept(program);
+        }
+        // one set of beans per worker, named like the worker thread
+        program.registerMBeans(Thread.currentThread().getName());
+        programs.add(program);
+        try {
+            for (DeviceConfigContainer device : devices) {
+                if (abort) {
+                    ProgramException ex = new ProgramException("Aborted before programming " + device);
+                    result.addFailure(device, ex);
+                    fireDeviceDone(device, ex);
+                    continue;
+                }
+                fireDeviceStarted(device);
+                try {
+                    program.program(device, false, doComObjects, doParams);
+                    if (program.isCancelled()) {
+                        // program() returns normally when cancelled
+                        throw new ProgramException("Aborted while programming " + device);
+                    }
+                    result.addSuccess(device);
+                    fireDeviceDone(device, null);
+                } catch (ProgramException | RuntimeException ex) {
+                    log.error("Programming " + device + " failed", ex);
+                    result.addFailure(device, ex);
+                    fireDeviceDone(device, ex);
+                }
+            }
+        } finally {
+            programs.remove(program);
+            program.close();
+        }
+    }
+
+    private void fireDeviceStarted(DeviceConfigContainer device) {
+        for (FleetProgressListener listener : listeners) {
+            listener.onDeviceStarted(device);
+        }
+    }
+
+    private void fireDeviceDone(DeviceConfigContainer device, Exception error) {
+        for (FleetProgressListener listener : listeners) {
+            listener.onDeviceDone(device, error);
+        }
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2016 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ * 
+ * This file is part of KONNEKTING DeviceConfig.
+ *
+ *   KONNEKTING DeviceConfig is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   KONNEKTING DeviceConfig is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with KONNEKTING DeviceConfig.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.deviceconfig;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of a {@link FleetProgrammer} run
+ *
+ * @author achristian
+ */
+public class FleetResult {
+
+    private final List<DeviceConfigContainer> succeeded = new ArrayList<>();
+    private final Map<DeviceConfigContainer, Exception> failed = new LinkedHashMap<>();
+    private long durationMillis;
+
+    synchronized void addSuccess(DeviceConfigContainer device) {
+        succeeded.add(device);
+    }
+
+    synchronized void addFailure(DeviceConfigContainer device, Exception error) {
+        failed.put(device, error);
+    }
+
+    void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
+    /**
+     * @return successfully programmed devices, in order of completion
+     */
+    public synchronized List<DeviceConfigContainer> getSucceeded() {
+        return new ArrayList<>(succeeded);
+    }
+
+    /**
+     * @return devices that could not be programmed, with the reason
+     */
+    public synchronized Map<DeviceConfigContainer, Exception> getFailed() {
+        return new LinkedHashMap<>(failed);
+    }
+
+    /**
+     * @return wall clock time of the whole run
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * @return successfully programmed devices per minute, over all interfaces
+     */
+    public synchronized double getDevicesPerMinute() {
+        if (durationMillis == 0) {
+            return 0;
+        }
+        return succeeded.size() * 60000d / durationMillis;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "FleetResult{succeeded=" + succeeded.size() + ", failed=" + failed.size() + ", duration=" + durationMillis + "ms, devicesPerMinute=" + String.format("%.1f", getDevicesPerMinute()) + "}";
+    }
+
+}
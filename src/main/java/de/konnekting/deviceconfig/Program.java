@@ -13,8 +13,26 @@ import de.root1.slicknx.Knx;
 import de.root1.slicknx.KnxException;
 import de.konnekting.mgnt.ComObject;
 import de.konnekting.mgnt.KonnektingManagement;
+import de.konnekting.mgnt.ManagementBeans;
+import de.konnekting.mgnt.ProgrammingSession;
+import de.konnekting.mgnt.SlidingWindow;
+import de.konnekting.mgnt.TimeoutProfileStore;
+import de.konnekting.mgnt.protocol0x00.RetryPolicy;
+import de.konnekting.mgnt.protocol0x00.TelegramTransport;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import javax.management.ObjectName;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -22,18 +40,175 @@ import org.slf4j.LoggerFactory;
  *
  * @author achristian
  */
-public class Program {
+public class Program implements AutoCloseable, ProgramMXBean {
+
+    /**
+     * Number of parameter/comobject writes in flight. 1 = wait for each ACK
+     * before sending the next write.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 1;
+
+    /**
+     * How often unacknowledged parameter/comobject writes are sent again by
+     * the window. None by default: each write is already repeated by the
+     * {@link RetryPolicy} of the protocol.
+     */
+    public static final int DEFAULT_MAX_RETRANSMISSIONS = 0;
 
     private final Logger log = LoggerFactory.getLogger(getClass());
     private final java.util.ResourceBundle bundle = java.util.ResourceBundle.getBundle("de/konnekting/deviceconfig/i18n/language"); // NOI18N
     private final List<ProgramProgressListener> listeners = new ArrayList<>();
-    private final Knx knx;
     private final KonnektingManagement mgt;
-    private boolean abort;
+    private volatile boolean abort;
+    private volatile SlidingWindow<?> currentWindow;
+    private volatile int windowSize = DEFAULT_WINDOW_SIZE;
+    private volatile int maxRetransmissions = DEFAULT_MAX_RETRANSMISSIONS;
+    private ProgrammingHistory history;
+    private CheckpointJournal checkpoints;
+    private Checkpoint checkpoint;
+    private volatile ProgrammingSession session;
+    private DeviceState sessionState;
+    private boolean readBack;
+
+    // session state for monitoring
+    private volatile boolean running;
+    private volatile boolean cancelled;
+    private volatile String individualAddress;
+    private volatile int currentStep;
+    private volatile int maxSteps;
+    private volatile String statusMessage;
+    private volatile ObjectName objectName;
 
     public Program(Knx knx) {
-        this.knx = knx;
-        mgt = new KonnektingManagement(knx);
+        this(new KonnektingManagement(knx));
+    }
+
+    /**
+     * Program on any transport, f.i. a
+     * {@link de.konnekting.mgnt.protocol0x00.ReplayTransport} to reproduce a
+     * recorded session
+     *
+     * @param transport
+     */
+    public Program(TelegramTransport transport) {
+        this(new KonnektingManagement(transport));
+    }
+
+    private Program(KonnektingManagement mgt) {
+        this.mgt = mgt;
+    }
+
+    /**
+     * Sets the number of parameter and comobject writes that are sent without
+     * waiting for the ACK of the previous ones. Only raise this for devices
+     * which can buffer that many telegrams. A change while programming takes
+     * effect with the next block of writes.
+     *
+     * @param windowSize number of writes in flight, at least 1
+     */
+    @Override
+    public void setWindowSize(int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("windowSize must be at least 1");
+        }
+        this.windowSize = windowSize;
+    }
+
+    @Override
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * Sets how often parameter and comobject writes without ACK are sent again
+     * before programming fails. Only the unacknowledged writes are repeated,
+     * after all others have been written. This is an alternative to the
+     * {@link #setRetryPolicy(de.konnekting.mgnt.protocol0x00.RetryPolicy)
+     * retry policy}, use it together with {@link RetryPolicy#NONE}: both
+     * together repeat each write (retries + 1) * (retransmissions + 1) times.
+     *
+     * @param maxRetransmissions number of repetitions, 0 = none
+     */
+    @Override
+    public void setMaxRetransmissions(int maxRetransmissions) {
+        if (maxRetransmissions < 0) {
+            throw new IllegalArgumentException("maxRetransmissions must not be negative");
+        }
+        this.maxRetransmissions = maxRetransmissions;
+    }
+
+    @Override
+    public int getMaxRetransmissions() {
+        return maxRetransmissions;
+    }
+
+    /**
+     * Sets how single telegrams are repeated after a timeout or NACK, before
+     * a failure aborts programming. Default is {@link RetryPolicy#DEFAULT}.
+     * This is the only repetition of writes unless
+     * {@link #setMaxRetransmissions(int)} is set as well.
+     *
+     * @param retryPolicy
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        mgt.setRetryPolicy(retryPolicy);
+    }
+
+    /**
+     * Enables the fast start of programming, see
+     * {@link KonnektingManagement#setFastStart(boolean)}
+     *
+     * @param fastStart
+     */
+    public void setFastStart(boolean fastStart) {
+        mgt.setFastStart(fastStart);
+    }
+
+    /**
+     * Sets the store for learned answer timeouts, see
+     * {@link KonnektingManagement#setTimeoutProfileStore(de.konnekting.mgnt.TimeoutProfileStore)}
+     *
+     * @param timeoutProfileStore store, or <code>null</code>
+     */
+    public void setTimeoutProfileStore(TimeoutProfileStore timeoutProfileStore) {
+        mgt.setTimeoutProfileStore(timeoutProfileStore);
+    }
+
+    /**
+     * Enables delta programming: only comobjects and parameters that differ
+     * from the values the device acknowledged last time are written. Programming
+     * with individual address always writes everything.
+     *
+     * @param history history of acknowledged values, or <code>null</code> to
+     * always write everything
+     */
+    public void setProgrammingHistory(ProgrammingHistory history) {
+        this.history = history;
+    }
+
+    /**
+     * Enables checkpoints: the comobjects and parameters acknowledged during a
+     * run are journaled, so that a run which died halfway can be continued
+     * with {@link #resume(DeviceConfigContainer)}.
+     *
+     * @param checkpoints journal of unfinished runs, or <code>null</code> to
+     * disable checkpoints
+     */
+    public void setCheckpointJournal(CheckpointJournal checkpoints) {
+        this.checkpoints = checkpoints;
+    }
+
+    /**
+     * Enables read-back: before writing, the comobjects and parameters stored
+     * in the device are read and only the differing ones are written. Works
+     * also without {@link ProgrammingHistory}, f.i. for devices programmed by
+     * someone else. Combined with a history, only values not known from the
+     * history are read.
+     *
+     * @param readBack true to read values before writing them
+     */
+    public void setReadBack(boolean readBack) {
+        this.readBack = readBack;
     }
 
     public void addProgressListener(ProgramProgressListener listener) {
@@ -44,8 +219,70 @@ public class Program {
         listeners.remove(listener);
     }
 
+    /**
+     * Releases the management used by this program. The program can't be used
+     * afterwards.
+     */
+    @Override
+    public void close() {
+        ManagementBeans.unregister(objectName);
+        mgt.close();
+    }
+
+    /**
+     * Registers this program, its management and protocol as MBeans, they
+     * are unregistered again on {@link #close()}
+     *
+     * @param name name of the beans, f.i. the name of the session
+     */
+    public void registerMBeans(String name) {
+        ManagementBeans.unregister(objectName);
+        objectName = ManagementBeans.register(this, "Program", name);
+        mgt.registerMBeans(name);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Tells whether the last run stopped early because of {@link #abort()}.
+     * An abort after the last value was written doesn't cancel the run.
+     *
+     * @return true if the last run returned without programming everything
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public String getIndividualAddress() {
+        return running ? individualAddress : null;
+    }
+
+    @Override
+    public int getCurrentStep() {
+        return currentStep;
+    }
+
+    @Override
+    public int getMaxSteps() {
+        return maxSteps;
+    }
+
+    @Override
+    public String getStatusMessage() {
+        return statusMessage;
+    }
+
+    @Override
     public void abort() {
         abort = true;
+        SlidingWindow<?> window = currentWindow;
+        if (window != null) {
+            window.abort();
+        }
         log.info("Abort triggered!");
     }
 
@@ -59,6 +296,89 @@ public class Program {
      * @throws de.konnekting.deviceconfig.ProgramException
      */
     public void program(DeviceConfigContainer device, boolean doIndividualAddress, boolean doComObjects, boolean doParams) throws ProgramException {
+        run(device, doIndividualAddress, doComObjects, doParams, null);
+    }
+
+    /**
+     * Puts the device into programming mode and keeps it there, for iterative
+     * commissioning: while the session is open, {@link #program(de.konnekting.deviceconfig.DeviceConfigContainer, boolean, boolean, boolean)}
+     * of this device only writes the comobjects and parameters changed since
+     * the last run, without programming mode handshake and restart. The device
+     * is restarted when the session is committed.
+     *
+     * @param device
+     * @return open session
+     * @throws ProgramException
+     */
+    public ProgrammingSession openSession(DeviceConfigContainer device) throws ProgramException {
+        KonnektingDevice c = device.getDevice();
+        try {
+            ProgrammingSession s = mgt.openSession(device.getIndividualAddress(), c.getDevice().getManufacturerId(), c.getDevice().getDeviceId(), c.getDevice().getRevision());
+            sessionState = new DeviceState(device.getIndividualAddress(), c.getDevice().getManufacturerId(), c.getDevice().getDeviceId(), c.getDevice().getRevision());
+            session = s;
+            return s;
+        } catch (KnxException ex) {
+            throw new ProgramException("Cannot open programming session of " + device.getIndividualAddress(), ex);
+        }
+    }
+
+    /**
+     * Continues an unfinished run from its checkpoint: the device is put into
+     * programming mode again and only the comobjects and parameters not yet
+     * acknowledged are written. This will block until all is done or exception
+     * occured.
+     *
+     * @param device
+     * @throws ProgramException if there is no checkpoint of the device, or the
+     * configuration changed since the checkpoint was written
+     * @see #setCheckpointJournal(de.konnekting.deviceconfig.CheckpointJournal)
+     */
+    public void resume(DeviceConfigContainer device) throws ProgramException {
+        if (checkpoints == null) {
+            throw new IllegalStateException("No checkpoint journal set");
+        }
+        String individualAddress = device.getIndividualAddress();
+        Checkpoint resumeFrom;
+        try {
+            resumeFrom = checkpoints.load(individualAddress);
+        } catch (IOException ex) {
+            throw new ProgramException("Cannot read checkpoint of " + individualAddress, ex);
+        }
+        if (resumeFrom == null) {
+            throw new ProgramException("No unfinished programming of " + individualAddress + " to resume");
+        }
+        if (!resumeFrom.getConfigurationHash().equals(getConfigurationHash(device))) {
+            throw new ProgramException("Configuration of " + individualAddress + " changed since checkpoint, program it again");
+        }
+        log.info("Resuming programming of {}, {} values already acknowledged", individualAddress, resumeFrom.getAcknowledgedCount());
+        run(device, false, resumeFrom.isComObjects(), resumeFrom.isParameters(), resumeFrom);
+    }
+
+    private void run(DeviceConfigContainer device, boolean doIndividualAddress, boolean doComObjects, boolean doParams, Checkpoint resumeFrom) throws ProgramException {
+        individualAddress = device.getIndividualAddress();
+        currentStep = 0;
+        maxSteps = 0;
+        running = true;
+        cancelled = false;
+        boolean done = false;
+        try {
+            done = doProgram(device, doIndividualAddress, doComObjects, doParams, resumeFrom);
+            cancelled = !done;
+        } finally {
+            running = false;
+            if (!done) {
+                endProgramming();
+            }
+            if (checkpoint != null) {
+                checkpoint.close();
+                checkpoint = null;
+            } else if (resumeFrom != null) {
+                resumeFrom.close();
+            }
+        }
+    }
+
+    private boolean doProgram(DeviceConfigContainer device, boolean doIndividualAddress, boolean doComObjects, boolean doParams, Checkpoint resumeFrom) throws ProgramException {
 
         try {
             fireProgressStatusMessage(getLangString("initialize")); // "Initialize..."
@@ -68,6 +388,11 @@ public class Program {
 
             KonnektingDevice c = device.getDevice();
             String individualAddress = device.getIndividualAddress();
+            ProgrammingSession session = this.session;
+            boolean inSession = session != null && session.isOpen() && session.getIndividualAddress().equals(individualAddress);
+            if (inSession && doIndividualAddress) {
+                throw new IllegalStateException("Can't write individual address of " + individualAddress + " while its programming session is open");
+            }
 
             // prepare
             List<CommObjectConfiguration> comObjectConfiguration = null;
@@ -112,7 +437,7 @@ public class Program {
                     fireProgressStatusMessage(getLangString("cancelled"));
                     fireProgressUpdate(maxSteps, maxSteps);
                     abort = false;
-                    return;
+                    return false;
                 }
             }
 
@@ -120,89 +445,413 @@ public class Program {
                 fireProgressStatusMessage(getLangString("cancelled"));
                 fireProgressUpdate(maxSteps, maxSteps);
                 abort = false;
-                return;
+                return false;
             }
 
             int manufacturerId = c.getDevice().getManufacturerId();
             short deviceId = c.getDevice().getDeviceId();
             short revision = c.getDevice().getRevision();
 
-            if (!abort) {
+            if (inSession) {
+                // device is in programming mode already
+                fireProgressUpdate(++i, maxSteps);
+                checkpoint = resumeFrom != null ? resumeFrom : createCheckpoint(device, doComObjects, doParams);
+            } else if (!abort) {
                 fireProgressStatusMessage(getLangString("startProgramming"));//Starting programming...
                 mgt.startProgramming(individualAddress, manufacturerId, deviceId, revision);
                 fireProgressUpdate(++i, maxSteps);
+                // device answered in its address, so a resumed run needs no individual address
+                checkpoint = resumeFrom != null ? resumeFrom : createCheckpoint(device, doComObjects, doParams);
+                if (resumeFrom != null) {
+                    fireProgressStatusMessage(getLangString("resuming", resumeFrom.getAcknowledgedCount()));
+                }
             } else {
                 fireProgressStatusMessage(getLangString("cancelled"));
                 abort = false;
-                return;
+                return false;
             }
 
+            // values known to be stored in device already, null if delta programming is off
+            final DeviceState state = inSession && history == null ? sessionState : loadDeviceState(individualAddress, manufacturerId, deviceId, revision, doIndividualAddress);
+
             if (doComObjects) {
                 if (!abort) {
                     log.info("Writing commobjects ...");
-
+                    List<ComObject> comObjects = new ArrayList<>();
                     for (CommObjectConfiguration comObj : comObjectConfiguration) {
-                        if (!abort) {
-                            ComObject comObjectToWrite = new ComObject((byte) comObj.getId(), comObj.getGroupAddress());
-                            log.debug("Writing ComObject: id={} ga={} active={}", new Object[]{comObjectToWrite.getId(), comObjectToWrite.getGroupAddress(), comObjectToWrite.isActive()});
-                            fireProgressStatusMessage(getLangString("writingComObject",comObjectToWrite.getId(), comObjectToWrite.isActive()));//Writing comobject " + comObjectToWrite.getId() + " / active=" + comObjectToWrite.isActive());
-                            mgt.writeComObject(comObjectToWrite);
-                            fireProgressUpdate(++i, maxSteps);
-                        } else {
-                            fireProgressStatusMessage(getLangString("cancelled"));
-                            abort = false;
-                            return;
+                        ComObject comObject = new ComObject((byte) comObj.getId(), comObj.getGroupAddress());
+                        if (state != null && state.isUpToDate(comObject)) {
+                            log.debug("ComObject #{} unchanged, skipping", comObject.getId());
+                            continue;
+                        }
+                        if (checkpoint != null && checkpoint.isComObjectAcknowledged(comObject.getId())) {
+                            log.debug("ComObject #{} acknowledged before, skipping", comObject.getId());
+                            continue;
                         }
+                        comObjects.add(comObject);
                     }
-
+                    if (readBack) {
+                        comObjects = readBack(comObjects, comObject -> mgt.readComObjectAsync(comObject.getId()).thenApply(stored -> isSame(comObject, stored)),
+                            comObject -> {
+                                if (state != null) {
+                                    state.setComObject(comObject);
+                                }
+                                if (checkpoint != null) {
+                                    checkpoint.comObjectAcknowledged(comObject.getId());
+                                }
+                            });
+                    }
+                    i = skipUnchanged(comObjectConfiguration.size() - comObjects.size(), i, maxSteps);
+                    boolean done;
+                    try {
+                        done = writeWindowed(comObjects, comObjectToWrite -> {
+                            log.debug("Writing ComObject: id={} ga={} active={}", new Object[]{comObjectToWrite.getId(), comObjectToWrite.getGroupAddress(), comObjectToWrite.isActive()});
+                            return mgt.writeComObjectAsync(comObjectToWrite);
+                        }, comObjectToWrite -> getLangString("writingComObject", comObjectToWrite.getId(), comObjectToWrite.isActive()),
+                            comObjectToWrite -> {
+                                if (state != null) {
+                                    state.setComObject(comObjectToWrite);
+                                }
+                                if (checkpoint != null) {
+                                    checkpoint.comObjectAcknowledged(comObjectToWrite.getId());
+                                }
+                            }, i, maxSteps);
+                    } finally {
+                        saveDeviceState(state);
+                    }
+                    if (!done) {
+                        fireProgressStatusMessage(getLangString("cancelled"));
+                        abort = false;
+                        return false;
+                    }
+                    i += comObjects.size();
                 } else {
                     fireProgressStatusMessage(getLangString("cancelled"));
                     abort = false;
-                    return;
+                    return false;
                 }
             }
 
             if (doParams) {
                 if (!abort) {
                     log.info("Writing parameter ...");
-                    for (ParameterConfiguration parameter : c.getConfiguration().getParameterConfigurations().getParameterConfiguration()) {
-                        if (!abort) {
+                    List<ParameterConfiguration> allParameters = c.getConfiguration().getParameterConfigurations().getParameterConfiguration();
+                    List<ParameterConfiguration> parameters = new ArrayList<>();
+                    for (ParameterConfiguration parameter : allParameters) {
+                        if (state != null && state.isUpToDate(parameter.getId(), parameter.getValue())) {
+                            log.debug("Parameter #{} unchanged, skipping", parameter.getId());
+                            continue;
+                        }
+                        if (checkpoint != null && checkpoint.isParameterAcknowledged(parameter.getId())) {
+                            log.debug("Parameter #{} acknowledged before, skipping", parameter.getId());
+                            continue;
+                        }
+                        parameters.add(parameter);
+                    }
+                    if (readBack) {
+                        parameters = readBack(parameters, parameter -> mgt.readParameterAsync(parameter.getId()).thenApply(stored -> isSame(parameter.getValue(), stored)),
+                            parameter -> {
+                                if (state != null) {
+                                    state.setParameter(parameter.getId(), parameter.getValue());
+                                }
+                                if (checkpoint != null) {
+                                    checkpoint.parameterAcknowledged(parameter.getId());
+                                }
+                            });
+                    }
+                    i = skipUnchanged(allParameters.size() - parameters.size(), i, maxSteps);
+                    boolean done;
+                    try {
+                        done = writeWindowed(parameters, parameter -> {
                             byte[] data = parameter.getValue();
                             log.debug("Writing " + Helper.bytesToHex(data) + " to param with id " + parameter.getId());
-                            fireProgressStatusMessage(getLangString("writingParameter", parameter.getId()));
-                            mgt.writeParameter(parameter.getId(), data);
-                            fireProgressUpdate(++i, maxSteps);
-                        } else {
-                            fireProgressStatusMessage(getLangString("cancelled"));
-                            abort = false;
-                            return;
-                        }
+                            return mgt.writeParameterAsync(parameter.getId(), data);
+                        }, parameter -> getLangString("writingParameter", parameter.getId()),
+                            parameter -> {
+                                if (state != null) {
+                                    state.setParameter(parameter.getId(), parameter.getValue());
+                                }
+                                if (checkpoint != null) {
+                                    checkpoint.parameterAcknowledged(parameter.getId());
+                                }
+                            }, i, maxSteps);
+                    } finally {
+                        saveDeviceState(state);
+                    }
+                    if (!done) {
+                        fireProgressStatusMessage(getLangString("cancelled"));
+                        abort = false;
+                        return false;
                     }
+                    i += parameters.size();
                 } else {
                     fireProgressStatusMessage(getLangString("cancelled"));
                     abort = false;
-                    return;
+                    return false;
                 }
             }
 
-            log.info("Stopping programming");
-            fireProgressStatusMessage(getLangString("stoppingProgramming"));//Stopping programming...");
-            mgt.stopProgramming();
-            fireProgressUpdate(++i, maxSteps);
-            log.info("Restart device");
-            fireProgressStatusMessage(getLangString("triggerDeviceRestart"));//Trigger device restart...");
-            mgt.restart(individualAddress);
-            fireProgressUpdate(++i, maxSteps);
+            if (!inSession) {
+                log.info("Stopping programming");
+                fireProgressStatusMessage(getLangString("stoppingProgramming"));//Stopping programming...");
+                mgt.stopProgramming();
+                fireProgressUpdate(++i, maxSteps);
+                log.info("Restart device");
+                fireProgressStatusMessage(getLangString("triggerDeviceRestart"));//Trigger device restart...");
+                mgt.restart(individualAddress);
+                fireProgressUpdate(++i, maxSteps);
+            }
+            if (checkpoint != null) {
+                checkpoints.remove(individualAddress);
+            }
 
             log.info("All done.");
             fireProgressStatusMessage(getLangString("done"));//All done.");
             fireProgressUpdate(maxSteps, maxSteps);
+            return true;
 
         } catch (KnxException ex) {
             throw new ProgramException("Programming failed", ex);
         }
     }
 
+    /**
+     * Ends the programming mode of a failed or cancelled run, so the device
+     * doesn't stay in programming mode and the next run can start. An open
+     * programming session is kept.
+     */
+    private void endProgramming() {
+        if (!mgt.isProgramming() || mgt.getSession() != null) {
+            return;
+        }
+        try {
+            mgt.stopProgramming();
+        } catch (KnxException | RuntimeException ex) {
+            log.warn("Cannot end programming mode of " + individualAddress, ex);
+        }
+    }
+
+    /**
+     * Loads the values known to be stored in the device
+     *
+     * @return known values, or null if delta programming is off
+     */
+    private DeviceState loadDeviceState(String individualAddress, int manufacturerId, short deviceId, short revision, boolean doIndividualAddress) throws ProgramException {
+        if (history == null) {
+            return null;
+        }
+        if (doIndividualAddress) {
+            // might be a new or replaced device, history of this address is meaningless
+            history.remove(individualAddress);
+        }
+        try {
+            return history.load(individualAddress, manufacturerId, deviceId, revision);
+        } catch (IOException ex) {
+            throw new ProgramException("Cannot read programming history of " + individualAddress, ex);
+        }
+    }
+
+    /**
+     * Starts the checkpoint of a new run
+     *
+     * @return checkpoint, or null if checkpoints are off or can't be written
+     */
+    private Checkpoint createCheckpoint(DeviceConfigContainer device, boolean doComObjects, boolean doParams) {
+        if (checkpoints == null) {
+            return null;
+        }
+        try {
+            return checkpoints.create(device.getIndividualAddress(), getConfigurationHash(device), doComObjects, doParams);
+        } catch (IOException ex) {
+            log.warn("Cannot write checkpoint of " + device.getIndividualAddress() + ", programming can't be resumed", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Hash over device type and all comobject and parameter values, to detect
+     * configuration changes between a checkpoint and its resume
+     */
+    private static String getConfigurationHash(DeviceConfigContainer device) {
+        KonnektingDevice c = device.getDevice();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%04x.%02x.%02x", c.getDevice().getManufacturerId(), c.getDevice().getDeviceId(), c.getDevice().getRevision()));
+        for (CommObjectConfiguration comObj : c.getConfiguration().getCommObjectConfigurations().getCommObjectConfiguration()) {
+            sb.append("\nco.").append(comObj.getId()).append('=').append(comObj.getGroupAddress());
+        }
+        for (ParameterConfiguration parameter : c.getConfiguration().getParameterConfigurations().getParameterConfiguration()) {
+            sb.append("\nparam.").append(parameter.getId()).append('=').append(Helper.bytesToHex(parameter.getValue()));
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Helper.bytesToHex(digest.digest(sb.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 not supported", ex);
+        }
+    }
+
+    private void saveDeviceState(DeviceState state) {
+        if (state == null || history == null) {
+            return;
+        }
+        try {
+            history.save(state);
+        } catch (IOException ex) {
+            log.warn("Cannot save programming history of " + state.getIndividualAddress(), ex);
+        }
+    }
+
+    /**
+     * Reads the stored values of the candidates from the device, with up to
+     * {@link #getWindowSize()} reads in flight. As soon as more than half of
+     * the candidates differ, reading stops: writing the remaining ones is then
+     * cheaper than reading them first. If the device cannot be read, all
+     * candidates are written.
+     *
+     * @param candidates values which might need to be written
+     * @param verify reads the stored value and completes with true if it
+     * equals the candidate
+     * @param onVerified called for each candidate the device already stores
+     * @return candidates which need to be written, in original order
+     */
+    <T> List<T> readBack(List<T> candidates, final Function<T, CompletableFuture<Boolean>> verify, Consumer<T> onVerified) {
+        if (candidates.isEmpty()) {
+            return candidates;
+        }
+        log.info("Reading back {} values", candidates.size());
+        fireProgressStatusMessage(getLangString("readingBack", candidates.size()));
+
+        final Set<T> verified = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<T, Boolean>()));
+        final AtomicInteger mismatches = new AtomicInteger();
+        final int maxMismatches = candidates.size() / 2;
+        final SlidingWindow<T> window = new SlidingWindow<>(windowSize, maxRetransmissions);
+        currentWindow = window;
+        if (abort) {
+            window.abort();
+        }
+        try {
+            window.run(candidates, item -> verify.apply(item).thenAccept(same -> {
+                if (same) {
+                    verified.add(item);
+                } else {
+                    mismatches.incrementAndGet();
+                }
+            }), new SlidingWindow.Listener<T>() {
+                private boolean writeRest;
+
+                @Override
+                public void onStarted(T item) {
+                }
+
+                @Override
+                public void onCompleted(T item) {
+                    if (!writeRest && mismatches.get() > maxMismatches) {
+                        writeRest = true;
+                        log.info("More than {} of {} values differ, writing the rest without reading", maxMismatches, candidates.size());
+                        window.abort();
+                    }
+                }
+            });
+        } catch (KnxException ex) {
+            log.warn("Reading back values failed, writing all unverified values", ex);
+        } finally {
+            currentWindow = null;
+        }
+
+        List<T> toWrite = new ArrayList<>();
+        for (T item : candidates) {
+            if (verified.contains(item)) {
+                onVerified.accept(item);
+            } else {
+                toWrite.add(item);
+            }
+        }
+        log.info("{} of {} values already stored in device", candidates.size() - toWrite.size(), candidates.size());
+        return toWrite;
+    }
+
+    static boolean isSame(ComObject configured, ComObject stored) {
+        if (configured.isActive() != stored.isActive()) {
+            return false;
+        }
+        // the group address of an inactive comobject is not used by the device
+        return !configured.isActive() || configured.getGroupAddress().equals(stored.getGroupAddress());
+    }
+
+    static boolean isSame(byte[] configured, byte[] stored) {
+        // device always answers with 11 bytes, only the used ones matter
+        if (stored.length < configured.length) {
+            return false;
+        }
+        for (int i = 0; i < configured.length; i++) {
+            if (configured[i] != stored[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reports skipped, already up-to-date values as done
+     *
+     * @param skipped number of skipped values
+     * @param step current progress step
+     * @param maxSteps
+     * @return new progress step
+     */
+    private int skipUnchanged(int skipped, int step, int maxSteps) {
+        if (skipped > 0) {
+            log.info("Skipping {} unchanged values", skipped);
+            fireProgressStatusMessage(getLangString("skippingUnchanged", skipped));
+            step += skipped;
+            fireProgressUpdate(step, maxSteps);
+        }
+        return step;
+    }
+
+    /**
+     * Writes items with up to {@link #getWindowSize()} writes in flight.
+     *
+     * @param items items to write
+     * @param operation starts the write of one item
+     * @param statusMessage status message to show when item is written
+     * @param onAcknowledged called when device acknowledged the item
+     * @param step progress step before first item
+     * @param maxSteps
+     * @return true if all items were written, false if aborted
+     * @throws KnxException
+     */
+    private <T> boolean writeWindowed(List<T> items, SlidingWindow.Operation<T> operation, final Function<T, String> statusMessage, final Consumer<T> onAcknowledged, final int step, final int maxSteps) throws KnxException {
+        SlidingWindow<T> window = new SlidingWindow<>(windowSize, maxRetransmissions);
+        currentWindow = window;
+        if (abort) {
+            window.abort();
+        }
+        try {
+            return window.run(items, operation, new SlidingWindow.Listener<T>() {
+                private int i = step;
+
+                @Override
+                public void onStarted(T item) {
+                    fireProgressStatusMessage(statusMessage.apply(item));
+                }
+
+                @Override
+                public void onCompleted(T item) {
+                    onAcknowledged.accept(item);
+                    fireProgressUpdate(++i, maxSteps);
+                }
+
+                @Override
+                public void onRetransmit(T item) {
+                    mgt.getMetrics().retried();
+                }
+            });
+        } finally {
+            currentWindow = null;
+        }
+    }
+
     private String getLangString(String key, Object... values) {
         String completeKey = getClass().getSimpleName()+"."+key;
         try {
@@ -225,12 +874,15 @@ public class Program {
     }
 
     private void fireProgressStatusMessage(String statusMsg) {
+        statusMessage = statusMsg;
         for (ProgramProgressListener listener : listeners) {
             listener.onStatusMessage(statusMsg);
         }
     }
 
     private void fireProgressUpdate(int currentStep, int steps) {
+        this.currentStep = currentStep;
+        this.maxSteps = steps;
         for (ProgramProgressListener listener : listeners) {
             listener.onProgressUpdate(currentStep, steps);
         }
@@ -0,0 +1,46 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.konnekting.deviceconfig;
+
+/**
+ * Management interface of {@link Program}: state of the running session and
+ * settings which can be changed while it runs
+ *
+ * @author achristian
+ */
+public interface ProgramMXBean {
+
+    /**
+     * @return true while {@link Program#program} is running
+     */
+    boolean isRunning();
+
+    /**
+     * @return address of the device being programmed, <code>null</code> if
+     * not running
+     */
+    String getIndividualAddress();
+
+    int getCurrentStep();
+
+    int getMaxSteps();
+
+    String getStatusMessage();
+
+    int getWindowSize();
+
+    void setWindowSize(int windowSize);
+
+    int getMaxRetransmissions();
+
+    void setMaxRetransmissions(int maxRetransmissions);
+
+    /**
+     * Aborts the running session
+     */
+    void abort();
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2016 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ * 
+ * This file is part of KONNEKTING DeviceConfig.
+ *
+ *   KONNEKTING DeviceConfig is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   KONNEKTING DeviceConfig is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with KONNEKTING DeviceConfig.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.deviceconfig;
+
+import de.konnekting.deviceconfig.utils.Helper;
+import de.konnekting.mgnt.ComObject;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Remembers per individual address which comobject and parameter values have
+ * been acknowledged by the device, so that {@link Program} only needs to write
+ * the values that changed since then.
+ * <p>
+ * One properties file per device is stored in the history directory. If a
+ * device is reset or replaced by another device with same address and type
+ * outside of this tool, the history is wrong. Delete it then, or program with
+ * individual address, which always writes everything.
+ *
+ * @author achristian
+ */
+public class ProgrammingHistory {
+
+    private static final Logger log = LoggerFactory.getLogger(ProgrammingHistory.class);
+
+    private static final String KEY_DEVICE = "device";
+    private static final String KEY_COMOBJECT_PREFIX = "co.";
+    private static final String KEY_PARAMETER_PREFIX = "param.";
+
+    private final File dir;
+
+    /**
+     * @param dir directory to store history files in, created on first save
+     */
+    public ProgrammingHistory(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Loads the known state of a device.
+     *
+     * @param individualAddress
+     * @param manufacturerId
+     * @param deviceId
+     * @param revision
+     * @return known state, or an empty state if nothing is known about this
+     * device or the history belongs to another device type
+     * @throws IOException
+     */
+    public synchronized DeviceState load(String individualAddress, int manufacturerId, short deviceId, short revision) throws IOException {
+        DeviceState state = new DeviceState(individualAddress, manufacturerId, deviceId, revision);
+        File f = getFile(individualAddress);
+        if (!f.exists()) {
+            return state;
+        }
+
+        Properties p = new Properties();
+        try (InputStream in = new FileInputStream(f)) {
+            p.load(in);
+        } catch (IllegalArgumentException ex) {
+            // malformed escape, f.i. file cut off while saving: unknown state, everything gets written
+            log.warn("Ignoring corrupt history of " + individualAddress, ex);
+            return state;
+        }
+        if (!getDeviceKey(state).equals(p.getProperty(KEY_DEVICE))) {
+            log.info("History of {} belongs to another device type ({}), ignoring it", individualAddress, p.getProperty(KEY_DEVICE));
+            return state;
+        }
+
+        for (String key : p.stringPropertyNames()) {
+            try {
+                if (key.startsWith(KEY_COMOBJECT_PREFIX)) {
+                    byte id = (byte) Integer.parseInt(key.substring(KEY_COMOBJECT_PREFIX.length()));
+                    state.setComObject(new ComObject(id, p.getProperty(key)));
+                } else if (key.startsWith(KEY_PARAMETER_PREFIX)) {
+                    short id = Short.parseShort(key.substring(KEY_PARAMETER_PREFIX.length()));
+                    state.setParameter(id, Helper.hexToBytes(p.getProperty(key)));
+                }
+            } catch (NumberFormatException ex) {
+                log.warn("Ignoring invalid history entry {}={} of {}", new Object[]{key, p.getProperty(key), individualAddress});
+            }
+        }
+        log.debug("Loaded history {}", state);
+        return state;
+    }
+
+    /**
+     * Stores the known state of a device, replacing the former one
+     *
+     * @param state
+     * @throws IOException
+     */
+    public synchronized void save(DeviceState state) throws IOException {
+        Properties p = new Properties();
+        p.setProperty(KEY_DEVICE, getDeviceKey(state));
+        for (Map.Entry<Byte, String> entry : state.getComObjects().entrySet()) {
+            p.setProperty(KEY_COMOBJECT_PREFIX + (entry.getKey() & 0xff), entry.getValue());
+        }
+        for (Map.Entry<Short, byte[]> entry : state.getParameters().entrySet()) {
+            p.setProperty(KEY_PARAMETER_PREFIX + entry.getKey(), Helper.bytesToHex(entry.getValue()));
+        }
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Cannot create directory " + dir);
+        }
+        try (OutputStream out = new FileOutputStream(getFile(state.getIndividualAddress()))) {
+            p.store(out, "KONNEKTING programming history of " + state.getIndividualAddress());
+        }
+        log.debug("Saved history {}", state);
+    }
+
+    /**
+     * Forgets everything about a device
+     *
+     * @param individualAddress
+     */
+    public synchronized void remove(String individualAddress) {
+        File f = getFile(individualAddress);
+        if (f.exists() && !f.delete()) {
+            log.warn("Cannot delete history file {}", f);
+        }
+    }
+
+    private File getFile(String individualAddress) {
+        return new File(dir, individualAddress + ".properties");
+    }
+
+    private static String getDeviceKey(DeviceState state) {
+        return String.format("%04x.%02x.%02x", state.getManufacturerId(), state.getDeviceId(), state.getRevision());
+    }
+
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2015 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of slicKnx.
+ *
+ *   slicKnx is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   slicKnx is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with slicKnx.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt;
+
+import de.konnekting.mgnt.protocol0x00.AnswerTimeoutException;
+import de.konnekting.mgnt.protocol0x00.ProgProtocol0x00;
+import de.konnekting.mgnt.protocol0x00.TelegramTransport;
+import de.root1.slicknx.Knx;
+import de.root1.slicknx.KnxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds the KONNEKTING devices on the bus by sending read-device-info to a
+ * range of individual addresses. Many requests are in flight at the same
+ * time, the send rate is limited so that the scan does not saturate the line.
+ *
+ * @author achristian
+ */
+public class InventoryScanner implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(InventoryScanner.class);
+
+    public interface Listener {
+
+        /**
+         * Called as soon as a device answered. Called from the protocol
+         * thread of the connection, which handles all telegrams of all
+         * users of this connection: return quickly, blocking here stalls
+         * all protocol traffic including this scan.
+         *
+         * @param deviceInfo
+         */
+        void onDeviceFound(DeviceInfo deviceInfo);
+    }
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 16;
+    public static final double DEFAULT_TELEGRAMS_PER_SECOND = 10;
+    public static final int DEFAULT_TIMEOUT = 500;
+
+    private final ProgProtocol0x00 protocol;
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+    private double telegramsPerSecond = DEFAULT_TELEGRAMS_PER_SECOND;
+    private int timeout = DEFAULT_TIMEOUT;
+    private volatile boolean abort;
+
+    public InventoryScanner(Knx knx) {
+        protocol = ProgProtocol0x00.getInstance(knx);
+    }
+
+    /**
+     * Scanner on any transport, f.i. a
+     * {@link de.konnekting.mgnt.simulation.VirtualBus}
+     *
+     * @param transport
+     */
+    public InventoryScanner(TelegramTransport transport) {
+        protocol = ProgProtocol0x00.getInstance(transport);
+    }
+
+    /**
+     * Releases the protocol of this scanner
+     */
+    @Override
+    public void close() {
+        protocol.close();
+    }
+
+    /**
+     * @param maxInFlight max. number of requests waiting for an answer
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * @param telegramsPerSecond max. number of requests sent per second
+     */
+    public void setTelegramsPerSecond(double telegramsPerSecond) {
+        if (telegramsPerSecond <= 0) {
+            throw new IllegalArgumentException("telegramsPerSecond must be positive");
+        }
+        this.telegramsPerSecond = telegramsPerSecond;
+    }
+
+    /**
+     * @param timeout milliseconds to wait for the answer of each address
+     */
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Stops sending further requests. Requests in flight are still awaited.
+     */
+    public void abort() {
+        abort = true;
+    }
+
+    /**
+     * Scans the given addresses. Blocks until all addresses are scanned.
+     *
+     * @param addresses individual addresses to probe
+     * @param listener gets each found device as soon as it answered, may be
+     * <code>null</code>
+     * @return all found devices
+     * @throws KnxException if sending failed
+     */
+    public List<DeviceInfo> scan(List<String> addresses, final Listener listener) throws KnxException {
+        abort = false;
+        final List<DeviceInfo> found = Collections.synchronizedList(new ArrayList<DeviceInfo>());
+        final Semaphore inFlight = new Semaphore(maxInFlight);
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / telegramsPerSecond);
+        long nextSend = System.nanoTime();
+
+        log.info("Scanning {} addresses, {} in flight, {} telegrams/s", new Object[]{addresses.size(), maxInFlight, telegramsPerSecond});
+        try {
+            for (final String address : addresses) {
+                if (abort || !failures.isEmpty()) {
+                    break;
+                }
+                inFlight.acquire();
+
+                // rate limit
+                long wait = nextSend - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                nextSend = Math.max(nextSend, System.nanoTime() - interval) + interval;
+
+                protocol.readDeviceInfoAsync(address, timeout).whenComplete((deviceInfo, t) -> {
+                    // released last, so the scan returns after all devices have been reported
+                    try {
+                        if (t == null) {
+                            log.info("Found {}", deviceInfo);
+                            found.add(deviceInfo);
+                            if (listener != null) {
+                                listener.onDeviceFound(deviceInfo);
+                            }
+                        } else {
+                            Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+                            if (!(cause instanceof AnswerTimeoutException)) {
+                                log.warn("Probing " + address + " failed", cause);
+                                failures.add(cause);
+                            }
+                        }
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+            // wait for the requests in flight
+            inFlight.acquire(maxInFlight);
+            inFlight.release(maxInFlight);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new KnxException("Interrupted while scanning", ex);
+        }
+        if (!failures.isEmpty()) {
+            Throwable t = failures.get(0);
+            throw t instanceof KnxException ? (KnxException) t : new KnxException("Scanning failed", t);
+        }
+        log.info("Scan done, found {} devices", found.size());
+        synchronized (found) {
+            return new ArrayList<>(found);
+        }
+    }
+
+    /**
+     * Lists all individual addresses from first to last, both inclusive
+     *
+     * @param first f.i. "1.1.0"
+     * @param last f.i. "1.1.255"
+     * @return list of addresses
+     */
+    public static List<String> addressRange(String first, String last) {
+        int from = toRaw(first);
+        int to = toRaw(last);
+        List<String> list = new ArrayList<>();
+        for (int raw = from; raw <= to; raw++) {
+            list.add(((raw >> 12) & 0x0f) + "." + ((raw >> 8) & 0x0f) + "." + (raw & 0xff));
+        }
+        return list;
+    }
+
+    private static int toRaw(String individualAddress) {
+        String[] split = individualAddress.split("\\.");
+        if (split.length != 3) {
+            throw new IllegalArgumentException("Invalid individual address: " + individualAddress);
+        }
+        return (Integer.parseInt(split[0]) << 12) | (Integer.parseInt(split[1]) << 8) | Integer.parseInt(split[2]);
+    }
+
+}
@@ -21,16 +21,41 @@ package de.konnekting.mgnt;
 import de.root1.slicknx.Knx;
 import de.root1.slicknx.KnxException;
 import de.konnekting.mgnt.protocol0x00.ProgProtocol0x00;
+import de.konnekting.mgnt.protocol0x00.ProtocolMetrics;
+import de.konnekting.mgnt.protocol0x00.RetryPolicy;
+import de.konnekting.mgnt.protocol0x00.TelegramTransport;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.management.ObjectName;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Class to manage an "KNX-on-Arduino" (Karduino) device.
+ * <p>
+ * The state of a device being programmed is held by a
+ * {@link ProgrammingSession}, not by the management. Sessions opened on other
+ * connections with {@link #openSession(de.root1.slicknx.Knx, java.lang.String, int, short, short)}
+ * have their own protocol handle and are independent of each other, so
+ * several devices on different connections can be programmed concurrently,
+ * f.i. from a thread pool. On one connection only one device can be in
+ * programming mode at a time.
+ * <p>
+ * The management itself is thread-safe. The methods without session
+ * ({@link #startProgramming(java.lang.String, int, short, short)},
+ * {@link #writeParameter(short, byte[])}, ...) work on the one current
+ * session on the connection of the management. A single session is meant to
+ * be used by one thread at a time, its async writes may be in flight
+ * concurrently.
  *
  * @author achristian
  */
-public class KonnektingManagement {
+public class KonnektingManagement implements AutoCloseable, KonnektingManagementMXBean {
 
     private static final Logger log = LoggerFactory.getLogger(KonnektingManagement.class);
 
@@ -44,10 +69,22 @@ public class KonnektingManagement {
         return new KonnektingManagement(knx);
     }
 
-    private final Knx knx;
-    private ProgProtocol0x00 protocol;
-    private boolean isProgramming = false;
-    private String individualAddress;
+    private final ProgProtocol0x00 protocol;
+    private final Set<ProgrammingSession> sessions = ConcurrentHashMap.newKeySet();
+    /**
+     * protocols of the open sessions and of those being opened
+     */
+    private final List<ProgProtocol0x00> connections = new ArrayList<>();
+    /**
+     * session on the connection of this management, target of the methods
+     * without session
+     */
+    private volatile ProgrammingSession current;
+    private volatile boolean currentIsSession;
+    private volatile TimeoutProfileStore timeoutProfileStore;
+    private volatile boolean fastStart;
+    private volatile long keepAliveInterval = ProgrammingSession.DEFAULT_KEEPALIVE_INTERVAL;
+    private volatile ObjectName objectName;
 
     /**
      * Dont' use this constructor directly. Use {@link Knx#createKarduinoManagement()
@@ -56,10 +93,72 @@ public class KonnektingManagement {
      * @param knx
      */
     public KonnektingManagement(Knx knx) {
-        this.knx = knx;
         protocol = ProgProtocol0x00.getInstance(knx);
     }
 
+    /**
+     * Management on any transport, f.i. replaying a recorded session
+     *
+     * @param transport
+     */
+    public KonnektingManagement(TelegramTransport transport) {
+        protocol = ProgProtocol0x00.getInstance(transport);
+    }
+
+    /**
+     * Sets the store for learned answer timeouts. If set, the timeouts for a
+     * device are loaded when programming starts and saved when it stops.
+     *
+     * @param timeoutProfileStore store, or <code>null</code> to not persist
+     * timeouts
+     */
+    public void setTimeoutProfileStore(TimeoutProfileStore timeoutProfileStore) {
+        this.timeoutProfileStore = timeoutProfileStore;
+    }
+
+    /**
+     * Sets how single requests are repeated after a timeout or NACK, see
+     * {@link ProgProtocol0x00#setRetryPolicy(de.konnekting.mgnt.protocol0x00.RetryPolicy)}
+     *
+     * @param retryPolicy
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        protocol.setRetryPolicy(retryPolicy);
+    }
+
+    /**
+     * Lets broadcast queries finish early when no further device answers, see
+     * {@link ProgProtocol0x00#setQuietPeriod(int)}
+     *
+     * @param quietPeriod ms after the last answer, 0 = wait for the timeout,
+     * or {@link ProgProtocol0x00#QUIET_PERIOD_AUTO}
+     */
+    public void setQuietPeriod(int quietPeriod) {
+        protocol.setQuietPeriod(quietPeriod);
+    }
+
+    /**
+     * Enables the fast start: {@link #startProgramming(java.lang.String, int, short, short)}
+     * does its three exchanges at once instead of one after another, see
+     * {@link ProgProtocol0x00#enterProgrammingMode(java.lang.String)}
+     *
+     * @param fastStart
+     */
+    public void setFastStart(boolean fastStart) {
+        this.fastStart = fastStart;
+    }
+
+    /**
+     * Sets the idle time after which the programming mode of the device of a
+     * {@link ProgrammingSession} is set again. Applies to sessions opened
+     * afterwards.
+     *
+     * @param keepAliveInterval ms, 0 = no keepalive
+     */
+    public void setKeepAliveInterval(long keepAliveInterval) {
+        this.keepAliveInterval = keepAliveInterval;
+    }
+
     /**
      * Write individual address to device. Requires prog-button to be pressed.
      * Returns false if failed.
@@ -70,6 +169,18 @@ public class KonnektingManagement {
         protocol.writeIndividualAddress(individualAddress);
     }
 
+    /**
+     * Write individual address to device as soon as its prog-button is
+     * pressed.
+     *
+     * @param individualAddress
+     * @param deadline max. ms to wait for the prog-button
+     * @throws de.root1.slicknx.KnxException
+     */
+    public void writeIndividualAddress(String individualAddress, long deadline) throws KnxException {
+        protocol.writeIndividualAddress(individualAddress, deadline);
+    }
+
     public List<String> readIndividualAddress(boolean oneAddressOnly) throws KnxException {
         return protocol.readIndividualAddress(oneAddressOnly);
     }
@@ -83,33 +194,179 @@ public class KonnektingManagement {
      * @param revisionId
      * @throws de.root1.slicknx.KnxException
      */
-    public void startProgramming(String individualAddress, int manufacturerId, short deviceId, short revisionId) throws KnxException {
-        if (isProgramming) {
+    public synchronized void startProgramming(String individualAddress, int manufacturerId, short deviceId, short revisionId) throws KnxException {
+        if (current != null) {
             throw new IllegalStateException("Already in programming mode. Please call stopProgramming() first.");
         }
+        ProgrammingSession s = open(protocol, false, individualAddress, manufacturerId, deviceId, revisionId, 0);
+        currentIsSession = false;
+        current = s;
+    }
+
+    /**
+     * Starts programming existing device with given address and keeps it in
+     * programming mode until the returned session is committed or closed.
+     * Meanwhile, the writes of this management go to the device of the
+     * session as well.
+     *
+     * @param individualAddress
+     * @param manufacturerId
+     * @param deviceId
+     * @param revisionId
+     * @return open session
+     * @throws de.root1.slicknx.KnxException
+     */
+    public synchronized ProgrammingSession openSession(String individualAddress, int manufacturerId, short deviceId, short revisionId) throws KnxException {
+        if (current != null) {
+            throw new IllegalStateException("Already in programming mode. Please call stopProgramming() first.");
+        }
+        ProgrammingSession s = open(protocol, false, individualAddress, manufacturerId, deviceId, revisionId, keepAliveInterval);
+        currentIsSession = true;
+        current = s;
+        return s;
+    }
+
+    /**
+     * Opens a session on another connection, independent of this management
+     * and its other sessions. The session has its own protocol handle, with
+     * the retry policy and quiet period of this management.
+     *
+     * @param knx connection of the device
+     * @param individualAddress
+     * @param manufacturerId
+     * @param deviceId
+     * @param revisionId
+     * @return open session
+     * @throws de.root1.slicknx.KnxException
+     */
+    public ProgrammingSession openSession(Knx knx, String individualAddress, int manufacturerId, short deviceId, short revisionId) throws KnxException {
+        return open(ProgProtocol0x00.getInstance(knx), true, individualAddress, manufacturerId, deviceId, revisionId, keepAliveInterval);
+    }
+
+    /**
+     * Same as {@link #openSession(de.root1.slicknx.Knx, java.lang.String, int, short, short)},
+     * for any transport
+     *
+     * @param transport connection of the device
+     * @param individualAddress
+     * @param manufacturerId
+     * @param deviceId
+     * @param revisionId
+     * @return open session
+     * @throws de.root1.slicknx.KnxException
+     */
+    public ProgrammingSession openSession(TelegramTransport transport, String individualAddress, int manufacturerId, short deviceId, short revisionId) throws KnxException {
+        return open(ProgProtocol0x00.getInstance(transport), true, individualAddress, manufacturerId, deviceId, revisionId, keepAliveInterval);
+    }
+
+    /**
+     * @return open session on the connection of this management,
+     * <code>null</code> if none
+     */
+    public ProgrammingSession getSession() {
+        ProgrammingSession s = current;
+        return s != null && currentIsSession ? s : null;
+    }
+
+    /**
+     * @return all open sessions
+     */
+    public Set<ProgrammingSession> getSessions() {
+        return Collections.unmodifiableSet(sessions);
+    }
+
+    @Override
+    public int getSessionCount() {
+        return sessions.size();
+    }
 
-        // set prog mode based on pa
-        log.debug("Set programming mode = true");
+    private ProgrammingSession open(ProgProtocol0x00 p, boolean ownsProtocol, String individualAddress, int manufacturerId, short deviceId, short revisionId, long keepAlive) throws KnxException {
         try {
-            protocol.writeProgrammingMode(individualAddress, true);
+            reserve(p);
         } catch (KnxException ex) {
-            throw new KnxException("No device responded for enabling prog-mode on address "+individualAddress, ex);
+            if (ownsProtocol) {
+                p.close();
+            }
+            throw ex;
+        }
+        try {
+            if (p != protocol) {
+                p.setRetryPolicy(protocol.getRetryPolicy());
+                p.setQuietPeriod(protocol.getQuietPeriod());
+            }
+            DeviceInfo di = enterProgrammingMode(p, individualAddress, manufacturerId, deviceId, revisionId);
+            ProgrammingSession session = new ProgrammingSession(this, p, ownsProtocol, individualAddress, di, keepAlive);
+            sessions.add(session);
+            log.info("Started programming {}", session);
+            return session;
+        } catch (KnxException | RuntimeException ex) {
+            release(p);
+            if (ownsProtocol) {
+                p.close();
+            }
+            throw ex;
         }
+    }
 
-        log.debug("Checking for devices in prog mode");
-        // check for single device in prog mode (uses ReadProgMode)
-        boolean cont = protocol.onlyOneDeviceInProgMode();
+    /**
+     * Parameters and comobjects are written to the programming group address,
+     * so only one device per connection can be programmed at a time.
+     *
+     * @param p protocol of the new session
+     * @throws KnxException if another session is open on the same connection
+     */
+    private void reserve(ProgProtocol0x00 p) throws KnxException {
+        synchronized (connections) {
+            for (ProgProtocol0x00 c : connections) {
+                if (c.isSameConnection(p)) {
+                    throw new KnxException("Another device is being programmed on this connection.");
+                }
+            }
+            connections.add(p);
+        }
+    }
 
-        if (!cont) {
-            throw new KnxException("It seems that no or more than one device is in programming-mode.");
+    private void release(ProgProtocol0x00 p) {
+        synchronized (connections) {
+            connections.remove(p);
         }
+    }
+
+    private DeviceInfo enterProgrammingMode(ProgProtocol0x00 protocol, String individualAddress, int manufacturerId, short deviceId, short revisionId) throws KnxException {
+        DeviceInfo di;
+        if (fastStart) {
+            log.debug("Set programming mode = true, checking for devices in prog mode and reading device info ...");
+            di = protocol.enterProgrammingMode(individualAddress);
+        } else {
+            // set prog mode based on pa
+            log.debug("Set programming mode = true");
+            try {
+                protocol.writeProgrammingMode(individualAddress, true);
+            } catch (KnxException ex) {
+                throw new KnxException("No device responded for enabling prog-mode on address "+individualAddress, ex);
+            }
+
+            log.debug("Checking for devices in prog mode");
+            // check for single device in prog mode (uses ReadProgMode)
+            boolean cont = protocol.onlyOneDeviceInProgMode();
 
-        log.debug("Reading device info ...");
+            if (!cont) {
+                throw new KnxException("It seems that no or more than one device is in programming-mode.");
+            }
 
-        DeviceInfo di = protocol.readDeviceInfo(individualAddress);
+            log.debug("Reading device info ...");
+
+            di = protocol.readDeviceInfo(individualAddress);
+        }
 
         // check for correct device
         if (di.getManufacturerId() != manufacturerId || di.getDeviceId() != deviceId || di.getRevisionId() != revisionId) {
+            try {
+                // don't leave the wrong device listening to the programming group address
+                protocol.writeProgrammingMode(individualAddress, false);
+            } catch (KnxException ex) {
+                log.warn("Cannot reset programming mode of " + individualAddress, ex);
+            }
             throw new KnxException("Device does not match.\n"
                 + " KONNEKTING reported: \n"
                 + "  manufacturer: " + di.getManufacturerId() + "\n"
@@ -121,36 +378,162 @@ public class KonnektingManagement {
                 + "  revision: " + revisionId);
         }
         log.debug("Got device info: {}", di);
-        this.individualAddress = individualAddress;
-        isProgramming = true;
+        TimeoutProfileStore store = timeoutProfileStore;
+        if (store != null) {
+            try {
+                store.load(di, protocol.getTimeoutProfile(individualAddress));
+            } catch (IOException ex) {
+                log.warn("Cannot load timeout profile for " + di, ex);
+            }
+        }
+        return di;
     }
 
-    public void stopProgramming() throws KnxException {
-        if (!isProgramming) {
+    public synchronized void stopProgramming() throws KnxException {
+        ProgrammingSession s = current;
+        if (s == null) {
             throw new IllegalStateException("Not in programming-state- Call startProgramming() first.");
         }
-        protocol.writeProgrammingMode(individualAddress, false);
-        isProgramming = false;
+        if (currentIsSession) {
+            throw new IllegalStateException("Programming session open. Please commit or close it.");
+        }
+        s.stop(false);
     }
 
-    public void writeParameter(short id, byte[] data) throws KnxException {
-        if (!isProgramming) {
-            throw new IllegalStateException("Not in programming-state- Call startProgramming() first.");
+    /**
+     * Called by a session when it has been committed or closed, before its
+     * protocol is released
+     *
+     * @param session
+     */
+    void sessionEnded(ProgrammingSession session) {
+        sessions.remove(session);
+        release(session.getProtocol());
+        // current is only replaced while null, no lock needed
+        if (current == session) {
+            current = null;
+        }
+        TimeoutProfileStore store = timeoutProfileStore;
+        if (store != null) {
+            try {
+                store.save(session.getDeviceInfo(), session.getProtocol().getTimeoutProfile(session.getIndividualAddress()));
+            } catch (IOException | KnxException ex) {
+                log.warn("Cannot save timeout profile for " + session.getDeviceInfo(), ex);
+            }
         }
-        log.debug("Writing parameter #{}", id);
-        protocol.writeParameter((byte) id, data);
     }
 
-    public void writeComObject(ComObject comObject) throws KnxException {
-        if (!isProgramming) {
+    private ProgrammingSession getCurrent() {
+        ProgrammingSession s = current;
+        if (s == null) {
             throw new IllegalStateException("Not in programming-state- Call startProgramming() first.");
         }
-        log.debug("Writing ComObject ", comObject);
-        protocol.writeComObject(comObject);
+        return s;
+    }
+
+    public void writeParameter(short id, byte[] data) throws KnxException {
+        getCurrent().writeParameter(id, data);
+    }
+
+    public void writeComObject(ComObject comObject) throws KnxException {
+        getCurrent().writeComObject(comObject);
+    }
+
+    /**
+     * Async variant of {@link #writeParameter(short, byte[])}, used for
+     * pipelined writes.
+     *
+     * @param id
+     * @param data
+     * @return future, completed when device acknowledged the write
+     */
+    public CompletableFuture<Void> writeParameterAsync(short id, byte[] data) {
+        return getCurrent().writeParameterAsync(id, data);
+    }
+
+    /**
+     * Async variant of {@link #writeComObject(de.konnekting.mgnt.ComObject)},
+     * used for pipelined writes.
+     *
+     * @param comObject
+     * @return future, completed when device acknowledged the write
+     */
+    public CompletableFuture<Void> writeComObjectAsync(ComObject comObject) {
+        return getCurrent().writeComObjectAsync(comObject);
+    }
+
+    /**
+     * Reads the value of a parameter as stored in the device
+     *
+     * @param id
+     * @return future, completed with the 11 value bytes of the parameter
+     */
+    public CompletableFuture<byte[]> readParameterAsync(short id) {
+        return getCurrent().readParameterAsync(id);
+    }
+
+    /**
+     * Reads a comobject as stored in the device
+     *
+     * @param id
+     * @return future, completed with the comobject
+     */
+    public CompletableFuture<ComObject> readComObjectAsync(byte id) {
+        return getCurrent().readComObjectAsync(id);
     }
 
     public void restart(String address) throws KnxException {
         protocol.restart(address);
     }
 
+    @Override
+    public boolean isProgramming() {
+        return current != null;
+    }
+
+    @Override
+    public String getIndividualAddress() {
+        ProgrammingSession s = current;
+        return s != null ? s.getIndividualAddress() : null;
+    }
+
+    @Override
+    public String getDeviceInfo() {
+        ProgrammingSession s = current;
+        return s != null ? s.getDeviceInfo().toString() : null;
+    }
+
+    /**
+     * Registers this management and its protocol as MBeans, they are
+     * unregistered again on {@link #close()}
+     *
+     * @param name name of the beans, f.i. the name of the session
+     */
+    public void registerMBeans(String name) {
+        ManagementBeans.unregister(objectName);
+        objectName = ManagementBeans.register(this, "KonnektingManagement", name);
+        protocol.registerMBean(name);
+    }
+
+    /**
+     * @return protocol metrics of the connection
+     */
+    public ProtocolMetrics getMetrics() {
+        return protocol.getMetrics();
+    }
+
+    /**
+     * Releases the protocol of this management and closes all its open
+     * sessions. Must be called when the management is no longer used,
+     * otherwise the connection keeps listening for it.
+     */
+    @Override
+    public void close() {
+        for (ProgrammingSession s : sessions) {
+            s.close();
+        }
+        ManagementBeans.unregister(objectName);
+        protocol.close();
+    }
+
 }
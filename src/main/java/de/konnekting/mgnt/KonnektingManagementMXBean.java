@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2015 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of slicKnx.
+ *
+ *   slicKnx is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   slicKnx is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with slicKnx.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt;
+
+/**
+ * Management interface of {@link KonnektingManagement}
+ *
+ * @author achristian
+ */
+public interface KonnektingManagementMXBean {
+
+    /**
+     * @return true between start and stop of programming
+     */
+    boolean isProgramming();
+
+    /**
+     * @return number of open programming sessions, on all connections
+     */
+    int getSessionCount();
+
+    /**
+     * @return address of the device being programmed, <code>null</code> if
+     * not programming
+     */
+    String getIndividualAddress();
+
+    /**
+     * @return device info of the device being programmed, <code>null</code>
+     * if not programming
+     */
+    String getDeviceInfo();
+
+}
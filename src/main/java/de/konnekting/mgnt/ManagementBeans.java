@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2015 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of slicKnx.
+ *
+ *   slicKnx is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   slicKnx is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with slicKnx.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registers the management beans of programming sessions at the platform
+ * MBean server, domain <code>de.konnekting</code>. Registration failures are
+ * logged only, monitoring must never break programming.
+ *
+ * @author achristian
+ */
+public final class ManagementBeans {
+
+    private static final Logger log = LoggerFactory.getLogger(ManagementBeans.class);
+
+    public static final String DOMAIN = "de.konnekting";
+
+    private ManagementBeans() {
+    }
+
+    /**
+     * Registers a bean as <code>de.konnekting:type=&lt;type&gt;,name=&lt;name&gt;</code>.
+     * An existing bean with the same name is replaced.
+     *
+     * @param bean the MXBean
+     * @param type type key, f.i. the simple class name
+     * @param name name key, distinguishes several sessions
+     * @return name of registered bean, or <code>null</code> if registration
+     * failed
+     */
+    public static ObjectName register(Object bean, String type, String name) {
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(bean, objectName);
+            log.debug("Registered {}", objectName);
+            return objectName;
+        } catch (JMException ex) {
+            log.warn("Cannot register " + type + " '" + name + "' as MBean", ex);
+            return null;
+        }
+    }
+
+    /**
+     * @param objectName bean to remove, may be <code>null</code>
+     */
+    public static void unregister(ObjectName objectName) {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            log.debug("Unregistered {}", objectName);
+        } catch (JMException ex) {
+            log.debug("Cannot unregister " + objectName, ex);
+        }
+    }
+
+}
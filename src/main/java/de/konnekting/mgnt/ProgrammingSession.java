@@ -0,0 +1,350 @@
+/*
+ * Copyright (C) 2015 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of slicKnx.
+ *
+ *   slicKnx is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   slicKnx is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with slicKnx.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt;
+
+import de.konnekting.mgnt.protocol0x00.ProgProtocol0x00;
+import de.root1.slicknx.KnxException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A device kept in programming mode across any number of writes, f.i. for
+ * iterative commissioning: change a parameter, write it, test, repeat. The
+ * programming mode handshake is done once when the session is opened with
+ * {@link KonnektingManagement#openSession(java.lang.String, int, short, short)},
+ * the device is restarted only on {@link #commit()}.
+ * <p>
+ * While idle, the programming mode of the device is set again every keepalive
+ * interval. If the device does not acknowledge this, f.i. because it has
+ * been disconnected, the session is lost and all further writes fail.
+ * <p>
+ * Sessions on different connections are independent and can be used
+ * concurrently. A session itself is meant to be used by one thread at a time;
+ * its async writes may be in flight concurrently, and commit or close may be
+ * called from any thread.
+ *
+ * @author achristian
+ */
+public class ProgrammingSession implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ProgrammingSession.class);
+
+    /**
+     * Default idle time in ms after which the programming mode is set again
+     */
+    public static final long DEFAULT_KEEPALIVE_INTERVAL = 30000;
+
+    /**
+     * sends the keepalives of all sessions
+     */
+    private static final ScheduledExecutorService KEEPALIVE = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ProgrammingSession-Keepalive");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final KonnektingManagement mgt;
+    private final ProgProtocol0x00 protocol;
+    private final boolean ownsProtocol;
+    private final String individualAddress;
+    private final DeviceInfo deviceInfo;
+    private final long keepAliveNanos;
+    private final ScheduledFuture<?> keepAliveTask;
+    private volatile long lastActivity = System.nanoTime();
+    private volatile KnxException lost;
+    private volatile boolean open = true;
+    private final Object endLock = new Object();
+
+    /**
+     * @param mgt management which opened the session
+     * @param protocol protocol of the session, device is in programming mode
+     * @param ownsProtocol true if the protocol is closed with the session
+     * @param individualAddress
+     * @param deviceInfo
+     * @param keepAliveInterval idle ms after which the programming mode is
+     * set again, 0 = no keepalive
+     */
+    ProgrammingSession(KonnektingManagement mgt, ProgProtocol0x00 protocol, boolean ownsProtocol, String individualAddress, DeviceInfo deviceInfo, long keepAliveInterval) {
+        this.mgt = mgt;
+        this.protocol = protocol;
+        this.ownsProtocol = ownsProtocol;
+        this.individualAddress = individualAddress;
+        this.deviceInfo = deviceInfo;
+        this.keepAliveNanos = TimeUnit.MILLISECONDS.toNanos(keepAliveInterval);
+        if (keepAliveInterval > 0) {
+            // check twice per interval, so idle time never exceeds 1.5 intervals
+            long period = Math.max(1, keepAliveInterval / 2);
+            keepAliveTask = KEEPALIVE.scheduleAtFixedRate(this::keepAlive, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            keepAliveTask = null;
+        }
+    }
+
+    public String getIndividualAddress() {
+        return individualAddress;
+    }
+
+    public DeviceInfo getDeviceInfo() {
+        return deviceInfo;
+    }
+
+    ProgProtocol0x00 getProtocol() {
+        return protocol;
+    }
+
+    /**
+     * @return true until committed or closed. A lost session is still open
+     * and needs to be closed.
+     */
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * @return true if the device did not acknowledge a keepalive
+     */
+    public boolean isLost() {
+        return lost != null;
+    }
+
+    public void writeParameter(short id, byte[] data) throws KnxException {
+        check();
+        log.debug("Writing parameter #{}", id);
+        protocol.writeParameter((byte) id, data);
+        touch();
+    }
+
+    /**
+     * Async variant of {@link #writeParameter(short, byte[])}, used for
+     * pipelined writes.
+     *
+     * @param id
+     * @param data
+     * @return future, completed when device acknowledged the write
+     */
+    public CompletableFuture<Void> writeParameterAsync(short id, byte[] data) {
+        CompletableFuture<Void> failed = checkAsync();
+        if (failed != null) {
+            return failed;
+        }
+        log.debug("Writing parameter #{}", id);
+        return touched(protocol.writeParameterAsync((byte) id, data));
+    }
+
+    public void writeComObject(ComObject comObject) throws KnxException {
+        check();
+        log.debug("Writing ComObject #{}", comObject.getId());
+        protocol.writeComObject(comObject);
+        touch();
+    }
+
+    /**
+     * Async variant of {@link #writeComObject(de.konnekting.mgnt.ComObject)},
+     * used for pipelined writes.
+     *
+     * @param comObject
+     * @return future, completed when device acknowledged the write
+     */
+    public CompletableFuture<Void> writeComObjectAsync(ComObject comObject) {
+        CompletableFuture<Void> failed = checkAsync();
+        if (failed != null) {
+            return failed;
+        }
+        log.debug("Writing ComObject #{}", comObject.getId());
+        return touched(protocol.writeComObjectAsync(comObject));
+    }
+
+    /**
+     * Reads the value of a parameter as stored in the device
+     *
+     * @param id
+     * @return the 11 value bytes of the parameter
+     * @throws KnxException
+     */
+    public byte[] readParameter(short id) throws KnxException {
+        check();
+        byte[] value = protocol.readParameter((byte) id);
+        touch();
+        return value;
+    }
+
+    /**
+     * Reads a comobject as stored in the device
+     *
+     * @param id
+     * @return the comobject
+     * @throws KnxException
+     */
+    public ComObject readComObject(byte id) throws KnxException {
+        check();
+        ComObject comObject = protocol.readComObject(id);
+        touch();
+        return comObject;
+    }
+
+    /**
+     * Async variant of {@link #readParameter(short)}
+     *
+     * @param id
+     * @return future, completed with the 11 value bytes of the parameter
+     */
+    public CompletableFuture<byte[]> readParameterAsync(short id) {
+        CompletableFuture<byte[]> failed = checkAsync();
+        if (failed != null) {
+            return failed;
+        }
+        log.debug("Reading parameter #{}", id);
+        return touched(protocol.readParameterAsync((byte) id));
+    }
+
+    /**
+     * Async variant of {@link #readComObject(byte)}
+     *
+     * @param id
+     * @return future, completed with the comobject
+     */
+    public CompletableFuture<ComObject> readComObjectAsync(byte id) {
+        CompletableFuture<ComObject> failed = checkAsync();
+        if (failed != null) {
+            return failed;
+        }
+        log.debug("Reading ComObject #{}", id);
+        return touched(protocol.readComObjectAsync(id));
+    }
+
+    /**
+     * Ends the session: the device leaves programming mode and is restarted,
+     * so that it uses the written values.
+     *
+     * @throws KnxException
+     */
+    public void commit() throws KnxException {
+        check();
+        stop(true);
+        log.info("Committed programming session of {}", individualAddress);
+    }
+
+    /**
+     * Ends the session without restart: the device leaves programming mode,
+     * the written values are stored but maybe not used before the next
+     * restart. Has no effect after {@link #commit()}.
+     */
+    @Override
+    public void close() {
+        try {
+            if (stop(false)) {
+                log.info("Closed programming session of {}", individualAddress);
+            }
+        } catch (KnxException ex) {
+            log.warn("Cannot reset programming mode of " + individualAddress, ex);
+        }
+    }
+
+    /**
+     * Ends the session, once
+     *
+     * @param restart true to restart the device
+     * @return false if already ended
+     * @throws KnxException if the device did not leave programming mode or did
+     * not restart. The session is ended anyway.
+     */
+    boolean stop(boolean restart) throws KnxException {
+        synchronized (endLock) {
+            if (!open) {
+                return false;
+            }
+            open = false;
+        }
+        if (keepAliveTask != null) {
+            keepAliveTask.cancel(false);
+        }
+        try {
+            if (restart || lost == null) {
+                protocol.writeProgrammingMode(individualAddress, false);
+            }
+            if (restart) {
+                protocol.restart(individualAddress);
+            }
+        } finally {
+            mgt.sessionEnded(this);
+            if (ownsProtocol) {
+                protocol.close();
+            }
+        }
+        return true;
+    }
+
+    private void check() throws KnxException {
+        if (!open) {
+            throw new IllegalStateException("Programming session of " + individualAddress + " has been closed");
+        }
+        KnxException cause = lost;
+        if (cause != null) {
+            throw new KnxException("Programming session of " + individualAddress + " has been lost", cause);
+        }
+    }
+
+    private <T> CompletableFuture<T> checkAsync() {
+        try {
+            check();
+            return null;
+        } catch (KnxException ex) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(ex);
+            return failed;
+        }
+    }
+
+    private void touch() {
+        lastActivity = System.nanoTime();
+    }
+
+    private <T> CompletableFuture<T> touched(CompletableFuture<T> future) {
+        return future.whenComplete((v, t) -> {
+            if (t == null) {
+                touch();
+            }
+        });
+    }
+
+    private void keepAlive() {
+        if (!open || lost != null || System.nanoTime() - lastActivity < keepAliveNanos) {
+            return;
+        }
+        log.debug("Keepalive of programming session of {}", individualAddress);
+        touch();
+        protocol.writeProgrammingModeAsync(individualAddress, true).whenComplete((v, t) -> {
+            if (t != null && open) {
+                lost = new KnxException("Device did not acknowledge keepalive", t);
+                log.warn("Programming session of {} lost", individualAddress, t);
+            }
+        });
+    }
+
+    @Override
+    public String toString() {
+        return "ProgrammingSession{" + individualAddress + (open ? lost != null ? ", lost" : ", open" : ", closed") + "}";
+    }
+
+}
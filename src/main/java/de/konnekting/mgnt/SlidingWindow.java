@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2015 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of slicKnx.
+ *
+ *   slicKnx is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   slicKnx is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with slicKnx.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt;
+
+import de.konnekting.mgnt.protocol0x00.AnswerTimeoutException;
+import de.root1.slicknx.KnxException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs a list of request/answer operations with up to <code>windowSize</code>
+ * operations in flight. Operations that timed out are retransmitted
+ * selectively after the list has been processed, all others are not touched
+ * again.
+ * <p>
+ * A window size of 1 is the classic stop-and-wait behaviour. All listener
+ * callbacks are called on the thread calling {@link #run}.
+ *
+ * @author achristian
+ * @param <T> type of items the operations are working on
+ */
+public class SlidingWindow<T> {
+
+    private static final Logger log = LoggerFactory.getLogger(SlidingWindow.class);
+
+    /**
+     * Starts the operation for one item
+     */
+    public interface Operation<T> {
+
+        /**
+         * @param item
+         * @return future, completed when device answered
+         */
+        CompletableFuture<?> start(T item);
+    }
+
+    public interface Listener<T> {
+
+        /**
+         * Called when operation for item has been started
+         *
+         * @param item
+         */
+        void onStarted(T item);
+
+        /**
+         * Called when operation for item has completed successfully
+         *
+         * @param item
+         */
+        void onCompleted(T item);
+
+        /**
+         * Called when operation for item timed out and is going to be
+         * retransmitted
+         *
+         * @param item
+         */
+        default void onRetransmit(T item) {
+        }
+    }
+
+    private final int windowSize;
+    private final int maxRetransmissions;
+    private volatile boolean abort;
+
+    /**
+     * @param windowSize max number of operations in flight, at least 1
+     * @param maxRetransmissions how often timed out operations are retried,
+     * at least 0
+     */
+    public SlidingWindow(int windowSize, int maxRetransmissions) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("windowSize must be at least 1");
+        }
+        if (maxRetransmissions < 0) {
+            throw new IllegalArgumentException("maxRetransmissions must not be negative");
+        }
+        this.windowSize = windowSize;
+        this.maxRetransmissions = maxRetransmissions;
+    }
+
+    /**
+     * Stops starting new operations. Operations in flight are still awaited.
+     */
+    public void abort() {
+        abort = true;
+    }
+
+    /**
+     * Runs the operation for all items. Blocks until all operations completed.
+     *
+     * @param items items to process
+     * @param operation operation to start per item
+     * @param listener gets informed about progress, may be <code>null</code>
+     * @return true if all items have been processed, false if aborted
+     * @throws KnxException if an operation failed with something else than a
+     * timeout, or still timed out after all retransmissions
+     */
+    public boolean run(List<T> items, Operation<T> operation, Listener<T> listener) throws KnxException {
+        Deque<T> queue = new ArrayDeque<>(items);
+        BlockingQueue<Completion<T>> completions = new LinkedBlockingQueue<>();
+
+        for (int round = 0; round <= maxRetransmissions; round++) {
+            if (round > 0) {
+                log.info("Retransmitting {} unacknowledged items, round {}/{}", queue.size(), round, maxRetransmissions);
+            }
+            List<T> timedOut = new ArrayList<>();
+            KnxException failure = null;
+            int inFlight = 0;
+
+            while (!queue.isEmpty() || inFlight > 0) {
+                while (!abort && failure == null && inFlight < windowSize && !queue.isEmpty()) {
+                    final T item = queue.poll();
+                    if (listener != null) {
+                        listener.onStarted(item);
+                    }
+                    operation.start(item).whenComplete((result, t) -> completions.add(new Completion<>(item, t)));
+                    inFlight++;
+                }
+                if (inFlight == 0) {
+                    // aborted or failed, nothing left to wait for
+                    break;
+                }
+
+                Completion<T> completion;
+                try {
+                    completion = completions.take();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new KnxException("Interrupted while waiting for answers", ex);
+                }
+                inFlight--;
+
+                Throwable t = completion.error;
+                if (t instanceof CompletionException && t.getCause() != null) {
+                    t = t.getCause();
+                }
+                if (t == null) {
+                    if (listener != null) {
+                        listener.onCompleted(completion.item);
+                    }
+                } else if (t instanceof AnswerTimeoutException) {
+                    log.debug("No answer for {}, will be retransmitted", completion.item);
+                    timedOut.add(completion.item);
+                } else if (failure == null) {
+                    // stop sending, but let the ones in flight complete
+                    failure = t instanceof KnxException ? (KnxException) t : new KnxException("Operation failed for " + completion.item, t);
+                }
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
+            if (abort) {
+                return false;
+            }
+            if (timedOut.isEmpty()) {
+                return true;
+            }
+            if (round < maxRetransmissions && listener != null) {
+                for (T item : timedOut) {
+                    listener.onRetransmit(item);
+                }
+            }
+            queue.addAll(timedOut);
+        }
+        throw new AnswerTimeoutException("No answer for " + queue.size() + " items after " + maxRetransmissions + " retransmissions: " + queue);
+    }
+
+    private static class Completion<T> {
+
+        private final T item;
+        private final Throwable error;
+
+        Completion(T item, Throwable error) {
+            this.item = item;
+            this.error = error;
+        }
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2015 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of slicKnx.
+ *
+ *   slicKnx is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   slicKnx is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with slicKnx.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt;
+
+import de.konnekting.mgnt.protocol0x00.RttEstimator;
+import de.konnekting.mgnt.protocol0x00.TimeoutProfile;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persists learned {@link TimeoutProfile}s per device type, so that the next
+ * session with the same kind of device starts with tuned timeouts. Profiles
+ * are stored in a properties file, keyed by manufacturer, device and revision
+ * id:
+ * <pre>
+ * dead.be.af.30=12.5;3.1
+ * </pre> means: device 0xDEAD/0xBE/0xAF answers message type 30 (write
+ * parameter) with a smoothed rtt of 12.5ms and a variance of 3.1ms.
+ *
+ * @author achristian
+ */
+public class TimeoutProfileStore {
+
+    private static final Logger log = LoggerFactory.getLogger(TimeoutProfileStore.class);
+
+    private final File file;
+
+    /**
+     * @param file properties file to store profiles in, created on first save
+     */
+    public TimeoutProfileStore(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Restores stored estimates for given device type into the profile
+     *
+     * @param deviceInfo device type to load profile for
+     * @param profile profile to restore estimates into
+     * @return true if something was stored for this device type
+     * @throws IOException
+     */
+    public synchronized boolean load(DeviceInfo deviceInfo, TimeoutProfile profile) throws IOException {
+        Properties p = read();
+        String prefix = getKeyPrefix(deviceInfo);
+        boolean found = false;
+        for (String key : p.stringPropertyNames()) {
+            if (!key.startsWith(prefix)) {
+                continue;
+            }
+            try {
+                byte type = (byte) Integer.parseInt(key.substring(prefix.length()));
+                String[] values = p.getProperty(key).split(";");
+                profile.restore(type, Double.parseDouble(values[0]), Double.parseDouble(values[1]));
+                found = true;
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException ex) {
+                log.warn("Ignoring invalid timeout profile entry {}={}", key, p.getProperty(key));
+            }
+        }
+        log.debug("Loaded timeout profile for {}: {}", deviceInfo, profile);
+        return found;
+    }
+
+    /**
+     * Stores all known estimates of the profile for given device type
+     *
+     * @param deviceInfo device type to store profile for
+     * @param profile
+     * @throws IOException
+     */
+    public synchronized void save(DeviceInfo deviceInfo, TimeoutProfile profile) throws IOException {
+        Properties p = read();
+        String prefix = getKeyPrefix(deviceInfo);
+        for (Map.Entry<Byte, RttEstimator> entry : profile.getEstimators().entrySet()) {
+            RttEstimator estimator = entry.getValue();
+            if (estimator.hasEstimate()) {
+                p.setProperty(prefix + entry.getKey(), String.format(Locale.ROOT, "%.2f;%.2f", estimator.getSmoothedRtt(), estimator.getRttVariance()));
+            }
+        }
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Cannot create directory " + dir);
+        }
+        try (OutputStream out = new FileOutputStream(file)) {
+            p.store(out, "KONNEKTING timeout profiles: <manufacturer>.<device>.<revision>.<msgtype>=<srtt ms>;<rttvar ms>");
+        }
+        log.debug("Saved timeout profile for {}: {}", deviceInfo, profile);
+    }
+
+    private Properties read() throws IOException {
+        Properties p = new Properties();
+        if (file.exists()) {
+            try (InputStream in = new FileInputStream(file)) {
+                p.load(in);
+            }
+        }
+        return p;
+    }
+
+    private static String getKeyPrefix(DeviceInfo deviceInfo) {
+        return String.format("%04x.%02x.%02x.", deviceInfo.getManufacturerId(), deviceInfo.getDeviceId(), deviceInfo.getRevisionId());
+    }
+
+}
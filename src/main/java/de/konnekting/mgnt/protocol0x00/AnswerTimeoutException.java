@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2015 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of slicKnx.
+ *
+ *   slicKnx is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   slicKnx is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with slicKnx.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.protocol0x00;
+
+import de.root1.slicknx.KnxException;
+
+/**
+ * Thrown if a device did not answer a request in time. In contrast to a
+ * negative acknowledge, the request may simply be sent again.
+ *
+ * @author achristian
+ */
+public class AnswerTimeoutException extends KnxException {
+
+    public AnswerTimeoutException(String message) {
+        super(message);
+    }
+
+}
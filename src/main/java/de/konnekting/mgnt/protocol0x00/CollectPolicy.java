@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2015 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of slicKnx.
+ *
+ *   slicKnx is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   slicKnx is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with slicKnx.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.protocol0x00;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Decides when a broadcast query (f.i. "who is in programming mode?") has
+ * collected enough answers, so that it can return before the whole timeout
+ * elapsed. The answers are the distinct individual addresses of the
+ * responding devices, repeated telegrams don't count twice.
+ * <p>
+ * A query finishes as soon as the condition is met, or when no further device
+ * answered for the quiet period after the last answer, or at the latest when
+ * the timeout elapsed.
+ *
+ * @author achristian
+ */
+public final class CollectPolicy {
+
+    /**
+     * Collect until timeout
+     */
+    public static final CollectPolicy UNTIL_TIMEOUT = new CollectPolicy(addresses -> false, 0);
+
+    private final Predicate<List<String>> condition;
+    private final int quietPeriod;
+
+    /**
+     * @param condition tested with the addresses collected so far, true if
+     * the outcome is decided
+     * @param quietPeriod finish when no device answered for this number of
+     * ms after the last answer, 0 = wait for the timeout. Devices answering
+     * later than that are missed.
+     */
+    public CollectPolicy(Predicate<List<String>> condition, int quietPeriod) {
+        if (quietPeriod < 0) {
+            throw new IllegalArgumentException("quietPeriod must not be negative");
+        }
+        this.condition = condition;
+        this.quietPeriod = quietPeriod;
+    }
+
+    /**
+     * Finish with the first device answering with given address
+     *
+     * @param match
+     * @return policy
+     */
+    public static CollectPolicy firstMatch(final Predicate<String> match) {
+        return new CollectPolicy(addresses -> addresses.stream().anyMatch(match), 0);
+    }
+
+    /**
+     * Finish as soon as given number of devices answered, f.i. 2 to know that
+     * more than one device is in programming mode
+     *
+     * @param count number of distinct devices
+     * @return policy
+     */
+    public static CollectPolicy count(final int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("count must be at least 1");
+        }
+        return new CollectPolicy(addresses -> addresses.size() >= count, 0);
+    }
+
+    /**
+     * Finish when no further device answered for given time
+     *
+     * @param quietPeriod ms after last answer
+     * @return policy
+     */
+    public static CollectPolicy quietPeriod(int quietPeriod) {
+        return UNTIL_TIMEOUT.withQuietPeriod(quietPeriod);
+    }
+
+    /**
+     * @param quietPeriod ms after last answer, 0 = wait for the timeout
+     * @return same condition with given quiet period
+     */
+    public CollectPolicy withQuietPeriod(int quietPeriod) {
+        return new CollectPolicy(condition, quietPeriod);
+    }
+
+    /**
+     * @param addresses distinct addresses collected so far
+     * @return true if collecting can stop
+     */
+    public boolean isDone(List<String> addresses) {
+        return condition.test(addresses);
+    }
+
+    public int getQuietPeriod() {
+        return quietPeriod;
+    }
+
+    @Override
+    public String toString() {
+        return "CollectPolicy{quietPeriod=" + quietPeriod + "}";
+    }
+
+}
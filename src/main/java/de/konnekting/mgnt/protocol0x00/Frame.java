@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2015 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of slicKnx.
+ *
+ *   slicKnx is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   slicKnx is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with slicKnx.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.protocol0x00;
+
+import java.util.Arrays;
+
+/**
+ * Reusable view on a received 14 byte telegram. Frames are taken from a
+ * {@link FramePool} and only valid until they have been handled by the
+ * protocol thread. Answers that are kept longer (f.i. handed to a waiting
+ * request) are copied with {@link #toMessage()}, all others never allocate a
+ * message object.
+ *
+ * @author achristian
+ */
+final class Frame {
+
+    static final int LENGTH = 14;
+
+    private final byte[] data = new byte[LENGTH];
+
+    /**
+     * Copies telegram data into this frame
+     *
+     * @param telegram received data, must have {@link #LENGTH} bytes
+     * @return this frame
+     */
+    Frame wrap(byte[] telegram) {
+        System.arraycopy(telegram, 0, data, 0, LENGTH);
+        return this;
+    }
+
+    byte getProtocolVersion() {
+        return data[0];
+    }
+
+    byte getType() {
+        return data[1];
+    }
+
+    /**
+     * @return parameter/comobject id of answers carrying one
+     */
+    int getId() {
+        return data[2] & 0xff;
+    }
+
+    /**
+     * @return true if ACK/NACK refers to an index
+     */
+    boolean hasIndexInformation() {
+        return data[4] != MsgAck.NO_INDEX;
+    }
+
+    int getIndexInformation() {
+        return data[4] & 0xff;
+    }
+
+    /**
+     * @return individual address of device info answer
+     */
+    int getDeviceInfoAddress() {
+        return ((data[7] & 0xff) << 8) | (data[8] & 0xff);
+    }
+
+    byte get(int index) {
+        return data[index];
+    }
+
+    /**
+     * Creates a message owning a copy of the frame data
+     *
+     * @return message
+     */
+    ProgMessage toMessage() {
+        return ProgMessage.fromData(Arrays.copyOf(data, LENGTH));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Frame[%02x %02x %02x %02x %02x %02x %02x %02x %02x %02x %02x %02x %02x %02x]",
+            data[0],
+            data[1],
+            data[2],
+            data[3],
+            data[4],
+            data[5],
+            data[6],
+            data[7],
+            data[8],
+            data[9],
+            data[10],
+            data[11],
+            data[12],
+            data[13]);
+    }
+
+}
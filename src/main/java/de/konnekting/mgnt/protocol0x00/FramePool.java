@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2015 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of slicKnx.
+ *
+ *   slicKnx is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   slicKnx is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with slicKnx.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.protocol0x00;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed size, lock-free pool of receive frames. If all frames are in use (more
+ * receive threads than slots), a new frame is created and dropped again on
+ * release.
+ *
+ * @author achristian
+ */
+final class FramePool {
+
+    private final AtomicReferenceArray<Frame> slots;
+    private final AtomicLong created = new AtomicLong();
+
+    /**
+     * @param size number of frames kept in pool
+     */
+    FramePool(int size) {
+        slots = new AtomicReferenceArray<>(size);
+        for (int i = 0; i < size; i++) {
+            slots.set(i, new Frame());
+        }
+        created.set(size);
+    }
+
+    Frame acquire() {
+        for (int i = 0; i < slots.length(); i++) {
+            Frame frame = slots.getAndSet(i, null);
+            if (frame != null) {
+                return frame;
+            }
+        }
+        created.incrementAndGet();
+        return new Frame();
+    }
+
+    void release(Frame frame) {
+        for (int i = 0; i < slots.length(); i++) {
+            if (slots.get(i) == null && slots.compareAndSet(i, null, frame)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return number of frames created so far, stays constant once the pool
+     * is warm
+     */
+    long getCreatedCount() {
+        return created.get();
+    }
+
+}
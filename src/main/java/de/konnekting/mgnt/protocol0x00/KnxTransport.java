@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2015 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of slicKnx.
+ *
+ *   slicKnx is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   slicKnx is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with slicKnx.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.protocol0x00;
+
+import static de.konnekting.mgnt.protocol0x00.ProgProtocol0x00.PROG_GA;
+import de.root1.slicknx.GroupAddressEvent;
+import de.root1.slicknx.GroupAddressListener;
+import de.root1.slicknx.Knx;
+import de.root1.slicknx.KnxException;
+
+/**
+ * {@link TelegramTransport} on a slicKnx connection
+ *
+ * @author achristian
+ */
+public class KnxTransport implements TelegramTransport {
+
+    private final Knx knx;
+    private volatile Receiver receiver;
+
+    private final GroupAddressListener gal = new GroupAddressListener() {
+
+        @Override
+        public void readRequest(GroupAddressEvent event) {
+            // not handled
+        }
+
+        @Override
+        public void readResponse(GroupAddressEvent event) {
+            // not handled
+        }
+
+        @Override
+        public void write(GroupAddressEvent event) {
+            Receiver r = receiver;
+            if (r != null && event.getDestination().equals(PROG_GA)) {
+                r.received(event.getData());
+            }
+        }
+    };
+
+    public KnxTransport(Knx knx) {
+        this.knx = knx;
+    }
+
+    @Override
+    public void open(Receiver receiver) {
+        this.receiver = receiver;
+        knx.addGroupAddressListener(PROG_GA, gal);
+    }
+
+    @Override
+    public void close() {
+        knx.removeGroupAddressListener(PROG_GA, gal);
+        receiver = null;
+    }
+
+    @Override
+    public void send(byte[] telegram) throws KnxException {
+        knx.writeRaw(false, PROG_GA, telegram);
+    }
+
+    public Knx getKnx() {
+        return knx;
+    }
+
+    @Override
+    public String toString() {
+        return "KnxTransport{" + knx + "}";
+    }
+
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2015 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of slicKnx.
+ *
+ *   slicKnx is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   slicKnx is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with slicKnx.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.protocol0x00;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable state of {@link ProtocolMetrics} at one point in time, with text
+ * and JSON representation.
+ *
+ * @author achristian
+ */
+public final class MetricsSnapshot {
+
+    /**
+     * Round trip times of one request type or device, in ms
+     */
+    public static final class Latency {
+
+        private final long count;
+        private final double mean;
+        private final double p50;
+        private final double p90;
+        private final double p99;
+        private final double max;
+
+        Latency(LatencyHistogram histogram) {
+            count = histogram.getCount();
+            mean = histogram.getMean();
+            p50 = histogram.getPercentile(50);
+            p90 = histogram.getPercentile(90);
+            p99 = histogram.getPercentile(99);
+            max = histogram.getMax();
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public double getP50() {
+            return p50;
+        }
+
+        public double getP90() {
+            return p90;
+        }
+
+        public double getP99() {
+            return p99;
+        }
+
+        public double getMax() {
+            return max;
+        }
+
+        private String toText() {
+            return String.format(Locale.ROOT, "count=%d mean=%.1fms p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms", count, mean, p50, p90, p99, max);
+        }
+
+        private String toJson() {
+            return String.format(Locale.ROOT, "{\"count\":%d,\"mean\":%.3f,\"p50\":%.3f,\"p90\":%.3f,\"p99\":%.3f,\"max\":%.3f}", count, mean, p50, p90, p99, max);
+        }
+    }
+
+    private final long timestamp;
+    private final long sentCount;
+    private final long receivedCount;
+    private final long staleCount;
+    private final long unknownCount;
+    private final long retryCount;
+    private final Map<String, Latency> latencyByType;
+    private final Map<String, Latency> latencyByDevice;
+    private final Map<String, Long> timeoutsByType;
+    private final Map<Integer, Long> nacksByErrorCode;
+
+    MetricsSnapshot(long timestamp, long sentCount, long receivedCount, long staleCount, long unknownCount, long retryCount,
+        Map<String, Latency> latencyByType, Map<String, Latency> latencyByDevice, Map<String, Long> timeoutsByType, Map<Integer, Long> nacksByErrorCode) {
+        this.timestamp = timestamp;
+        this.sentCount = sentCount;
+        this.receivedCount = receivedCount;
+        this.staleCount = staleCount;
+        this.unknownCount = unknownCount;
+        this.retryCount = retryCount;
+        this.latencyByType = Collections.unmodifiableMap(latencyByType);
+        this.latencyByDevice = Collections.unmodifiableMap(latencyByDevice);
+        this.timeoutsByType = Collections.unmodifiableMap(timeoutsByType);
+        this.nacksByErrorCode = Collections.unmodifiableMap(nacksByErrorCode);
+    }
+
+    /**
+     * @return time the snapshot has been taken, ms since epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getSentCount() {
+        return sentCount;
+    }
+
+    public long getReceivedCount() {
+        return receivedCount;
+    }
+
+    public long getStaleCount() {
+        return staleCount;
+    }
+
+    public long getUnknownCount() {
+        return unknownCount;
+    }
+
+    public long getRetryCount() {
+        return retryCount;
+    }
+
+    /**
+     * @return round trip times by request type name, f.i. "WRITE_PARAMETER"
+     */
+    public Map<String, Latency> getLatencyByType() {
+        return latencyByType;
+    }
+
+    /**
+     * @return round trip times by individual address
+     */
+    public Map<String, Latency> getLatencyByDevice() {
+        return latencyByDevice;
+    }
+
+    /**
+     * @return number of timeouts by request type name
+     */
+    public Map<String, Long> getTimeoutsByType() {
+        return timeoutsByType;
+    }
+
+    /**
+     * @return number of NACKs by error code
+     */
+    public Map<Integer, Long> getNacksByErrorCode() {
+        return nacksByErrorCode;
+    }
+
+    /**
+     * @return human readable, multi line representation
+     */
+    public String toText() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("sent=").append(sentCount)
+            .append(" received=").append(receivedCount)
+            .append(" stale=").append(staleCount)
+            .append(" unknown=").append(unknownCount)
+            .append(" retries=").append(retryCount)
+            .append('\n');
+        for (Map.Entry<String, Latency> entry : latencyByType.entrySet()) {
+            sb.append("latency ").append(entry.getKey()).append(": ").append(entry.getValue().toText()).append('\n');
+        }
+        for (Map.Entry<String, Latency> entry : latencyByDevice.entrySet()) {
+            sb.append("latency device ").append(entry.getKey()).append(": ").append(entry.getValue().toText()).append('\n');
+        }
+        for (Map.Entry<String, Long> entry : timeoutsByType.entrySet()) {
+            sb.append("timeouts ").append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+        }
+        for (Map.Entry<Integer, Long> entry : nacksByErrorCode.entrySet()) {
+            sb.append("nacks ").append(String.format("0x%02x", entry.getKey())).append(": ").append(entry.getValue()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return JSON representation, one object
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"timestamp\":").append(timestamp)
+            .append(",\"sent\":").append(sentCount)
+            .append(",\"received\":").append(receivedCount)
+            .append(",\"stale\":").append(staleCount)
+            .append(",\"unknown\":").append(unknownCount)
+            .append(",\"retries\":").append(retryCount)
+            .append(",\"latencyByType\":{");
+        appendLatencies(sb, latencyByType);
+        sb.append("},\"latencyByDevice\":{");
+        appendLatencies(sb, latencyByDevice);
+        sb.append("},\"timeoutsByType\":{");
+        String separator = "";
+        for (Map.Entry<String, Long> entry : timeoutsByType.entrySet()) {
+            sb.append(separator).append('"').append(entry.getKey()).append("\":").append(entry.getValue());
+            separator = ",";
+        }
+        sb.append("},\"nacksByErrorCode\":{");
+        separator = "";
+        for (Map.Entry<Integer, Long> entry : nacksByErrorCode.entrySet()) {
+            sb.append(separator).append('"').append(entry.getKey()).append("\":").append(entry.getValue());
+            separator = ",";
+        }
+        sb.append("}}");
+        return sb.toString();
+    }
+
+    private static void appendLatencies(StringBuilder sb, Map<String, Latency> latencies) {
+        String separator = "";
+        for (Map.Entry<String, Latency> entry : latencies.entrySet()) {
+            sb.append(separator).append('"').append(entry.getKey()).append("\":").append(entry.getValue().toJson());
+            separator = ",";
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsSnapshot{" + toJson() + "}";
+    }
+
+}
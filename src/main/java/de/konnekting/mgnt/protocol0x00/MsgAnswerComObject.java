@@ -33,7 +33,10 @@ class MsgAnswerComObject extends ProgMessage {
     }
     
     public ComObject getComObject() throws KnxException {
-        return new ComObject(data[2], Utils.getGroupAddress(data[3], data[4]).toString());
+        ComObject co = new ComObject(data[2], Utils.getGroupAddress(data[3], data[4]).toString());
+        // left most bit of settings is set if CO is active, same as in MsgWriteComObject
+        co.setActive((data[5] & 0x80) == 0x80);
+        return co;
     }
     
 }
@@ -13,6 +13,10 @@ import static de.konnekting.mgnt.protocol0x00.ProgProtocol0x00.MSGTYPE_READ_COM_
  */
 class MsgReadComObject extends ProgMessage {
 
+    public MsgReadComObject(byte[] data) {
+        super(data);
+    }
+
     public MsgReadComObject(Byte id) {
         super(MSGTYPE_READ_COM_OBJECT);
 
@@ -15,6 +15,10 @@ import static de.konnekting.mgnt.protocol0x00.ProgProtocol0x00.MSGTYPE_READ_DEVI
  */
 class MsgReadDeviceInfo extends ProgMessage {
 
+    public MsgReadDeviceInfo(byte[] data) {
+        super(data);
+    }
+
     public MsgReadDeviceInfo(String individualAddress) throws KnxException {
         super(MSGTYPE_READ_DEVICE_INFO);
         System.arraycopy(Utils.getIndividualAddress(individualAddress).toByteArray(), 0, data, 2, 2);
@@ -13,6 +13,10 @@ import static de.konnekting.mgnt.protocol0x00.ProgProtocol0x00.MSGTYPE_READ_PARA
  */
 class MsgReadParameter extends ProgMessage {
 
+    public MsgReadParameter(byte[] data) {
+        super(data);
+    }
+
     public MsgReadParameter(byte id) {
         super(MSGTYPE_READ_PARAMETER);
         data[2] = id;
@@ -11,6 +11,10 @@ package de.konnekting.mgnt.protocol0x00;
  */
 class MsgReadProgrammingMode extends ProgMessage {
 
+    public MsgReadProgrammingMode(byte[] data) {
+        super(data);
+    }
+
     public MsgReadProgrammingMode() {
         super(ProgProtocol0x00.MSGTYPE_READ_PROGRAMMING_MODE);
     }
@@ -16,6 +16,10 @@ import static de.konnekting.mgnt.protocol0x00.ProgProtocol0x00.MSGTYPE_WRITE_COM
  */
 class MsgWriteComObject extends ProgMessage {
 
+    public MsgWriteComObject(byte[] data) {
+        super(data);
+    }
+
     public MsgWriteComObject(ComObject co) throws KnxException {
         super(MSGTYPE_WRITE_COM_OBJECT);
 
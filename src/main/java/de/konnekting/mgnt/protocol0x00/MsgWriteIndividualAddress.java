@@ -16,6 +16,10 @@ import tuwien.auto.calimero.IndividualAddress;
  */
 class MsgWriteIndividualAddress extends ProgMessage {
 
+    public MsgWriteIndividualAddress(byte[] data) {
+        super(data);
+    }
+
     public MsgWriteIndividualAddress(String address) throws KnxException {
         super(MSGTYPE_WRITE_INDIVIDUAL_ADDRESS);
         IndividualAddress ia = Utils.getIndividualAddress(address);
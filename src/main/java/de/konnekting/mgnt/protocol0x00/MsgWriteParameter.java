@@ -14,6 +14,10 @@ import static de.konnekting.mgnt.protocol0x00.ProgProtocol0x00.MSGTYPE_WRITE_PAR
  */
 class MsgWriteParameter extends ProgMessage {
 
+    public MsgWriteParameter(byte[] data) {
+        super(data);
+    }
+
     public MsgWriteParameter(byte id, byte[] paramData) {
         super(MSGTYPE_WRITE_PARAMETER);
         data[2] = id;
@@ -15,6 +15,10 @@ import static de.konnekting.mgnt.protocol0x00.ProgProtocol0x00.MSGTYPE_WRITE_PRO
  */
 class MsgWriteProgrammingMode extends ProgMessage {
 
+    public MsgWriteProgrammingMode(byte[] data) {
+        super(data);
+    }
+
     public MsgWriteProgrammingMode(String individualAddress, boolean progMode) throws KnxException {
         super(MSGTYPE_WRITE_PROGRAMMING_MODE);
         System.arraycopy(Utils.getIndividualAddress(individualAddress).toByteArray(), 0, data, 2, 2);
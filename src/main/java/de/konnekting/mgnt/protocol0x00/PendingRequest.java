@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2015 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of slicKnx.
+ *
+ *   slicKnx is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   slicKnx is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with slicKnx.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.protocol0x00;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * A request that has been sent and is waiting for its answer. Requests are
+ * identified by the expected answer type plus, where the answer carries it,
+ * the parameter/comobject id and the individual address of the device.
+ *
+ * @author achristian
+ */
+class PendingRequest<T extends ProgMessage> {
+
+    /**
+     * Wildcard for id or address: matches any value
+     */
+    static final int ANY = -1;
+
+    private final byte requestType;
+    private final int device;
+    private final byte answerType;
+    private final int id;
+    private final int address;
+    private final Class<T> answerClass;
+    private final RttEstimator estimator;
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+    private volatile long sentAt = System.nanoTime();
+    private volatile boolean retransmitted;
+    private volatile ScheduledFuture<?> timeoutTask;
+
+    /**
+     * @param requestType message type of the request
+     * @param device individual address of the requested device, or
+     * {@link #ANY} if not known
+     * @param answerType expected answer type
+     * @param id expected id, or {@link #ANY}
+     * @param address expected address, or {@link #ANY}
+     * @param answerClass class of expected answer
+     * @param estimator gets the measured round trip time, may be
+     * <code>null</code>
+     */
+    PendingRequest(byte requestType, int device, byte answerType, int id, int address, Class<T> answerClass, RttEstimator estimator) {
+        this.requestType = requestType;
+        this.device = device;
+        this.answerType = answerType;
+        this.id = id;
+        this.address = address;
+        this.answerClass = answerClass;
+        this.estimator = estimator;
+    }
+
+    /**
+     * Checks if given answer belongs to this request
+     *
+     * @param type answer message type
+     * @param id id carried in answer, or {@link #ANY} if answer has no id
+     * @param address individual address carried in answer, or {@link #ANY}
+     * @param exact if <code>true</code>, a wildcard on request side does not
+     * match a concrete id of the answer
+     * @return true if matching
+     */
+    boolean matches(byte type, int id, int address, boolean exact) {
+        if (type != answerType) {
+            return false;
+        }
+        return matchField(this.id, id, exact) && matchField(this.address, address, exact);
+    }
+
+    private static boolean matchField(int expected, int actual, boolean exact) {
+        if (expected == actual || actual == ANY) {
+            return true;
+        }
+        return !exact && expected == ANY;
+    }
+
+    /**
+     * Called when the request actually has been sent, after waiting in the
+     * send queue. Round trip time is measured from here.
+     */
+    void markSent() {
+        sentAt = System.nanoTime();
+    }
+
+    /**
+     * Marks this request as sent again after an earlier one with the same
+     * signature timed out. Its answer may be the late answer of the earlier
+     * request, so the round trip time is not measured (Karn's algorithm).
+     */
+    void setRetransmitted() {
+        retransmitted = true;
+    }
+
+    boolean isRetransmitted() {
+        return retransmitted;
+    }
+
+    /**
+     * @return identifies requests answered by the same answers
+     */
+    long getSignature() {
+        return (answerType & 0xffL) << 48 | (id & 0xffffL) << 32 | (address & 0xffffL) << 16 | (device & 0xffffL);
+    }
+
+    void setTimeoutTask(ScheduledFuture<?> timeoutTask) {
+        this.timeoutTask = timeoutTask;
+    }
+
+    void complete(ProgMessage msg) {
+        cancelTimeout();
+        // keeps the backoff of a retransmitted request, too
+        if (estimator != null && !retransmitted) {
+            estimator.sample(getElapsedNanos() / 1000000d);
+        }
+        future.complete(answerClass.cast(msg));
+    }
+
+    /**
+     * Called if no answer was received in time
+     */
+    void timedOut() {
+        if (estimator != null) {
+            estimator.timedOut();
+        }
+    }
+
+    void fail(Throwable t) {
+        cancelTimeout();
+        future.completeExceptionally(t);
+    }
+
+    private void cancelTimeout() {
+        if (timeoutTask != null) {
+            timeoutTask.cancel(false);
+        }
+    }
+
+    CompletableFuture<T> getFuture() {
+        return future;
+    }
+
+    byte getRequestType() {
+        return requestType;
+    }
+
+    int getDevice() {
+        return device;
+    }
+
+    Class<T> getAnswerClass() {
+        return answerClass;
+    }
+
+    /**
+     * @return nanoseconds elapsed since this request was sent
+     */
+    long getElapsedNanos() {
+        return System.nanoTime() - sentAt;
+    }
+
+    @Override
+    public String toString() {
+        return "PendingRequest{answer=" + answerClass.getSimpleName()
+            + ", id=" + (id == ANY ? "any" : String.format("0x%02x", id))
+            + ", address=" + (address == ANY ? "any" : String.format("0x%04x", address))
+            + "}";
+    }
+
+}
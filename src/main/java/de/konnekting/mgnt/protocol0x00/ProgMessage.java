@@ -18,7 +18,7 @@
  */
 package de.konnekting.mgnt.protocol0x00;
 
-import static de.konnekting.mgnt.protocol0x00.ProgProtocol0x00.PROTOCOL_VERSION;
+import static de.konnekting.mgnt.protocol0x00.ProgProtocol0x00.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,7 +28,7 @@ import org.slf4j.LoggerFactory;
  */
 abstract class ProgMessage {
     
-    protected Logger log = LoggerFactory.getLogger(ProgMessage.class);
+    protected static final Logger log = LoggerFactory.getLogger(ProgMessage.class);
     protected final byte[] data;
 
     public ProgMessage(byte[] message) {
@@ -44,6 +44,52 @@ abstract class ProgMessage {
         }
     }
 
+    /**
+     * Creates the matching message class for raw telegram data
+     *
+     * @param data 14 bytes of telegram data, not copied
+     * @return message, a generic one for unknown types
+     */
+    static ProgMessage fromData(byte[] data) {
+        switch (data[1]) {
+            case MSGTYPE_ACK:
+                return new MsgAck(data);
+            case MSGTYPE_READ_DEVICE_INFO:
+                return new MsgReadDeviceInfo(data);
+            case MSGTYPE_ANSWER_DEVICE_INFO:
+                return new MsgAnswerDeviceInfo(data);
+            case MSGTYPE_RESTART:
+                return new MsgRestart(data);
+            case MSGTYPE_WRITE_PROGRAMMING_MODE:
+                return new MsgWriteProgrammingMode(data);
+            case MSGTYPE_READ_PROGRAMMING_MODE:
+                return new MsgReadProgrammingMode(data);
+            case MSGTYPE_ANSWER_PROGRAMMING_MODE:
+                return new MsgAnswerProgrammingMode(data);
+            case MSGTYPE_WRITE_INDIVIDUAL_ADDRESS:
+                return new MsgWriteIndividualAddress(data);
+            case MSGTYPE_READ_INDIVIDUAL_ADDRESS:
+                return new MsgReadIndividualAddress(data);
+            case MSGTYPE_ANSWER_INDIVIDUAL_ADDRESS:
+                return new MsgAnswerIndividualAddress(data);
+            case MSGTYPE_WRITE_PARAMETER:
+                return new MsgWriteParameter(data);
+            case MSGTYPE_READ_PARAMETER:
+                return new MsgReadParameter(data);
+            case MSGTYPE_ANSWER_PARAMETER:
+                return new MsgAnswerParameter(data);
+            case MSGTYPE_WRITE_COM_OBJECT:
+                return new MsgWriteComObject(data);
+            case MSGTYPE_READ_COM_OBJECT:
+                return new MsgReadComObject(data);
+            case MSGTYPE_ANSWER_COM_OBJECT:
+                return new MsgAnswerComObject(data);
+            default:
+                return new ProgMessage(data) {
+                };
+        }
+    }
+
     public byte getType() {
         return data[1];
     }
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2015 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of slicKnx.
+ *
+ *   slicKnx is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   slicKnx is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with slicKnx.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.protocol0x00;
+
+import static de.konnekting.mgnt.protocol0x00.ProgProtocol0x00.*;
+import de.root1.slicknx.KnxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Passively watches {@link ProgProtocol0x00#PROG_GA} for devices reporting to
+ * be in programming mode, no matter if the report answers an own query, the
+ * query of another tool, or is sent by the device on its own when its
+ * programming button is pressed. A waiting thread is woken up with the first
+ * report.
+ *
+ * @author achristian
+ */
+final class ProgModeWatcher {
+
+    private final List<String> addresses = new ArrayList<>();
+    private long lastAnswerNanos;
+    private boolean closed;
+
+    boolean accepts(byte type) {
+        return type == MSGTYPE_ANSWER_INDIVIDUAL_ADDRESS || type == MSGTYPE_ANSWER_PROGRAMMING_MODE;
+    }
+
+    /**
+     * Adds a report. Runs on the protocol thread.
+     *
+     * @param msg answer with the address of a device in programming mode
+     */
+    synchronized void offer(ProgMessage msg) {
+        String address;
+        try {
+            if (msg instanceof MsgAnswerIndividualAddress) {
+                address = ((MsgAnswerIndividualAddress) msg).getAddress();
+            } else {
+                address = ((MsgAnswerProgrammingMode) msg).getAddress();
+            }
+        } catch (KnxException ex) {
+            return;
+        }
+        lastAnswerNanos = System.nanoTime();
+        // repeated telegrams don't count twice
+        if (!addresses.contains(address)) {
+            addresses.add(address);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Waits until given number of devices reported
+     *
+     * @param count number of distinct devices
+     * @param deadlineNanos {@link System#nanoTime()} to give up at
+     * @return distinct addresses reported so far, less than count if the
+     * deadline elapsed
+     * @throws KnxException if interrupted or the protocol has been closed
+     */
+    synchronized List<String> await(int count, long deadlineNanos) throws KnxException {
+        long remaining;
+        while (!closed && addresses.size() < count && (remaining = deadlineNanos - System.nanoTime()) > 0) {
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new KnxException("Interrupted while waiting for programming button", ex);
+            }
+        }
+        if (closed) {
+            throw new KnxException("Protocol has been closed");
+        }
+        return new ArrayList<>(addresses);
+    }
+
+    /**
+     * @return {@link System#nanoTime()} of the last report, including repeated
+     * ones
+     */
+    synchronized long getLastAnswerNanos() {
+        return lastAnswerNanos;
+    }
+
+    /**
+     * Forgets the devices reported so far
+     */
+    synchronized void clear() {
+        addresses.clear();
+    }
+
+    /**
+     * Wakes up waiting threads, which fail then
+     */
+    synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+}
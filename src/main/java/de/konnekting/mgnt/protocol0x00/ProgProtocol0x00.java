@@ -18,15 +18,27 @@
  */
 package de.konnekting.mgnt.protocol0x00;
 
-import de.root1.slicknx.GroupAddressEvent;
-import de.root1.slicknx.GroupAddressListener;
 import de.root1.slicknx.Knx;
 import de.root1.slicknx.KnxException;
+import de.root1.slicknx.Utils;
 import de.konnekting.mgnt.ComObject;
 import de.konnekting.mgnt.DeviceInfo;
+import de.konnekting.mgnt.ManagementBeans;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import javax.management.ObjectName;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,23 +46,70 @@ import org.slf4j.LoggerFactory;
  *
  * @author achristian
  */
-public class ProgProtocol0x00 {
+public class ProgProtocol0x00 implements AutoCloseable, ProgProtocol0x00MXBean {
 
     private static final Logger log = LoggerFactory.getLogger(ProgProtocol0x00.class);
-    private static final Logger plog = LoggerFactory.getLogger("ProgrammingLogger");
 
+    /**
+     * Creates a protocol instance. All instances on the same connection share
+     * one listener and protocol thread, so each telegram is decoded only
+     * once. Instances have to be {@link #close() closed} when no longer
+     * needed.
+     *
+     * @param knx connection
+     * @return new instance
+     */
     public static ProgProtocol0x00 getInstance(Knx knx) {
+        return new ProgProtocol0x00(ProtocolDispatcher.acquire(knx), getDefaultWaitTimeout());
+    }
+
+    /**
+     * Same as {@link #getInstance(de.root1.slicknx.Knx)}, but on any
+     * transport, f.i. a {@link ReplayTransport}
+     *
+     * @param transport
+     * @return new instance
+     */
+    public static ProgProtocol0x00 getInstance(TelegramTransport transport) {
+        return new ProgProtocol0x00(ProtocolDispatcher.acquire(transport), getDefaultWaitTimeout());
+    }
+
+    private static int getDefaultWaitTimeout() {
         boolean debug = Boolean.getBoolean("de.root1.slicknx.konnekting.debug");
         if (debug) {
-            WAIT_TIMEOUT = 5000;
             log.info("###### RUNNING DEBUG MODE #######");
         }
-        return new ProgProtocol0x00(knx);
+        return debug ? DEBUG_WAIT_TIMEOUT : WAIT_TIMEOUT;
     }
 
-    private final Knx knx;
+    private final ProtocolDispatcher dispatcher;
 
-    private static int WAIT_TIMEOUT = 500; // produktiv: 500ms, debug: 5000ms
+    /**
+     * Timeout until the answer times of a device are known, and for collecting
+     * answers to broadcast queries
+     */
+    private static final int WAIT_TIMEOUT = 500;
+    private static final int DEBUG_WAIT_TIMEOUT = 5000;
+
+    /**
+     * Bounds for the learned timeouts
+     */
+    private static final int MIN_TIMEOUT = 30;
+    private static final int MAX_TIMEOUT = 5000;
+
+    private final int waitTimeout;
+
+    /**
+     * Interval of queries for devices in programming mode while waiting for
+     * the programming button
+     */
+    public static final int DEFAULT_PROBE_INTERVAL = 1000;
+
+    /**
+     * Quiet period learned from the answer times of broadcast queries on the
+     * connection, see {@link #setQuietPeriod(int)}
+     */
+    public static final int QUIET_PERIOD_AUTO = -1;
 
     public static final String PROG_GA = "15/7/255";
     public static final byte PROTOCOL_VERSION = 0x00;
@@ -76,195 +135,531 @@ public class ProgProtocol0x00 {
     public static final byte MSGTYPE_READ_COM_OBJECT = 41;
     public static final byte MSGTYPE_ANSWER_COM_OBJECT = 42;
 
-    private final List<ProgMessage> receivedMessages = new ArrayList<>();
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+    private static final ThreadFactory DAEMON_THREADS = r -> {
+        Thread t = new Thread(r, "ProgProtocol0x00-" + THREAD_COUNT.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    };
 
-    private final GroupAddressListener gal = new GroupAddressListener() {
+    /**
+     * runs the long running, multi-message async operations
+     */
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(DAEMON_THREADS);
 
-        @Override
-        public void readRequest(GroupAddressEvent event) {
-            // not handled
+    /**
+     * Address of the device which has been set into programming mode, target
+     * of parameter and comobject requests
+     */
+    private volatile int progModeAddress = PendingRequest.ANY;
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile ObjectName objectName;
+    private volatile RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+    private volatile int quietPeriod = QUIET_PERIOD_AUTO;
+    private volatile int probeInterval = DEFAULT_PROBE_INTERVAL;
+
+    private ProgProtocol0x00(ProtocolDispatcher dispatcher, int waitTimeout) {
+        this.dispatcher = dispatcher;
+        this.waitTimeout = waitTimeout;
+    }
+
+    /**
+     * Releases this instance. The shared listener and threads of the
+     * connection are stopped when the last instance on the connection has
+     * been closed. Requests still waiting for their answer then fail. Further
+     * requests of this instance fail immediately. Calling close more than once
+     * has no effect.
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            ManagementBeans.unregister(objectName);
+            dispatcher.release();
         }
+    }
 
-        @Override
-        public void readResponse(GroupAddressEvent event) {
-            // not handled
+    /**
+     * Sets how requests of this instance are repeated after a timeout or
+     * NACK, default is {@link RetryPolicy#DEFAULT}
+     *
+     * @param retryPolicy
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        if (retryPolicy == null) {
+            throw new IllegalArgumentException("retryPolicy must not be null, use RetryPolicy.NONE");
         }
+        this.retryPolicy = retryPolicy;
+    }
 
-        @Override
-        public void write(GroupAddressEvent event) {
-
-            if (event.getDestination().equals(PROG_GA) && event.getData().length == 14 && event.getData()[0] == PROTOCOL_VERSION) {
-                // seems to be relevant
-                byte[] data = event.getData();
-                ProgMessage msg = null;
-                byte type = data[1];
-
-                switch (type) {
-
-                    // handle answer messages
-                    case MSGTYPE_ACK:
-                        msg = new MsgAck(data);
-                        break;
-                    case MSGTYPE_ANSWER_COM_OBJECT:
-                        msg = new MsgAnswerComObject(data);
-                        break;
-                    case MSGTYPE_ANSWER_DEVICE_INFO:
-                        msg = new MsgAnswerDeviceInfo(data);
-                        break;
-                    case MSGTYPE_ANSWER_INDIVIDUAL_ADDRESS:
-                        msg = new MsgAnswerIndividualAddress(data);
-                        break;
-                    case MSGTYPE_ANSWER_PROGRAMMING_MODE:
-                        msg = new MsgAnswerProgrammingMode(data);
-                        break;
-                    case MSGTYPE_ANSWER_PARAMETER:
-                        msg = new MsgAnswerParameter(data);
-                        break;
-
-                    // do nothing, we sent those messages...
-                    case MSGTYPE_READ_COM_OBJECT:
-                    case MSGTYPE_READ_DEVICE_INFO:
-                    case MSGTYPE_READ_INDIVIDUAL_ADDRESS:
-                    case MSGTYPE_READ_PARAMETER:
-                    case MSGTYPE_READ_PROGRAMMING_MODE:
-                    case MSGTYPE_RESTART:
-                    case MSGTYPE_WRITE_COM_OBJECT:
-                    case MSGTYPE_WRITE_INDIVIDUAL_ADDRESS:
-                    case MSGTYPE_WRITE_PARAMETER:
-                    case MSGTYPE_WRITE_PROGRAMMING_MODE:
-                        break;
-
-                    // log everything else     
-                    default:
-                        plog.warn("Received unknown/invalid message: {}", new ProgMessage(data) {
-                        });
-                }
-                if (msg != null) {
-                    synchronized (receivedMessages) {
-                        plog.info("Received message: {}", msg);
-                        receivedMessages.add(msg);
-                        receivedMessages.notifyAll();
-                    }
-                }
+    /**
+     * @param other
+     * @return true if both instances use the same connection
+     */
+    public boolean isSameConnection(ProgProtocol0x00 other) {
+        return dispatcher == other.dispatcher;
+    }
 
-            }
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Sets the quiet period of the broadcast queries used internally, f.i. by
+     * {@link #onlyOneDeviceInProgMode()}: they finish when no further device
+     * answered for this time after the last answer, instead of waiting for
+     * the whole timeout. A device answering later than the quiet period is
+     * missed.
+     * <p>
+     * Default is {@link #QUIET_PERIOD_AUTO}: the learned timeout for the first
+     * answer to a broadcast query on this connection, so that a single device
+     * in programming mode finishes the query early. Until answers have been
+     * measured, the whole timeout is waited.
+     *
+     * @param quietPeriod ms after the last answer, 0 = wait for the timeout,
+     * or {@link #QUIET_PERIOD_AUTO}
+     * @see CollectPolicy#withQuietPeriod(int)
+     */
+    public void setQuietPeriod(int quietPeriod) {
+        if (quietPeriod < 0 && quietPeriod != QUIET_PERIOD_AUTO) {
+            throw new IllegalArgumentException("quietPeriod must not be negative");
         }
-    };
+        this.quietPeriod = quietPeriod;
+    }
+
+    public int getQuietPeriod() {
+        return quietPeriod;
+    }
+
+    /**
+     * @return quiet period in ms to use for the next broadcast query, 0 = wait
+     * for the timeout
+     */
+    private int getEffectiveQuietPeriod() {
+        if (quietPeriod != QUIET_PERIOD_AUTO) {
+            return quietPeriod;
+        }
+        RttEstimator estimator = getBroadcastEstimator();
+        return estimator.hasEstimate() ? Math.min(estimator.getTimeout(), waitTimeout) : 0;
+    }
+
+    private RttEstimator getBroadcastEstimator() {
+        return dispatcher.getBroadcastEstimator(waitTimeout, MIN_TIMEOUT, waitTimeout);
+    }
+
+    /**
+     * Sets how often devices in programming mode are queried while waiting
+     * for the programming button. Devices reporting on their own are detected
+     * immediately anyway.
+     *
+     * @param probeInterval ms between queries
+     */
+    public void setProbeInterval(int probeInterval) {
+        if (probeInterval < 1) {
+            throw new IllegalArgumentException("probeInterval must be at least 1");
+        }
+        this.probeInterval = probeInterval;
+    }
 
-    private ProgProtocol0x00(Knx knx) {
-        this.knx = knx;
-        knx.addGroupAddressListener(PROG_GA, gal);
+    public int getProbeInterval() {
+        return probeInterval;
     }
 
     /**
-     * Wait for messages.
+     * Registers this instance as MBean, it is unregistered again on
+     * {@link #close()}
      *
-     * @param timeout milliseconds to wait for messages
-     * @param returnOnFirstMsg if method should return on first received message
-     * @return
+     * @param name name of the bean, f.i. the name of the session
      */
-    private List<ProgMessage> waitForMessage(int timeout, boolean returnOnFirstMsg) {
-        log.debug("Waiting for message. timeout={} returnOnFirst={}", timeout, returnOnFirstMsg);
-        long start = System.currentTimeMillis();
-        List<ProgMessage> list = new ArrayList<>();
-        while ((System.currentTimeMillis() - start) < timeout) {
-            synchronized (receivedMessages) {
-                try {
+    public void registerMBean(String name) {
+        ManagementBeans.unregister(objectName);
+        objectName = ManagementBeans.register(this, "ProgProtocol0x00", name);
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * Sets what happens to received telegrams if the protocol thread can't
+     * keep up, default is {@link OverloadPolicy#DROP_NEWEST}
+     *
+     * @param overloadPolicy
+     */
+    public void setOverloadPolicy(OverloadPolicy overloadPolicy) {
+        dispatcher.getLoop().setOverloadPolicy(overloadPolicy);
+    }
+
+    public OverloadPolicy getOverloadPolicy() {
+        return dispatcher.getLoop().getOverloadPolicy();
+    }
+
+    @Override
+    public String getProgModeAddress() {
+        int address = progModeAddress;
+        return address == PendingRequest.ANY ? null : ProtocolMetrics.toIndividualAddress(address);
+    }
+
+    @Override
+    public int getPendingRequestCount() {
+        return dispatcher.getPendingCount();
+    }
+
+    @Override
+    public int getSendQueueDepth() {
+        return dispatcher.getSendScheduler().getQueueDepth();
+    }
+
+    @Override
+    public long getSentTelegramCount() {
+        return dispatcher.getSendScheduler().getSentCount();
+    }
+
+    @Override
+    public double getThroughput() {
+        return dispatcher.getSendScheduler().getThroughput();
+    }
+
+    @Override
+    public double getTelegramsPerSecond() {
+        return dispatcher.getSendScheduler().getTelegramsPerSecond();
+    }
 
-                    receivedMessages.wait(timeout / 10);
+    @Override
+    public void setTelegramsPerSecond(double telegramsPerSecond) {
+        dispatcher.getSendScheduler().setTelegramsPerSecond(telegramsPerSecond);
+    }
 
-                    if (!receivedMessages.isEmpty()) {
+    @Override
+    public int getBurst() {
+        return dispatcher.getSendScheduler().getBurst();
+    }
 
-                        if (returnOnFirstMsg) {
-                            list.add(receivedMessages.remove(0));
-                            return list;
-                        } else {
-                            list.addAll(receivedMessages);
-                            receivedMessages.clear();
-                        }
+    @Override
+    public void setBurst(int burst) {
+        dispatcher.getSendScheduler().setBurst(burst);
+    }
 
-                    }
-                } catch (InterruptedException ex) {
-                }
+    @Override
+    public Map<String, Integer> getTimeouts() {
+        Map<String, Integer> timeouts = new TreeMap<>();
+        for (Map.Entry<Integer, TimeoutProfile> profile : dispatcher.getTimeoutProfiles().entrySet()) {
+            String device = profile.getKey() == PendingRequest.ANY ? "any" : ProtocolMetrics.toIndividualAddress(profile.getKey());
+            for (Map.Entry<Byte, RttEstimator> estimator : profile.getValue().getEstimators().entrySet()) {
+                timeouts.put(device + " " + ProtocolMetrics.getTypeName(estimator.getKey()), estimator.getValue().getTimeout());
             }
         }
-        return list;
+        return timeouts;
     }
 
-    private <T extends ProgMessage> T expectSingleMessage(Class<T> msgClass, int timeout) throws KnxException {
+    @Override
+    public String getMetricsJson() {
+        return getMetrics().snapshot().toJson();
+    }
 
-        log.debug("Waiting for single message [{}]", msgClass.getName());
-        List<ProgMessage> list = waitForMessage(timeout, true);
+    /**
+     * @return number of answer telegrams queued for the protocol thread
+     */
+    @Override
+    public long getReceivedTelegramCount() {
+        return dispatcher.getLoop().getReceivedCount();
+    }
+
+    /**
+     * @return number of answer telegrams dropped because the inbound queue
+     * was full
+     */
+    @Override
+    public long getDroppedTelegramCount() {
+        return dispatcher.getLoop().getDroppedCount();
+    }
+
+    /**
+     * @return number of answer telegrams currently waiting for the protocol
+     * thread
+     */
+    @Override
+    public int getInboundQueueDepth() {
+        return dispatcher.getLoop().getQueueDepth();
+    }
+
+    /**
+     * Records all telegrams sent and received on this connection, for all
+     * instances on the connection. The caller stays responsible for closing
+     * the journal after it has been removed again.
+     *
+     * @param journal journal, or <code>null</code> to stop recording
+     */
+    public void setJournal(TelegramJournal journal) {
+        dispatcher.setJournal(journal);
+    }
 
-        if (list.isEmpty()) {
+    public TelegramJournal getJournal() {
+        return dispatcher.getJournal();
+    }
 
-            throw new KnxException("Waiting for answer of type " + msgClass.getName() + " timed out.");
+    /**
+     * @return metrics of this connection, shared with all other instances on
+     * the same connection
+     */
+    public ProtocolMetrics getMetrics() {
+        return dispatcher.getMetrics();
+    }
 
-        } else if (list.size() == 1) {
+    /**
+     * @return the scheduler sending the telegrams of this connection, shared
+     * with all other instances on the same connection
+     */
+    public SendScheduler getSendScheduler() {
+        return dispatcher.getSendScheduler();
+    }
 
-            if (!(list.get(0).getClass().isAssignableFrom(msgClass))) {
-                throw new KnxException("Wrong message type received. Expected:" + msgClass + ". Got: " + list.get(0));
-            } else {
-                // all ok, return message
-                return (T) list.get(0);
-            }
+    /**
+     * Returns the learned answer timeouts of a device. The profile is created
+     * if not yet existing and shared by all instances on the same connection.
+     *
+     * @param individualAddress
+     * @return timeout profile of the device
+     * @throws KnxException if address is invalid
+     */
+    public TimeoutProfile getTimeoutProfile(String individualAddress) throws KnxException {
+        return getTimeoutProfile(toAddress(individualAddress));
+    }
 
-        } else {
+    private TimeoutProfile getTimeoutProfile(int address) {
+        return dispatcher.getTimeoutProfile(address, MIN_TIMEOUT, Math.max(MAX_TIMEOUT, 2 * waitTimeout));
+    }
 
-            // more then one message received
-            StringBuilder sb = new StringBuilder();
-            for (ProgMessage msg : list) {
-                sb.append("\n" + msg.toString());
-            }
+    /**
+     * Timeout to use for a request type as long as nothing has been measured
+     *
+     * @param requestType
+     * @return timeout in ms
+     */
+    private int getInitialTimeout(byte requestType) {
+        if (requestType == MSGTYPE_WRITE_PROGRAMMING_MODE) {
+            // give the sketch enough time to respond and set prog-mode (which should pause the device-logic)
+            return 2 * waitTimeout;
+        }
+        return waitTimeout;
+    }
+
+    private static int toAddress(byte hi, byte lo) {
+        return ((hi & 0xff) << 8) | (lo & 0xff);
+    }
+
+    private static int toAddress(String individualAddress) throws KnxException {
+        byte[] bytes = Utils.getIndividualAddress(individualAddress).toByteArray();
+        return toAddress(bytes[0], bytes[1]);
+    }
+
+    /**
+     * Sends a message and registers it as pending request. The request is
+     * registered before sending, so that even very fast answers are matched.
+     *
+     * @param msg message to send
+     * @param answerType expected answer type
+     * @param id expected id in answer, or {@link PendingRequest#ANY}
+     * @param address expected individual address in answer, or
+     * {@link PendingRequest#ANY}
+     * @param answerClass class of expected answer
+     * @param device address of the answering device, selects the timeout
+     * profile, {@link PendingRequest#ANY} if not known
+     * @return future, completed with the answer, or exceptionally with a
+     * {@link KnxException} on timeout or failure to send
+     */
+    private <T extends ProgMessage> CompletableFuture<T> request(ProgMessage msg, byte answerType, int id, int address, Class<T> answerClass, int device) {
+        RttEstimator estimator = getTimeoutProfile(device).getEstimator(msg.getType(), getInitialTimeout(msg.getType()));
+        return request(msg, answerType, id, address, answerClass, device, estimator, estimator.getTimeout(), getPriority(msg.getType()));
+    }
+
+    /**
+     * Same as
+     * {@link #request(de.konnekting.mgnt.protocol0x00.ProgMessage, byte, int, int, java.lang.Class, int)},
+     * but with given timeout and priority
+     *
+     * @param device individual address of the requested device, or
+     * {@link PendingRequest#ANY} if not known
+     * @param estimator gets the measured round trip time, may be
+     * <code>null</code>
+     * @param timeout milliseconds to wait for answer, counted from the moment
+     * the message actually has been sent
+     * @param priority send priority
+     */
+    private <T extends ProgMessage> CompletableFuture<T> request(ProgMessage msg, byte answerType, int id, int address, Class<T> answerClass, int device, RttEstimator estimator, int timeout, SendScheduler.Priority priority) {
+        if (closed.get()) {
+            return failed(new KnxException("Protocol has been closed"));
+        }
+        return dispatcher.request(msg, answerType, id, address, answerClass, device, estimator, timeout, priority);
+    }
+
+    /**
+     * Bulk transfers like parameter writes queue behind the handshakes a user
+     * or session is waiting for
+     *
+     * @param requestType
+     * @return send priority of request type
+     */
+    private static SendScheduler.Priority getPriority(byte requestType) {
+        switch (requestType) {
+            case MSGTYPE_WRITE_PARAMETER:
+            case MSGTYPE_READ_PARAMETER:
+            case MSGTYPE_WRITE_COM_OBJECT:
+            case MSGTYPE_READ_COM_OBJECT:
+                return SendScheduler.Priority.BULK;
+            default:
+                return SendScheduler.Priority.INTERACTIVE;
+        }
+    }
 
-            throw new KnxException("Received " + list.size() + " messages. Expected 1 of type " + msgClass.getName() + ". List: " + sb.toString());
+    /**
+     * Sends a broadcast query and collects all answers of given type.
+     *
+     * @param msg message to send
+     * @param answerType type of answers to collect
+     * @param answerClass class of answers to collect
+     * @param addressOf address of the device which sent an answer
+     * @param policy decides when enough answers have been collected
+     * @param timeout max. milliseconds to collect answers
+     * @return future, completed with the collected answers
+     */
+    private <T extends ProgMessage> CompletableFuture<List<T>> collect(ProgMessage msg, byte answerType, Class<T> answerClass, ResponseCollector.AddressOf<T> addressOf, CollectPolicy policy, int timeout) {
+        if (closed.get()) {
+            return failed(new KnxException("Protocol has been closed"));
+        }
+        return dispatcher.collect(msg, answerType, answerClass, addressOf, policy, timeout, getBroadcastEstimator());
+    }
 
+    /**
+     * Distinct addresses of the answers, in order of arrival
+     */
+    private static <T> List<String> toAddresses(List<T> answers, ResponseCollector.AddressOf<T> addressOf) throws KnxException {
+        List<String> list = new ArrayList<>();
+        for (T answer : answers) {
+            String address = addressOf.getAddress(answer);
+            // skip repeated telegrams
+            if (!list.contains(address)) {
+                list.add(address);
+            }
         }
+        return list;
     }
 
-    private <T extends ProgMessage> T expectSingleMessage(Class<T> msgClass) throws KnxException {
-        return expectSingleMessage(msgClass, WAIT_TIMEOUT);
+    private CompletableFuture<Void> acknowledged(CompletableFuture<MsgAck> future) {
+        return decode(future, ack -> {
+            if (!ack.isAcknowledged()) {
+                dispatcher.getMetrics().nack(ack.getErrorCode());
+                throw new NackException(ack.getErrorCode(), "Not acknowledged. " + ack.toString());
+            }
+            return null;
+        });
     }
 
-    private void expectAck(int timeout) throws KnxException {
-        MsgAck ack = expectSingleMessage(MsgAck.class);
-        if (!ack.isAcknowledged()) {
-            String exMsg = "Not acknowledged. " + ack.toString();
-            throw new KnxException(exMsg);
+    /**
+     * Starts a request, and starts it again according to the
+     * {@link RetryPolicy} if it failed. Each attempt creates a new pending
+     * request, so timeouts keep adapting.
+     *
+     * @param requestType message type of the request, only idempotent ones
+     * are repeated
+     * @param attempt starts one attempt
+     * @return future, completed with result of first successful attempt, or
+     * with the failure of the last attempt
+     */
+    private <T> CompletableFuture<T> retrying(byte requestType, Supplier<CompletableFuture<T>> attempt) {
+        RetryPolicy policy = retryPolicy;
+        if (policy.getMaxRetries() == 0 || !RetryPolicy.isIdempotent(requestType)) {
+            return attempt.get();
         }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attempt(requestType, attempt, policy, 0, result);
+        return result;
+    }
+
+    private <T> void attempt(final byte requestType, final Supplier<CompletableFuture<T>> attempt, final RetryPolicy policy, final int retries, final CompletableFuture<T> result) {
+        attempt.get().whenComplete((value, t) -> {
+            if (t == null) {
+                result.complete(value);
+                return;
+            }
+            Throwable cause = unwrap(t);
+            if (retries >= policy.getMaxRetries() || !policy.isRetryable(cause) || closed.get()) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            long backoff = policy.getBackoff(retries + 1);
+            log.debug("Request of type {} failed ({}), retry {}/{} in {}ms", new Object[]{ProtocolMetrics.getTypeName(requestType), cause.getMessage(), retries + 1, policy.getMaxRetries(), backoff});
+            dispatcher.getMetrics().retried();
+            dispatcher.schedule(() -> attempt(requestType, attempt, policy, retries + 1, result), backoff);
+        });
     }
 
-    private void expectAck() throws KnxException {
-        MsgAck ack = expectSingleMessage(MsgAck.class);
-        if (!ack.isAcknowledged()) {
-            String exMsg = "Not acknowledged. " + ack.toString();
-            throw new KnxException(exMsg);
+    /**
+     * Converts an answer to a result value. May throw a checked exception, in
+     * contrast to {@link java.util.function.Function}.
+     */
+    private interface Decoder<M, R> {
+
+        R decode(M msg) throws KnxException;
+    }
+
+    private static <M, R> CompletableFuture<R> decode(CompletableFuture<M> future, final Decoder<M, R> decoder) {
+        final CompletableFuture<R> result = new CompletableFuture<>();
+        future.whenComplete((msg, t) -> {
+            if (t != null) {
+                result.completeExceptionally(unwrap(t));
+                return;
+            }
+            try {
+                result.complete(decoder.decode(msg));
+            } catch (KnxException | RuntimeException ex) {
+                result.completeExceptionally(ex);
+            }
+        });
+        return result;
+    }
+
+    static Throwable unwrap(Throwable t) {
+        if (t instanceof CompletionException && t.getCause() != null) {
+            return t.getCause();
         }
+        return t;
     }
 
-    private void sendMessage(ProgMessage msg) throws KnxException {
-        plog.info("Sending: {}", msg);
-        byte[] msgData = msg.data;
+    /**
+     * Waits for the future and converts failures back to {@link KnxException}
+     *
+     * @param future
+     * @return result of future
+     * @throws KnxException
+     */
+    private static <T> T await(CompletableFuture<T> future) throws KnxException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new KnxException("Interrupted while waiting for answer", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = unwrap(ex.getCause());
+            if (cause instanceof KnxException) {
+                throw (KnxException) cause;
+            }
+            throw new KnxException("Request failed: " + cause, cause);
+        }
+    }
 
-        log.trace("Sending message \n"
-                + "ProtocolVersion: {}\n"
-                + "MsgTypeId      : {}\n"
-                + "data[2..13]    : {} {} {} {} {} {} {} {} {} {} {} {}", new Object[]{
-                    String.format("%02x", msgData[0]),
-                    String.format("%02x", msgData[1]),
-                    String.format("%02x", msgData[2]),
-                    String.format("%02x", msgData[3]),
-                    String.format("%02x", msgData[4]),
-                    String.format("%02x", msgData[5]),
-                    String.format("%02x", msgData[6]),
-                    String.format("%02x", msgData[7]),
-                    String.format("%02x", msgData[8]),
-                    String.format("%02x", msgData[9]),
-                    String.format("%02x", msgData[10]),
-                    String.format("%02x", msgData[11]),
-                    String.format("%02x", msgData[12]),
-                    String.format("%02x", msgData[13]),});
-        knx.writeRaw(false, PROG_GA, msgData);
+    /**
+     * Queues message for sending
+     *
+     * @param msg
+     * @param priority
+     * @return future, completed when message has been sent
+     */
+    private CompletableFuture<Void> sendMessage(ProgMessage msg, SendScheduler.Priority priority) {
+        if (closed.get()) {
+            return failed(new KnxException("Protocol has been closed"));
+        }
+        return dispatcher.send(msg, priority);
     }
 
     /**
@@ -273,16 +668,42 @@ public class ProgProtocol0x00 {
      * @throws KnxException
      */
     public boolean onlyOneDeviceInProgMode() throws KnxException {
-        sendMessage(new MsgReadProgrammingMode());
-        List<ProgMessage> waitForMessage = waitForMessage(WAIT_TIMEOUT, false);
-        int count = 0;
+        return await(onlyOneDeviceInProgModeAsync());
+    }
 
-        for (ProgMessage msg : waitForMessage) {// FIXME check also for IA matching
-            if (msg.getType() == MSGTYPE_ANSWER_PROGRAMMING_MODE) {
-                count++;
-            }
-        }
-        return count == 1;
+    /**
+     * Async variant of {@link #onlyOneDeviceInProgMode()}
+     *
+     * @return future, completed with true, if exactly one device responded
+     */
+    public CompletableFuture<Boolean> onlyOneDeviceInProgModeAsync() {
+        // a second device decides the outcome, no need to wait for more
+        return readProgrammingModeAsync(CollectPolicy.count(2).withQuietPeriod(getEffectiveQuietPeriod()))
+            .thenApply(addresses -> addresses.size() == 1); // FIXME check also for IA matching
+    }
+
+    /**
+     * Reads the addresses of the devices in programming mode
+     *
+     * @param policy decides when enough devices answered
+     * @return distinct addresses of the answering devices
+     * @throws KnxException
+     */
+    public List<String> readProgrammingMode(CollectPolicy policy) throws KnxException {
+        return await(readProgrammingModeAsync(policy));
+    }
+
+    /**
+     * Async variant of
+     * {@link #readProgrammingMode(de.konnekting.mgnt.protocol0x00.CollectPolicy)}
+     *
+     * @param policy decides when enough devices answered
+     * @return future, completed with distinct addresses of the answering
+     * devices
+     */
+    public CompletableFuture<List<String>> readProgrammingModeAsync(CollectPolicy policy) {
+        CompletableFuture<List<MsgAnswerProgrammingMode>> answers = collect(new MsgReadProgrammingMode(), MSGTYPE_ANSWER_PROGRAMMING_MODE, MsgAnswerProgrammingMode.class, MsgAnswerProgrammingMode::getAddress, policy, waitTimeout);
+        return decode(answers, list -> toAddresses(list, MsgAnswerProgrammingMode::getAddress));
     }
 
     /**
@@ -292,7 +713,8 @@ public class ProgProtocol0x00 {
      * necessary to know whether more than one device is in programming mode,
      * <code>oneAddressOnly</code> is set to <code>false</code> and the device
      * addresses are listed in the returned address array. In this case, the
-     * whole response timeout is waited for read responses. If
+     * whole response timeout is waited for read responses, or the quiet period,
+     * see {@link #setQuietPeriod(int)}. If
      * <code>oneAddressOnly</code> is <code>true</code>, the method returns
      * after receiving the first read response.
      *
@@ -301,126 +723,416 @@ public class ProgProtocol0x00 {
      * @throws KnxException
      */
     public List<String> readIndividualAddress(boolean oneAddressOnly) throws KnxException {
-        List<String> list = new ArrayList<>();
-        sendMessage(new MsgReadIndividualAddress());
-        if (oneAddressOnly) {
-            MsgAnswerIndividualAddress expectSingleMessage = expectSingleMessage(MsgAnswerIndividualAddress.class);
-            list.add(expectSingleMessage.getAddress());
-        } else {
-            List<ProgMessage> msgList = waitForMessage(WAIT_TIMEOUT, false);
-            for (ProgMessage msg : msgList) {
-                if (msg instanceof MsgAnswerIndividualAddress) {
-                    MsgAnswerIndividualAddress ia = (MsgAnswerIndividualAddress) msg;
-                    list.add(ia.getAddress());
-                }
+        return await(readIndividualAddressAsync(oneAddressOnly));
+    }
+
+    /**
+     * Async variant of {@link #readIndividualAddress(boolean)}
+     *
+     * @param oneAddressOnly
+     * @return future, completed with list of found addresses
+     */
+    public CompletableFuture<List<String>> readIndividualAddressAsync(final boolean oneAddressOnly) {
+        CollectPolicy policy = oneAddressOnly ? CollectPolicy.count(1) : CollectPolicy.quietPeriod(getEffectiveQuietPeriod());
+        return decode(readIndividualAddressAsync(policy), list -> {
+            if (oneAddressOnly && list.isEmpty()) {
+                throw new AnswerTimeoutException("Waiting for answer of type " + MsgAnswerIndividualAddress.class.getName() + " timed out.");
+            }
+            return list;
+        });
+    }
+
+    /**
+     * Reads the individual addresses of the devices in programming mode
+     *
+     * @param policy decides when enough devices answered
+     * @return distinct addresses of the answering devices
+     * @throws KnxException
+     */
+    public List<String> readIndividualAddress(CollectPolicy policy) throws KnxException {
+        return await(readIndividualAddressAsync(policy));
+    }
+
+    /**
+     * Async variant of
+     * {@link #readIndividualAddress(de.konnekting.mgnt.protocol0x00.CollectPolicy)}
+     *
+     * @param policy decides when enough devices answered
+     * @return future, completed with distinct addresses of the answering
+     * devices
+     */
+    public CompletableFuture<List<String>> readIndividualAddressAsync(CollectPolicy policy) {
+        CompletableFuture<List<MsgAnswerIndividualAddress>> answers = collect(new MsgReadIndividualAddress(), MSGTYPE_ANSWER_INDIVIDUAL_ADDRESS, MsgAnswerIndividualAddress.class, MsgAnswerIndividualAddress::getAddress, policy, waitTimeout);
+        return decode(answers, list -> toAddresses(list, MsgAnswerIndividualAddress::getAddress));
+    }
+
+    /**
+     * Sets a device into programming mode, checks that no other device is in
+     * programming mode and reads the device info of the device, all at once:
+     * the three exchanges are sent back to back, so the answer window of the
+     * programming mode query covers the other two round trips. The device is
+     * known to be in programming mode by its ACK, so only other devices
+     * answering the query matter, the first of them fails immediately.
+     * <p>
+     * Once the device acknowledged and answered the query itself, other
+     * devices would answer about as fast: the query ends after the learned
+     * timeout of the device instead of the whole answer window, unless a fixed
+     * quiet period is set.
+     *
+     * @param individualAddress
+     * @return device info of the device
+     * @throws KnxException if the device does not answer, or another device
+     * is in programming mode
+     */
+    public DeviceInfo enterProgrammingMode(String individualAddress) throws KnxException {
+        return await(enterProgrammingModeAsync(individualAddress));
+    }
+
+    /**
+     * Async variant of {@link #enterProgrammingMode(java.lang.String)}
+     *
+     * @param individualAddress
+     * @return future, completed with device info of the device
+     */
+    public CompletableFuture<DeviceInfo> enterProgrammingModeAsync(final String individualAddress) {
+        CompletableFuture<Void> progMode = writeProgrammingModeAsync(individualAddress, true).handle((v, t) -> {
+            if (t != null) {
+                throw new CompletionException(new KnxException("No device responded for enabling prog-mode on address " + individualAddress, unwrap(t)));
+            }
+            return v;
+        });
+        // the learned settle time below replaces the automatic quiet period
+        final int quiet = Math.max(quietPeriod, 0);
+        final CompletableFuture<Void> answeredItself = new CompletableFuture<>();
+        CollectPolicy others = new CollectPolicy(addresses -> {
+            if (addresses.contains(individualAddress)) {
+                answeredItself.complete(null);
             }
+            return addresses.stream().anyMatch(address -> !address.equals(individualAddress));
+        }, quiet);
+        final CompletableFuture<List<MsgAnswerProgrammingMode>> answers = collect(new MsgReadProgrammingMode(), MSGTYPE_ANSWER_PROGRAMMING_MODE, MsgAnswerProgrammingMode.class, MsgAnswerProgrammingMode::getAddress, others, waitTimeout);
+        final CompletableFuture<List<String>> inProgMode = decode(answers, list -> toAddresses(list, MsgAnswerProgrammingMode::getAddress));
+        final CompletableFuture<DeviceInfo> deviceInfo = readDeviceInfoAsync(individualAddress);
+        if (quiet == 0) {
+            progMode.runAfterBoth(answeredItself, () -> {
+                // the ACK has just been measured
+                long settle = Math.min(waitTimeout, getSettleTime(individualAddress));
+                log.debug("{} answered, ending programming mode query in {}ms", individualAddress, settle);
+                dispatcher.finishCollect(answers, settle);
+            });
+        }
+        return progMode.thenCompose(v -> decode(inProgMode, addresses -> {
+            List<String> list = new ArrayList<>(addresses);
+            list.remove(individualAddress);
+            if (!list.isEmpty()) {
+                throw new KnxException("More than one device is in programming-mode: " + individualAddress + " and " + list);
+            }
+            return null;
+        })).thenCompose(v -> deviceInfo);
+    }
+
+    /**
+     * @param individualAddress
+     * @return learned timeout of the device for setting the programming mode
+     */
+    private long getSettleTime(String individualAddress) {
+        try {
+            return getTimeoutProfile(toAddress(individualAddress)).getEstimator(MSGTYPE_WRITE_PROGRAMMING_MODE, getInitialTimeout(MSGTYPE_WRITE_PROGRAMMING_MODE)).getTimeout();
+        } catch (KnxException ex) {
+            return waitTimeout;
         }
-        return list;
     }
 
     public DeviceInfo readDeviceInfo(String individualAddress) throws KnxException {
-        sendMessage(new MsgReadDeviceInfo(individualAddress));
-        MsgAnswerDeviceInfo msg = expectSingleMessage(MsgAnswerDeviceInfo.class);
+        return await(readDeviceInfoAsync(individualAddress));
+    }
+
+    /**
+     * Async variant of {@link #readDeviceInfo(java.lang.String)}
+     *
+     * @param individualAddress
+     * @return future, completed with device info of addressed device
+     */
+    public CompletableFuture<DeviceInfo> readDeviceInfoAsync(String individualAddress) {
+        return readDeviceInfoAsync(individualAddress, -1);
+    }
 
-        return new DeviceInfo(msg.getManufacturerId(), msg.getDeviceId(), msg.getRevisionId(), msg.getDeviceFlags(), msg.getIndividualAddress());
+    /**
+     * Reads device info with a fixed timeout instead of the learned one. Used
+     * for probing addresses where most likely no device exists, which should
+     * not create a timeout profile for every probed address.
+     *
+     * @param individualAddress
+     * @param timeout milliseconds to wait for answer, -1 to use the learned
+     * timeout of the device
+     * @return future, completed with device info of addressed device
+     */
+    public CompletableFuture<DeviceInfo> readDeviceInfoAsync(String individualAddress, int timeout) {
+        final MsgReadDeviceInfo msg;
+        try {
+            msg = new MsgReadDeviceInfo(individualAddress);
+        } catch (KnxException ex) {
+            return failed(ex);
+        }
+        final int address = toAddress(msg.data[2], msg.data[3]);
+        CompletableFuture<MsgAnswerDeviceInfo> answer;
+        if (timeout < 0) {
+            answer = retrying(MSGTYPE_READ_DEVICE_INFO, () -> request(msg, MSGTYPE_ANSWER_DEVICE_INFO, PendingRequest.ANY, address, MsgAnswerDeviceInfo.class, address));
+        } else {
+            // probing, not worth a retry
+            answer = request(msg, MSGTYPE_ANSWER_DEVICE_INFO, PendingRequest.ANY, address, MsgAnswerDeviceInfo.class, address, null, timeout, SendScheduler.Priority.BULK);
+        }
+        return decode(answer, di -> new DeviceInfo(di.getManufacturerId(), di.getDeviceId(), di.getRevisionId(), di.getDeviceFlags(), di.getIndividualAddress()));
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable t) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(t);
+        return future;
     }
 
     /**
-     * Writes address to device which is in programming mode
+     * Writes address to device which is in programming mode. Waits up to 20
+     * times the answer timeout for the programming button to be pressed.
      *
      * @param address address to write to device
      * @throws KnxException if f.i. a timeout occurs or more than one device is
      * in programming mode
+     * @see #writeIndividualAddress(java.lang.String, long)
      */
     public void writeIndividualAddress(String address) throws KnxException {
-        boolean exists = false;
+        writeIndividualAddress(address, 20L * waitTimeout);
+    }
 
+    /**
+     * Writes address to device which is in programming mode, as soon as the
+     * programming button of exactly one device is pressed.
+     * <p>
+     * Devices in programming mode are detected passively: every report on
+     * {@link #PROG_GA} counts, also answers to queries of other tools and
+     * reports sent by a device on its own. Devices which only answer queries
+     * are asked every {@link #getProbeInterval()} ms. When a device reports,
+     * the other devices get the rest of the answer timeout to report as well,
+     * then the address is written immediately.
+     *
+     * @param address address to write to device
+     * @param deadline max. ms to wait for the programming button
+     * @throws KnxException if f.i. a timeout occurs or more than one device is
+     * in programming mode
+     */
+    public void writeIndividualAddress(String address, long deadline) throws KnxException {
+        if (closed.get()) {
+            throw new KnxException("Protocol has been closed");
+        }
+        ProgModeWatcher watcher = new ProgModeWatcher();
+        dispatcher.addWatcher(watcher);
         try {
-            readDeviceInfo(address);
-            exists = true;
-            log.debug("Device with {} exists", address);
-        } catch (KnxException ex) {
-
+            String current = awaitProgrammingButton(watcher, deadline);
+            if (current.equals(address)) {
+                log.debug("One device responded, but already has {}.", address);
+            } else {
+                log.info("One device with different address ({}) responded.", current);
+            }
+        } finally {
+            dispatcher.removeWatcher(watcher);
         }
 
-        boolean setAddr = false;
-        int attempts = 20;
-        int count = 0;
+        log.debug("Writing address ...");
+        MsgWriteIndividualAddress writeMsg = new MsgWriteIndividualAddress(address);
+        await(acknowledged(request(writeMsg, MSGTYPE_ACK, PendingRequest.ANY, PendingRequest.ANY, MsgAck.class, PendingRequest.ANY)));
+    }
 
-        String msg = "";
+    /**
+     * Waits until exactly one device is in programming mode
+     *
+     * @param watcher registered watcher
+     * @param deadline max. ms to wait
+     * @return address of the device in programming mode
+     * @throws KnxException if the deadline elapsed
+     */
+    private String awaitProgrammingButton(ProgModeWatcher watcher, long deadline) throws KnxException {
+        final long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadline);
+        final long answerWindow = TimeUnit.MILLISECONDS.toNanos(waitTimeout);
+        long probeWindowEnd = 0;
+        long nextProbe = System.nanoTime();
+        String msg = "no device in prog mode";
+
+        while (System.nanoTime() < end) {
+            if (System.nanoTime() >= nextProbe) {
+                await(sendMessage(new MsgReadIndividualAddress(), SendScheduler.Priority.INTERACTIVE));
+                probeWindowEnd = System.nanoTime() + answerWindow;
+                nextProbe = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(probeInterval);
+            }
+            if (watcher.await(1, Math.min(nextProbe, end)).isEmpty()) {
+                continue;
+            }
 
-        while (count != 1 && attempts-- > 0) {
-            try {
-                // gibt nur Antwort von Geräten im ProgMode
-                List<String> list = readIndividualAddress(false);
-                count = list.size();
-
-                log.info("responsed: {}", count);
-
-                if (count == 0) {
-                    log.info("No device responded.");
-                    msg = "no device in prog mode";
-                } else if (count == 1 && !list.get(0).equals(address)) {
-                    msg = "one device with different address (" + list.get(0) + ") responded.";
-                    setAddr = true;
-                } else if (count == 1 && list.get(0).equals(address)) {
-                    log.debug("One device responded, but already has {}.", address);
-                    msg = "One device responded, but already has " + address + ".";
-                    setAddr = true;
-                } else {
-                    msg = "more than one device in prog mode: " + Arrays.toString(list.toArray());
-                }
-            } catch (KnxException ex) {
-                ex.printStackTrace();
-                if (exists) {
-                    log.warn("device exists but is not in programming mode, cancel writing address");
-                    throw new KnxException("device exists but is not in programming mode, cancel writing address");
-                }
+            if (System.nanoTime() >= probeWindowEnd) {
+                // not an answer to our query: ask all devices in prog mode to report
+                await(sendMessage(new MsgReadIndividualAddress(), SendScheduler.Priority.INTERACTIVE));
+                probeWindowEnd = System.nanoTime() + answerWindow;
+                nextProbe = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(probeInterval);
             }
-            log.debug("KONNEKTINGs in programming mode: {}", count);
-        }
-        if (!setAddr) {
-            log.warn("Can not set address. " + msg);
-            throw new KnxException("Can not set address. " + msg);
+            // give other devices in prog mode the chance to answer, a second one decides
+            long settleEnd = probeWindowEnd;
+            int quiet = getEffectiveQuietPeriod();
+            if (quiet > 0) {
+                settleEnd = Math.min(settleEnd, watcher.getLastAnswerNanos() + TimeUnit.MILLISECONDS.toNanos(quiet));
+            }
+            List<String> list = watcher.await(2, settleEnd);
+            log.debug("KONNEKTINGs in programming mode: {}", list.size());
+            if (list.size() == 1) {
+                return list.get(0);
+            }
+            msg = "more than one device in prog mode: " + list;
+            log.info(msg);
+            // wait for the other buttons to be released
+            watcher.clear();
         }
-        log.debug("Writing address ...");
-        sendMessage(new MsgWriteIndividualAddress(address));
-        expectAck();
+        log.warn("Can not set address. " + msg);
+        throw new KnxException("Can not set address. " + msg);
+    }
+
+    /**
+     * Async variant of {@link #writeIndividualAddress(java.lang.String)}. As
+     * this waits for the programming button to be pressed, it runs on a
+     * separate thread.
+     *
+     * @param address address to write to device
+     * @return future, completed when address has been written
+     */
+    public CompletableFuture<Void> writeIndividualAddressAsync(final String address) {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        EXECUTOR.execute(() -> {
+            try {
+                writeIndividualAddress(address);
+                future.complete(null);
+            } catch (KnxException | RuntimeException ex) {
+                future.completeExceptionally(ex);
+            }
+        });
+        return future;
     }
 
     public void writeParameter(byte id, byte[] paramData) throws KnxException {
+        await(writeParameterAsync(id, paramData));
+    }
+
+    /**
+     * Async variant of {@link #writeParameter(byte, byte[])}
+     *
+     * @param id parameter id
+     * @param paramData parameter value, max. 11 bytes
+     * @return future, completed when device acknowledged the write
+     */
+    public CompletableFuture<Void> writeParameterAsync(byte id, byte[] paramData) {
         if (paramData.length > 11) {
             throw new IllegalArgumentException("Data must not exceed 11 bytes.");
         }
-        sendMessage(new MsgWriteParameter(id, paramData));
-        expectAck();
+        final MsgWriteParameter msg = new MsgWriteParameter(id, paramData);
+        final int device = progModeAddress;
+        return retrying(MSGTYPE_WRITE_PARAMETER, () -> acknowledged(request(msg, MSGTYPE_ACK, id & 0xff, PendingRequest.ANY, MsgAck.class, device)));
     }
 
     public byte[] readParameter(byte id) throws KnxException {
-        sendMessage(new MsgReadParameter(id));
-        MsgAnswerParameter parameter = expectSingleMessage(MsgAnswerParameter.class);
-        return parameter.getParamValue();
+        return await(readParameterAsync(id));
+    }
+
+    /**
+     * Async variant of {@link #readParameter(byte)}
+     *
+     * @param id parameter id
+     * @return future, completed with the 11 value bytes of the parameter
+     */
+    public CompletableFuture<byte[]> readParameterAsync(final byte id) {
+        final MsgReadParameter msg = new MsgReadParameter(id);
+        final int device = progModeAddress;
+        CompletableFuture<MsgAnswerParameter> answer = retrying(MSGTYPE_READ_PARAMETER, () -> request(msg, MSGTYPE_ANSWER_PARAMETER, id & 0xff, PendingRequest.ANY, MsgAnswerParameter.class, device));
+        return answer.thenApply(MsgAnswerParameter::getParamValue);
     }
 
     public void writeComObject(ComObject comObject) throws KnxException {
-        sendMessage(new MsgWriteComObject(comObject));
-        expectAck();
+        await(writeComObjectAsync(comObject));
+    }
+
+    /**
+     * Async variant of {@link #writeComObject(de.konnekting.mgnt.ComObject)}
+     *
+     * @param comObject
+     * @return future, completed when device acknowledged the write
+     */
+    public CompletableFuture<Void> writeComObjectAsync(ComObject comObject) {
+        final MsgWriteComObject msg;
+        try {
+            msg = new MsgWriteComObject(comObject);
+        } catch (KnxException ex) {
+            return failed(ex);
+        }
+        final int id = comObject.getId() & 0xff;
+        final int device = progModeAddress;
+        return retrying(MSGTYPE_WRITE_COM_OBJECT, () -> acknowledged(request(msg, MSGTYPE_ACK, id, PendingRequest.ANY, MsgAck.class, device)));
     }
 
     public ComObject readComObject(byte id) throws KnxException {
-        sendMessage(new MsgReadComObject(id));
-        MsgAnswerComObject comObj = expectSingleMessage(MsgAnswerComObject.class);
-        return comObj.getComObject();
+        return await(readComObjectAsync(id));
+    }
+
+    /**
+     * Async variant of {@link #readComObject(byte)}
+     *
+     * @param id comobject id
+     * @return future, completed with the comobject as stored in device
+     */
+    public CompletableFuture<ComObject> readComObjectAsync(final byte id) {
+        final MsgReadComObject msg = new MsgReadComObject(id);
+        final int device = progModeAddress;
+        CompletableFuture<MsgAnswerComObject> answer = retrying(MSGTYPE_READ_COM_OBJECT, () -> request(msg, MSGTYPE_ANSWER_COM_OBJECT, id & 0xff, PendingRequest.ANY, MsgAnswerComObject.class, device));
+        return decode(answer, MsgAnswerComObject::getComObject);
     }
 
     public void writeProgrammingMode(String individualAddress, boolean progMode) throws KnxException {
-        sendMessage(new MsgWriteProgrammingMode(individualAddress, progMode));
-        expectAck(2 * WAIT_TIMEOUT); // give the sketch enough time to respond and set prog-mode (which should pause the device-logic)
+        await(writeProgrammingModeAsync(individualAddress, progMode));
+    }
+
+    /**
+     * Async variant of {@link #writeProgrammingMode(java.lang.String, boolean)}
+     *
+     * @param individualAddress
+     * @param progMode
+     * @return future, completed when device acknowledged the write
+     */
+    public CompletableFuture<Void> writeProgrammingModeAsync(String individualAddress, final boolean progMode) {
+        final MsgWriteProgrammingMode msg;
+        try {
+            msg = new MsgWriteProgrammingMode(individualAddress, progMode);
+        } catch (KnxException ex) {
+            return failed(ex);
+        }
+        final int address = toAddress(msg.data[2], msg.data[3]);
+        CompletableFuture<Void> ack = retrying(MSGTYPE_WRITE_PROGRAMMING_MODE, () -> acknowledged(request(msg, MSGTYPE_ACK, PendingRequest.ANY, PendingRequest.ANY, MsgAck.class, address)));
+        return ack.thenRun(() -> {
+            // following parameter/comobject requests go to this device
+            progModeAddress = progMode ? address : PendingRequest.ANY;
+        });
     }
 
     public void restart(String individualAddress) throws KnxException {
-        sendMessage(new MsgRestart(individualAddress));
-//        expectAck();
+        await(restartAsync(individualAddress));
+    }
+
+    /**
+     * Async variant of {@link #restart(java.lang.String)}
+     *
+     * @param individualAddress
+     * @return future, completed when restart message has been sent
+     */
+    public CompletableFuture<Void> restartAsync(String individualAddress) {
+        try {
+            return sendMessage(new MsgRestart(individualAddress), SendScheduler.Priority.INTERACTIVE);
+//            expectAck();
+        } catch (KnxException ex) {
+            return failed(ex);
+        }
     }
 
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2015 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of slicKnx.
+ *
+ *   slicKnx is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   slicKnx is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with slicKnx.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.protocol0x00;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link ProgProtocol0x00}. Queue depths, counters,
+ * rate limits and timeouts belong to the connection and are shared by all
+ * instances on it.
+ *
+ * @author achristian
+ */
+public interface ProgProtocol0x00MXBean {
+
+    /**
+     * @return address of the device set into programming mode by this
+     * instance, <code>null</code> if none
+     */
+    String getProgModeAddress();
+
+    /**
+     * @return number of sent requests waiting for their answer
+     */
+    int getPendingRequestCount();
+
+    int getInboundQueueDepth();
+
+    int getSendQueueDepth();
+
+    long getSentTelegramCount();
+
+    long getReceivedTelegramCount();
+
+    long getDroppedTelegramCount();
+
+    /**
+     * @return telegrams sent per second, averaged over the last seconds
+     */
+    double getThroughput();
+
+    double getTelegramsPerSecond();
+
+    void setTelegramsPerSecond(double telegramsPerSecond);
+
+    int getBurst();
+
+    void setBurst(int burst);
+
+    /**
+     * @return current answer timeouts in ms, by "&lt;address&gt; &lt;request
+     * type&gt;"
+     */
+    Map<String, Integer> getTimeouts();
+
+    /**
+     * @return current metrics as JSON
+     */
+    String getMetricsJson();
+
+}
@@ -0,0 +1,645 @@
+/*
+ * Copyright (C) 2015 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of slicKnx.
+ *
+ *   slicKnx is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   slicKnx is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with slicKnx.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.protocol0x00;
+
+import static de.konnekting.mgnt.protocol0x00.ProgProtocol0x00.*;
+import de.root1.slicknx.Knx;
+import de.root1.slicknx.KnxException;
+import de.root1.slicknx.Utils;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Protocol state shared by all {@link ProgProtocol0x00} instances on one
+ * {@link Knx} connection or {@link TelegramTransport}: the one receiver of
+ * {@link ProgProtocol0x00#PROG_GA} telegrams,
+ * the protocol thread with pending requests and collectors, the learned
+ * timeouts and the {@link SendScheduler}. Each telegram is decoded once,
+ * regardless of how many instances are open.
+ * <p>
+ * Dispatchers are reference counted. The last {@link #release()} removes the
+ * listener and stops the threads.
+ *
+ * @author achristian
+ */
+final class ProtocolDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(ProtocolDispatcher.class);
+    private static final Logger plog = LoggerFactory.getLogger("ProgrammingLogger");
+
+    /**
+     * Max. number of received answers waiting for the protocol thread
+     */
+    private static final int INBOUND_CAPACITY = 128;
+
+    /**
+     * Bound for {@link #timedOutRequests}, devices which never answer must not
+     * fill it up
+     */
+    private static final int MAX_TIMED_OUT_REQUESTS = 1024;
+
+    /**
+     * completes pending requests and collectors exceptionally on timeout
+     */
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ProtocolDispatcher-Timer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Dispatchers by {@link Knx} connection or by {@link TelegramTransport}
+     */
+    private static final Map<Object, ProtocolDispatcher> DISPATCHERS = new IdentityHashMap<>();
+
+    /**
+     * Returns the dispatcher of given connection and increments its reference
+     * count. Creates the dispatcher if necessary.
+     *
+     * @param knx
+     * @return shared dispatcher, to be released with {@link #release()}
+     */
+    static ProtocolDispatcher acquire(Knx knx) {
+        return acquire(knx, () -> new KnxTransport(knx));
+    }
+
+    /**
+     * Same as {@link #acquire(de.root1.slicknx.Knx)}, for any transport
+     *
+     * @param transport
+     * @return shared dispatcher, to be released with {@link #release()}
+     */
+    static ProtocolDispatcher acquire(TelegramTransport transport) {
+        return acquire(transport, () -> transport);
+    }
+
+    private static ProtocolDispatcher acquire(Object key, Supplier<TelegramTransport> transport) {
+        synchronized (DISPATCHERS) {
+            ProtocolDispatcher dispatcher = DISPATCHERS.get(key);
+            if (dispatcher == null) {
+                dispatcher = new ProtocolDispatcher(key, transport.get());
+                DISPATCHERS.put(key, dispatcher);
+            }
+            dispatcher.references++;
+            return dispatcher;
+        }
+    }
+
+    private final Object key;
+    private final TelegramTransport transport;
+    private final SendScheduler sendScheduler;
+    private final ProtocolLoop loop;
+    private final ProtocolMetrics metrics;
+    private volatile TelegramJournal journal;
+
+    /**
+     * guarded by DISPATCHERS
+     */
+    private int references;
+
+    /**
+     * Sent requests waiting for their answer, oldest first. Only accessed by
+     * the protocol thread.
+     */
+    private final List<PendingRequest<?>> pendingRequests = new ArrayList<>();
+
+    /**
+     * Signatures of requests which timed out and got no answer since. A
+     * request with such a signature is a retransmission, no matter if sent by
+     * a {@link RetryPolicy} or by the caller. Only accessed by the protocol
+     * thread.
+     */
+    private final Set<Long> timedOutRequests = new HashSet<>();
+
+    /**
+     * Size of {@link #pendingRequests}, readable by other threads
+     */
+    private volatile int pendingCount;
+
+    /**
+     * Active collectors for broadcast queries. Only accessed by the protocol
+     * thread.
+     */
+    private final List<ResponseCollector<?>> collectors = new ArrayList<>();
+
+    /**
+     * Active watchers for devices in programming mode. Only accessed by the
+     * protocol thread.
+     */
+    private final List<ProgModeWatcher> watchers = new ArrayList<>();
+
+    /**
+     * Learned answer timeouts per individual address
+     */
+    private final ConcurrentMap<Integer, TimeoutProfile> timeoutProfiles = new ConcurrentHashMap<>();
+
+    /**
+     * Learned time until the first device answers a broadcast query, created
+     * on first use
+     */
+    private volatile RttEstimator broadcastEstimator;
+
+    /**
+     * Handles a telegram received on {@link ProgProtocol0x00#PROG_GA}. Called
+     * by the transport's receiving thread.
+     *
+     * @param data telegram data
+     */
+    private void received(byte[] data) {
+        if (data.length != Frame.LENGTH) {
+            metrics.unknown();
+            return;
+        }
+        metrics.received();
+        TelegramJournal j = journal;
+        if (j != null) {
+            j.record(TelegramJournal.RECEIVED, data);
+        }
+        if (data[0] != PROTOCOL_VERSION) {
+            metrics.unknown();
+            return;
+        }
+        byte type = data[1];
+        if (isAnswer(type)) {
+            loop.receive(data);
+        } else if (!isRequest(type)) {
+            // requests are ours, everything else is counted and logged
+            metrics.unknown();
+            if (plog.isWarnEnabled()) {
+                plog.warn("Received unknown/invalid message: {}", Utils.bytesToHex(data));
+            }
+        }
+    }
+
+    private ProtocolDispatcher(Object key, TelegramTransport transport) {
+        this.key = key;
+        this.transport = transport;
+        String id = Integer.toHexString(System.identityHashCode(key));
+        this.sendScheduler = new SendScheduler(transport, "SendScheduler-" + id);
+        this.loop = new ProtocolLoop("ProtocolDispatcher-" + id, INBOUND_CAPACITY, this::dispatch);
+        this.metrics = new ProtocolMetrics(sendScheduler::getSentCount, TIMER);
+        transport.open(this::received);
+        log.debug("Created dispatcher for {}", transport);
+    }
+
+    /**
+     * Decrements the reference count. The last release removes the listener,
+     * fails all requests still waiting with a {@link KnxException} and stops
+     * the threads.
+     */
+    void release() {
+        synchronized (DISPATCHERS) {
+            if (--references > 0) {
+                return;
+            }
+            DISPATCHERS.remove(key);
+        }
+        transport.close();
+        sendScheduler.stop();
+        metrics.stop();
+        loop.execute(() -> {
+            KnxException closed = new KnxException("Protocol has been closed");
+            for (PendingRequest<?> request : pendingRequests) {
+                request.fail(closed);
+            }
+            pendingRequests.clear();
+            pendingCount = 0;
+            timedOutRequests.clear();
+            for (ResponseCollector<?> collector : collectors) {
+                collector.fail(closed);
+            }
+            collectors.clear();
+            for (ProgModeWatcher watcher : watchers) {
+                watcher.close();
+            }
+            watchers.clear();
+        });
+        loop.stop();
+        log.debug("Released dispatcher for {}", transport);
+    }
+
+    /**
+     * @return number of open {@link ProgProtocol0x00} instances using this
+     * dispatcher
+     */
+    int getReferences() {
+        synchronized (DISPATCHERS) {
+            return references;
+        }
+    }
+
+    /**
+     * @param journal records all telegrams on this connection, or
+     * <code>null</code>
+     */
+    void setJournal(TelegramJournal journal) {
+        this.journal = journal;
+        sendScheduler.setJournal(journal);
+    }
+
+    TelegramJournal getJournal() {
+        return journal;
+    }
+
+    SendScheduler getSendScheduler() {
+        return sendScheduler;
+    }
+
+    ProtocolLoop getLoop() {
+        return loop;
+    }
+
+    ProtocolMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Runs a task later on the timer thread
+     *
+     * @param task
+     * @param delayMillis
+     */
+    void schedule(Runnable task, long delayMillis) {
+        TIMER.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return number of sent requests waiting for their answer
+     */
+    int getPendingCount() {
+        return pendingCount;
+    }
+
+    /**
+     * @return learned timeouts by individual address, read-only
+     */
+    Map<Integer, TimeoutProfile> getTimeoutProfiles() {
+        return Collections.unmodifiableMap(timeoutProfiles);
+    }
+
+    /**
+     * Returns the learned answer timeouts of a device. The profile is created
+     * if not yet existing.
+     *
+     * @param address individual address
+     * @param minTimeout lower bound for a new profile
+     * @param maxTimeout upper bound for a new profile
+     * @return timeout profile of the device
+     */
+    TimeoutProfile getTimeoutProfile(int address, int minTimeout, int maxTimeout) {
+        TimeoutProfile profile = timeoutProfiles.get(address);
+        if (profile == null) {
+            profile = new TimeoutProfile(minTimeout, maxTimeout);
+            TimeoutProfile existing = timeoutProfiles.putIfAbsent(address, profile);
+            if (existing != null) {
+                profile = existing;
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * Returns the learned answer time of broadcast queries on this
+     * connection. The estimator is created if not yet existing.
+     *
+     * @param initialTimeout timeout until the first answer has been measured
+     * @param minTimeout lower bound
+     * @param maxTimeout upper bound
+     * @return estimator
+     */
+    RttEstimator getBroadcastEstimator(int initialTimeout, int minTimeout, int maxTimeout) {
+        RttEstimator estimator = broadcastEstimator;
+        if (estimator == null) {
+            synchronized (timeoutProfiles) {
+                estimator = broadcastEstimator;
+                if (estimator == null) {
+                    estimator = new RttEstimator(initialTimeout, minTimeout, maxTimeout);
+                    broadcastEstimator = estimator;
+                }
+            }
+        }
+        return estimator;
+    }
+
+    private static boolean isAnswer(byte type) {
+        switch (type) {
+            case MSGTYPE_ACK:
+            case MSGTYPE_ANSWER_COM_OBJECT:
+            case MSGTYPE_ANSWER_DEVICE_INFO:
+            case MSGTYPE_ANSWER_INDIVIDUAL_ADDRESS:
+            case MSGTYPE_ANSWER_PROGRAMMING_MODE:
+            case MSGTYPE_ANSWER_PARAMETER:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isRequest(byte type) {
+        switch (type) {
+            case MSGTYPE_READ_COM_OBJECT:
+            case MSGTYPE_READ_DEVICE_INFO:
+            case MSGTYPE_READ_INDIVIDUAL_ADDRESS:
+            case MSGTYPE_READ_PARAMETER:
+            case MSGTYPE_READ_PROGRAMMING_MODE:
+            case MSGTYPE_RESTART:
+            case MSGTYPE_WRITE_COM_OBJECT:
+            case MSGTYPE_WRITE_INDIVIDUAL_ADDRESS:
+            case MSGTYPE_WRITE_PARAMETER:
+            case MSGTYPE_WRITE_PROGRAMMING_MODE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Hands a received answer to the pending request or the collectors waiting
+     * for it. Answers nobody waits for (f.i. late answers of an already timed
+     * out request) are dropped without creating a message object. Runs on the
+     * protocol thread.
+     *
+     * @param frame received answer, only valid during this call
+     */
+    private void dispatch(Frame frame) {
+        byte type = frame.getType();
+        int id = PendingRequest.ANY;
+        int address = PendingRequest.ANY;
+
+        switch (type) {
+            case MSGTYPE_ACK:
+                if (frame.hasIndexInformation()) {
+                    id = frame.getIndexInformation();
+                }
+                break;
+            case MSGTYPE_ANSWER_PARAMETER:
+            case MSGTYPE_ANSWER_COM_OBJECT:
+                id = frame.getId();
+                break;
+            case MSGTYPE_ANSWER_DEVICE_INFO:
+                address = frame.getDeviceInfoAddress();
+                break;
+        }
+
+        PendingRequest<?> request = removePending(type, id, address);
+        boolean collected = false;
+        for (int i = 0; i < collectors.size() && !collected; i++) {
+            collected = collectors.get(i).accepts(type);
+        }
+        boolean watched = false;
+        for (int i = 0; i < watchers.size() && !watched; i++) {
+            watched = watchers.get(i).accepts(type);
+        }
+        if (request == null && !collected && !watched) {
+            metrics.stale();
+            if (plog.isWarnEnabled()) {
+                plog.warn("Dropping unexpected or stale message: {}", frame);
+            }
+            return;
+        }
+
+        ProgMessage msg = frame.toMessage();
+        plog.debug("Received message: {}", msg);
+        if (request != null) {
+            long elapsed = request.getElapsedNanos();
+            if (log.isDebugEnabled()) {
+                log.debug("Answer for {} received after {}ms", request, TimeUnit.NANOSECONDS.toMillis(elapsed));
+            }
+            metrics.answered(request.getRequestType(), request.getDevice(), elapsed);
+            timedOutRequests.remove(request.getSignature());
+            request.complete(msg);
+        }
+        if (collected) {
+            for (int i = collectors.size() - 1; i >= 0; i--) {
+                ResponseCollector<?> collector = collectors.get(i);
+                if (!collector.accepts(type)) {
+                    continue;
+                }
+                if (collector.offer(msg)) {
+                    collectors.remove(i);
+                } else if (collector.getQuietPeriod() > 0) {
+                    collector.setQuietTask(TIMER.schedule(() -> loop.execute(() -> {
+                        collectors.remove(collector);
+                        collector.finish();
+                    }), collector.getQuietPeriod(), TimeUnit.MILLISECONDS));
+                }
+            }
+        }
+        if (watched) {
+            for (ProgModeWatcher watcher : watchers) {
+                if (watcher.accepts(type)) {
+                    watcher.offer(msg);
+                }
+            }
+        }
+    }
+
+    private PendingRequest<?> removePending(byte type, int id, int address) {
+        // prefer exact id/address match, then fall back to requests not caring about id/address
+        int index = indexOfPending(type, id, address, true);
+        if (index < 0) {
+            index = indexOfPending(type, id, address, false);
+        }
+        if (index < 0) {
+            return null;
+        }
+        PendingRequest<?> request = pendingRequests.remove(index);
+        pendingCount = pendingRequests.size();
+        return request;
+    }
+
+    private int indexOfPending(byte type, int id, int address, boolean exact) {
+        for (int i = 0; i < pendingRequests.size(); i++) {
+            if (pendingRequests.get(i).matches(type, id, address, exact)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Sends a message and registers it as pending request. The request is
+     * registered before sending, so that even very fast answers are matched.
+     *
+     * @param msg message to send
+     * @param answerType expected answer type
+     * @param id expected id in answer, or {@link PendingRequest#ANY}
+     * @param address expected individual address in answer, or
+     * {@link PendingRequest#ANY}
+     * @param answerClass class of expected answer
+     * @param device individual address of the requested device, or
+     * {@link PendingRequest#ANY} if not known
+     * @param estimator gets the measured round trip time, may be
+     * <code>null</code>
+     * @param timeout milliseconds to wait for answer, counted from the moment
+     * the message actually has been sent
+     * @param priority send priority
+     * @return future, completed with the answer, or exceptionally with a
+     * {@link KnxException} on timeout or failure to send
+     */
+    <T extends ProgMessage> CompletableFuture<T> request(ProgMessage msg, byte answerType, int id, int address, Class<T> answerClass, int device, RttEstimator estimator, final int timeout, SendScheduler.Priority priority) {
+        final PendingRequest<T> request = new PendingRequest<>(msg.getType(), device, answerType, id, address, answerClass, estimator);
+        loop.execute(() -> {
+            if (timedOutRequests.contains(request.getSignature())) {
+                request.setRetransmitted();
+            }
+            pendingRequests.add(request);
+            pendingCount = pendingRequests.size();
+        });
+        send(msg, priority).whenComplete((v, t) -> {
+            if (t != null) {
+                loop.execute(() -> {
+                    pendingRequests.remove(request);
+                    pendingCount = pendingRequests.size();
+                    request.fail(unwrap(t));
+                });
+                return;
+            }
+            request.markSent();
+            request.setTimeoutTask(TIMER.schedule(() -> loop.execute(() -> {
+                if (pendingRequests.remove(request)) {
+                    pendingCount = pendingRequests.size();
+                    metrics.timedOut(request.getRequestType());
+                    if (timedOutRequests.size() >= MAX_TIMED_OUT_REQUESTS) {
+                        timedOutRequests.clear();
+                    }
+                    timedOutRequests.add(request.getSignature());
+                    request.timedOut();
+                    request.fail(new AnswerTimeoutException("Waiting for answer of type " + request.getAnswerClass().getName() + " timed out."));
+                }
+            }), timeout, TimeUnit.MILLISECONDS));
+            log.debug("Waiting max. {}ms for answer to {}", timeout, request);
+        });
+        return request.getFuture();
+    }
+
+    /**
+     * Sends a broadcast query and collects all answers of given type.
+     *
+     * @param msg message to send
+     * @param answerType type of answers to collect
+     * @param answerClass class of answers to collect
+     * @param addressOf address of the device which sent an answer
+     * @param policy decides when enough answers have been collected
+     * @param timeout max. milliseconds to collect answers
+     * @return future, completed with the collected answers
+     */
+    <T extends ProgMessage> CompletableFuture<List<T>> collect(ProgMessage msg, byte answerType, Class<T> answerClass, ResponseCollector.AddressOf<T> addressOf, CollectPolicy policy, final int timeout, RttEstimator estimator) {
+        final ResponseCollector<T> collector = new ResponseCollector<>(answerType, answerClass, addressOf, policy, estimator);
+        loop.execute(() -> collectors.add(collector));
+        send(msg, SendScheduler.Priority.INTERACTIVE).whenComplete((v, t) -> {
+            if (t != null) {
+                loop.execute(() -> {
+                    collectors.remove(collector);
+                    collector.fail(unwrap(t));
+                });
+                return;
+            }
+            collector.sent();
+            collector.setTimeoutTask(TIMER.schedule(() -> loop.execute(() -> {
+                collectors.remove(collector);
+                collector.finish();
+            }), timeout, TimeUnit.MILLISECONDS));
+        });
+        return collector.getFuture();
+    }
+
+    /**
+     * Finishes a query later with the answers collected so far, unless its
+     * policy or timeout finished it before
+     *
+     * @param answers future returned by {@link #collect}
+     * @param delayMillis
+     */
+    void finishCollect(CompletableFuture<?> answers, long delayMillis) {
+        TIMER.schedule(() -> loop.execute(() -> {
+            for (int i = 0; i < collectors.size(); i++) {
+                ResponseCollector<?> collector = collectors.get(i);
+                if (collector.getFuture() == answers) {
+                    collectors.remove(i);
+                    collector.finish();
+                    return;
+                }
+            }
+        }), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts passing reports of devices in programming mode to the watcher,
+     * until removed again
+     *
+     * @param watcher
+     */
+    void addWatcher(ProgModeWatcher watcher) {
+        loop.execute(() -> watchers.add(watcher));
+    }
+
+    void removeWatcher(ProgModeWatcher watcher) {
+        loop.execute(() -> watchers.remove(watcher));
+    }
+
+    /**
+     * Queues message for sending
+     *
+     * @param msg
+     * @param priority
+     * @return future, completed when message has been sent
+     */
+    CompletableFuture<Void> send(ProgMessage msg, SendScheduler.Priority priority) {
+        plog.debug("Sending: {}", msg);
+        byte[] msgData = msg.data;
+
+        if (log.isTraceEnabled()) {
+            log.trace("Sending message \n"
+                    + "ProtocolVersion: {}\n"
+                    + "MsgTypeId      : {}\n"
+                    + "data[2..13]    : {} {} {} {} {} {} {} {} {} {} {} {}", new Object[]{
+                        String.format("%02x", msgData[0]),
+                        String.format("%02x", msgData[1]),
+                        String.format("%02x", msgData[2]),
+                        String.format("%02x", msgData[3]),
+                        String.format("%02x", msgData[4]),
+                        String.format("%02x", msgData[5]),
+                        String.format("%02x", msgData[6]),
+                        String.format("%02x", msgData[7]),
+                        String.format("%02x", msgData[8]),
+                        String.format("%02x", msgData[9]),
+                        String.format("%02x", msgData[10]),
+                        String.format("%02x", msgData[11]),
+                        String.format("%02x", msgData[12]),
+                        String.format("%02x", msgData[13]),});
+        }
+        return sendScheduler.send(msgData, priority);
+    }
+
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2015 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of slicKnx.
+ *
+ *   slicKnx is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   slicKnx is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with slicKnx.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.protocol0x00;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The one thread owning the protocol state (pending requests, collectors) of a
+ * {@link ProgProtocol0x00}. Received telegrams arrive through a bounded
+ * lock-free queue, state changes requested by other threads (registering a
+ * request, timeouts, send failures) through {@link #execute(Runnable)}.
+ * <p>
+ * Tasks are always run before the next telegram is handled. A request
+ * registered before its telegram is sent is therefore known when its answer
+ * is handled.
+ *
+ * @author achristian
+ */
+final class ProtocolLoop {
+
+    private static final Logger log = LoggerFactory.getLogger(ProtocolLoop.class);
+
+    private final MpscRingBuffer<Frame> inbound;
+    private final FramePool frames;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Consumer<Frame> handler;
+    private final Thread thread;
+    private final AtomicBoolean sleeping = new AtomicBoolean();
+    private volatile boolean running = true;
+    private volatile OverloadPolicy overloadPolicy = OverloadPolicy.DROP_NEWEST;
+
+    private final AtomicLong receivedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicBoolean overloaded = new AtomicBoolean();
+    private long droppedAtOverloadStart;
+
+    /**
+     * @param name thread name
+     * @param capacity max. number of received telegrams waiting to be handled
+     * @param handler handles received telegrams, called on the loop thread
+     */
+    ProtocolLoop(String name, int capacity, Consumer<Frame> handler) {
+        this.inbound = new MpscRingBuffer<>(capacity);
+        // one frame per slot plus the ones producers currently fill
+        this.frames = new FramePool(inbound.capacity() + 2);
+        this.handler = handler;
+        thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues a received telegram. Called by the receiving thread of the KNX
+     * connection.
+     *
+     * @param telegram 14 bytes of telegram data, copied
+     * @return false if dropped due to overload
+     */
+    boolean receive(byte[] telegram) {
+        Frame frame = frames.acquire().wrap(telegram);
+        boolean queued = inbound.offer(frame);
+        while (!queued && overloadPolicy == OverloadPolicy.BLOCK && running) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+            queued = inbound.offer(frame);
+        }
+        if (!queued) {
+            frames.release(frame);
+            droppedCount.incrementAndGet();
+            if (overloaded.compareAndSet(false, true)) {
+                log.warn("Inbound queue full ({} telegrams), dropping received telegrams", inbound.capacity());
+            }
+            return false;
+        }
+        receivedCount.incrementAndGet();
+        wakeUp();
+        return true;
+    }
+
+    /**
+     * Runs task on the loop thread
+     *
+     * @param task
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        wakeUp();
+    }
+
+    private void wakeUp() {
+        if (sleeping.get()) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private void run() {
+        while (running) {
+            runTasks();
+            Frame frame = inbound.poll();
+            if (frame != null) {
+                try {
+                    handler.accept(frame);
+                } catch (RuntimeException ex) {
+                    log.error("Error handling " + frame, ex);
+                } finally {
+                    frames.release(frame);
+                }
+                continue;
+            }
+            if (overloaded.get() && overloaded.compareAndSet(true, false)) {
+                long dropped = droppedCount.get();
+                log.warn("Inbound queue drained, {} telegrams dropped during overload", dropped - droppedAtOverloadStart);
+                droppedAtOverloadStart = dropped;
+            }
+            sleeping.set(true);
+            if (tasks.isEmpty() && inbound.isEmpty() && running) {
+                LockSupport.park(this);
+            }
+            sleeping.set(false);
+        }
+        runTasks();
+        log.debug("Protocol loop {} stopped", thread.getName());
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException ex) {
+                log.error("Error running protocol task", ex);
+            }
+        }
+    }
+
+    /**
+     * Stops the loop thread after the tasks queued so far. Telegrams still
+     * waiting are discarded.
+     */
+    void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    void setOverloadPolicy(OverloadPolicy overloadPolicy) {
+        this.overloadPolicy = overloadPolicy;
+    }
+
+    OverloadPolicy getOverloadPolicy() {
+        return overloadPolicy;
+    }
+
+    long getReceivedCount() {
+        return receivedCount.get();
+    }
+
+    long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    int getQueueDepth() {
+        return inbound.size();
+    }
+
+    int getCapacity() {
+        return inbound.capacity();
+    }
+
+}
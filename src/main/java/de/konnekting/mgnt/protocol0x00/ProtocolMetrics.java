@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2015 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of slicKnx.
+ *
+ *   slicKnx is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   slicKnx is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with slicKnx.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.protocol0x00;
+
+import static de.konnekting.mgnt.protocol0x00.ProgProtocol0x00.*;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Metrics of one connection, shared by all {@link ProgProtocol0x00} instances
+ * on it: round trip times per request type and per device, timeouts, NACKs,
+ * unexpected and unknown telegrams, retries and telegram counts.
+ * <p>
+ * Metrics can be read directly, taken as {@link MetricsSnapshot}, or pushed
+ * to registered {@link MetricsExporter}s, on demand or periodically.
+ *
+ * @author achristian
+ */
+public final class ProtocolMetrics {
+
+    private static final Logger log = LoggerFactory.getLogger(ProtocolMetrics.class);
+
+    private final AtomicReferenceArray<LatencyHistogram> latencyByType = new AtomicReferenceArray<>(256);
+    private final ConcurrentMap<Integer, LatencyHistogram> latencyByDevice = new ConcurrentHashMap<>();
+    private final AtomicLongArray timeoutsByType = new AtomicLongArray(256);
+    private final AtomicLongArray nacksByErrorCode = new AtomicLongArray(256);
+    private final AtomicLong receivedCount = new AtomicLong();
+    private final AtomicLong staleCount = new AtomicLong();
+    private final AtomicLong unknownCount = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final LongSupplier sentCount;
+
+    private final List<MetricsExporter> exporters = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService timer;
+    private ScheduledFuture<?> exportTask;
+
+    /**
+     * @param sentCount number of telegrams sent on the connection
+     * @param timer runs the periodic export
+     */
+    ProtocolMetrics(LongSupplier sentCount, ScheduledExecutorService timer) {
+        this.sentCount = sentCount;
+        this.timer = timer;
+    }
+
+    /**
+     * An answer to a request has been received
+     *
+     * @param requestType message type of the request
+     * @param device individual address of the device, or
+     * {@link PendingRequest#ANY} if not known
+     * @param nanos round trip time
+     */
+    void answered(byte requestType, int device, long nanos) {
+        getOrCreate(requestType).record(nanos);
+        if (device != PendingRequest.ANY) {
+            LatencyHistogram histogram = latencyByDevice.get(device);
+            if (histogram == null) {
+                latencyByDevice.putIfAbsent(device, new LatencyHistogram());
+                histogram = latencyByDevice.get(device);
+            }
+            histogram.record(nanos);
+        }
+    }
+
+    private LatencyHistogram getOrCreate(byte requestType) {
+        int index = requestType & 0xff;
+        LatencyHistogram histogram = latencyByType.get(index);
+        if (histogram == null) {
+            latencyByType.compareAndSet(index, null, new LatencyHistogram());
+            histogram = latencyByType.get(index);
+        }
+        return histogram;
+    }
+
+    void timedOut(byte requestType) {
+        timeoutsByType.incrementAndGet(requestType & 0xff);
+    }
+
+    void nack(byte errorCode) {
+        nacksByErrorCode.incrementAndGet(errorCode & 0xff);
+    }
+
+    void received() {
+        receivedCount.incrementAndGet();
+    }
+
+    void stale() {
+        staleCount.incrementAndGet();
+    }
+
+    void unknown() {
+        unknownCount.incrementAndGet();
+    }
+
+    /**
+     * Counts a request which is sent again because its answer did not arrive
+     * in time
+     */
+    public void retried() {
+        retryCount.incrementAndGet();
+    }
+
+    /**
+     * @param requestType message type of the request, f.i.
+     * {@link ProgProtocol0x00#MSGTYPE_WRITE_PARAMETER}
+     * @return round trip times of given request type, or <code>null</code> if
+     * none has been answered yet
+     */
+    public LatencyHistogram getLatency(byte requestType) {
+        return latencyByType.get(requestType & 0xff);
+    }
+
+    public long getTimeoutCount(byte requestType) {
+        return timeoutsByType.get(requestType & 0xff);
+    }
+
+    public long getNackCount(byte errorCode) {
+        return nacksByErrorCode.get(errorCode & 0xff);
+    }
+
+    /**
+     * @return number of telegrams sent
+     */
+    public long getSentCount() {
+        return sentCount.getAsLong();
+    }
+
+    /**
+     * @return number of telegrams received, including own requests
+     */
+    public long getReceivedCount() {
+        return receivedCount.get();
+    }
+
+    /**
+     * @return number of answers nobody was waiting for, f.i. late answers
+     * of timed out requests
+     */
+    public long getStaleCount() {
+        return staleCount.get();
+    }
+
+    /**
+     * @return number of telegrams with unknown type, protocol version or
+     * length
+     */
+    public long getUnknownCount() {
+        return unknownCount.get();
+    }
+
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    /**
+     * @return current state of all metrics
+     */
+    public MetricsSnapshot snapshot() {
+        Map<String, MetricsSnapshot.Latency> byType = new TreeMap<>();
+        Map<String, Long> timeouts = new TreeMap<>();
+        for (int i = 0; i < 256; i++) {
+            LatencyHistogram histogram = latencyByType.get(i);
+            if (histogram != null) {
+                byType.put(getTypeName((byte) i), new MetricsSnapshot.Latency(histogram));
+            }
+            long count = timeoutsByType.get(i);
+            if (count > 0) {
+                timeouts.put(getTypeName((byte) i), count);
+            }
+        }
+        Map<String, MetricsSnapshot.Latency> byDevice = new TreeMap<>();
+        for (Map.Entry<Integer, LatencyHistogram> entry : latencyByDevice.entrySet()) {
+            byDevice.put(toIndividualAddress(entry.getKey()), new MetricsSnapshot.Latency(entry.getValue()));
+        }
+        Map<Integer, Long> nacks = new TreeMap<>();
+        for (int i = 0; i < 256; i++) {
+            long count = nacksByErrorCode.get(i);
+            if (count > 0) {
+                nacks.put(i, count);
+            }
+        }
+        return new MetricsSnapshot(System.currentTimeMillis(), getSentCount(), getReceivedCount(), getStaleCount(),
+            getUnknownCount(), getRetryCount(), byType, byDevice, timeouts, nacks);
+    }
+
+    public void addExporter(MetricsExporter exporter) {
+        exporters.add(exporter);
+    }
+
+    public void removeExporter(MetricsExporter exporter) {
+        exporters.remove(exporter);
+    }
+
+    /**
+     * Hands a snapshot to all registered exporters
+     */
+    public void export() {
+        if (exporters.isEmpty()) {
+            return;
+        }
+        MetricsSnapshot snapshot = snapshot();
+        for (MetricsExporter exporter : exporters) {
+            try {
+                exporter.export(snapshot);
+            } catch (IOException | RuntimeException ex) {
+                log.warn("Exporting metrics with " + exporter + " failed", ex);
+            }
+        }
+    }
+
+    /**
+     * Exports periodically to all registered exporters
+     *
+     * @param intervalMillis export interval, 0 to stop periodic export
+     */
+    public synchronized void setExportInterval(long intervalMillis) {
+        if (exportTask != null) {
+            exportTask.cancel(false);
+            exportTask = null;
+        }
+        if (intervalMillis > 0) {
+            exportTask = timer.scheduleAtFixedRate(this::export, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops the periodic export, and exports a last time
+     */
+    void stop() {
+        boolean periodic;
+        synchronized (this) {
+            periodic = exportTask != null;
+            setExportInterval(0);
+        }
+        if (periodic) {
+            export();
+        }
+    }
+
+    static String toIndividualAddress(int address) {
+        return ((address >> 12) & 0x0f) + "." + ((address >> 8) & 0x0f) + "." + (address & 0xff);
+    }
+
+    /**
+     * @param type message type
+     * @return readable name of message type
+     */
+    static String getTypeName(byte type) {
+        switch (type) {
+            case MSGTYPE_ACK:
+                return "ACK";
+            case MSGTYPE_READ_DEVICE_INFO:
+                return "READ_DEVICE_INFO";
+            case MSGTYPE_ANSWER_DEVICE_INFO:
+                return "ANSWER_DEVICE_INFO";
+            case MSGTYPE_RESTART:
+                return "RESTART";
+            case MSGTYPE_WRITE_PROGRAMMING_MODE:
+                return "WRITE_PROGRAMMING_MODE";
+            case MSGTYPE_READ_PROGRAMMING_MODE:
+                return "READ_PROGRAMMING_MODE";
+            case MSGTYPE_ANSWER_PROGRAMMING_MODE:
+                return "ANSWER_PROGRAMMING_MODE";
+            case MSGTYPE_WRITE_INDIVIDUAL_ADDRESS:
+                return "WRITE_INDIVIDUAL_ADDRESS";
+            case MSGTYPE_READ_INDIVIDUAL_ADDRESS:
+                return "READ_INDIVIDUAL_ADDRESS";
+            case MSGTYPE_ANSWER_INDIVIDUAL_ADDRESS:
+                return "ANSWER_INDIVIDUAL_ADDRESS";
+            case MSGTYPE_WRITE_PARAMETER:
+                return "WRITE_PARAMETER";
+            case MSGTYPE_READ_PARAMETER:
+                return "READ_PARAMETER";
+            case MSGTYPE_ANSWER_PARAMETER:
+                return "ANSWER_PARAMETER";
+            case MSGTYPE_WRITE_COM_OBJECT:
+                return "WRITE_COM_OBJECT";
+            case MSGTYPE_READ_COM_OBJECT:
+                return "READ_COM_OBJECT";
+            case MSGTYPE_ANSWER_COM_OBJECT:
+                return "ANSWER_COM_OBJECT";
+            default:
+                return String.format("0x%02x", type);
+        }
+    }
+
+}
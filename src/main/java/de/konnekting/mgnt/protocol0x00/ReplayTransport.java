@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2015 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of slicKnx.
+ *
+ *   slicKnx is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   slicKnx is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with slicKnx.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.protocol0x00;
+
+import de.root1.slicknx.KnxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Plays back a session recorded with {@link TelegramJournal}, without a bus.
+ * Every telegram sent through this transport is compared with the next
+ * telegram sent in the recording. The telegrams received after it in the
+ * recording are then delivered with their original delay, multiplied by
+ * <code>timeScale</code>.
+ * <p>
+ * Once a sent telegram differs from the recording, the replay has diverged:
+ * the difference is recorded and no more answers are delivered, so the
+ * session under test runs into its timeouts.
+ * <p>
+ * Example, replaying a customer session 10 times faster:
+ * <pre>
+ * ReplayTransport replay = new ReplayTransport(TelegramJournal.read(dir), 0.1);
+ * Program program = new Program(replay);
+ * program.program(device, false, true, true);
+ * assert replay.isComplete() &amp;&amp; !replay.isDiverged();
+ * </pre>
+ *
+ * @author achristian
+ */
+public class ReplayTransport implements TelegramTransport {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplayTransport.class);
+
+    /**
+     * A recorded telegram we sent, with the telegrams received until the next
+     * one was sent
+     */
+    private static class Exchange {
+
+        private final TelegramJournal.Record request;
+        private final List<TelegramJournal.Record> answers = new ArrayList<>();
+
+        Exchange(TelegramJournal.Record request) {
+            this.request = request;
+        }
+    }
+
+    private final List<Exchange> exchanges = new ArrayList<>();
+    private final double timeScale;
+    private final ScheduledExecutorService scheduler;
+    private final List<String> mismatches = new ArrayList<>();
+    private volatile Receiver receiver;
+    private int next;
+    private boolean diverged;
+
+    /**
+     * @param records recorded session, f.i. from
+     * {@link TelegramJournal#read(java.io.File)}
+     * @param timeScale factor for the recorded answer delays, 1 = original
+     * timing, 0 = answer immediately
+     */
+    public ReplayTransport(List<TelegramJournal.Record> records, double timeScale) {
+        if (timeScale < 0) {
+            throw new IllegalArgumentException("timeScale must not be negative");
+        }
+        this.timeScale = timeScale;
+        Exchange current = null;
+        for (TelegramJournal.Record record : records) {
+            if (record.isSent()) {
+                current = new Exchange(record);
+                exchanges.add(current);
+            } else if (current != null) {
+                current.answers.add(record);
+            }
+            // telegrams received before our first request are not replayed
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ReplayTransport");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public void open(Receiver receiver) {
+        this.receiver = receiver;
+    }
+
+    @Override
+    public void close() {
+        receiver = null;
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public synchronized void send(byte[] telegram) throws KnxException {
+        if (diverged) {
+            mismatches.add("unexpected " + ProgMessage.fromData(telegram.clone()));
+            return;
+        }
+        if (next >= exchanges.size()) {
+            diverged = true;
+            mismatches.add("#" + next + ": expected end of recording, got " + ProgMessage.fromData(telegram.clone()));
+            log.warn("Replay diverged: {}", mismatches.get(mismatches.size() - 1));
+            return;
+        }
+        Exchange exchange = exchanges.get(next);
+        if (!Arrays.equals(exchange.request.getTelegram(), telegram)) {
+            diverged = true;
+            mismatches.add("#" + next + ": expected " + ProgMessage.fromData(exchange.request.getTelegram()) + ", got " + ProgMessage.fromData(telegram.clone()));
+            log.warn("Replay diverged: {}", mismatches.get(mismatches.size() - 1));
+            return;
+        }
+        next++;
+        for (final TelegramJournal.Record answer : exchange.answers) {
+            long delay = (long) ((answer.getTimestamp() - exchange.request.getTimestamp()) * timeScale);
+            scheduler.schedule(() -> {
+                Receiver r = receiver;
+                if (r != null) {
+                    r.received(answer.getTelegram().clone());
+                }
+            }, Math.max(0, delay), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return true if all recorded requests have been sent again
+     */
+    public synchronized boolean isComplete() {
+        return next == exchanges.size();
+    }
+
+    /**
+     * @return true if a sent telegram differed from the recording
+     */
+    public synchronized boolean isDiverged() {
+        return diverged;
+    }
+
+    /**
+     * @return number of recorded requests replayed so far
+     */
+    public synchronized int getReplayedCount() {
+        return next;
+    }
+
+    /**
+     * @return number of requests in the recording
+     */
+    public int getRecordedCount() {
+        return exchanges.size();
+    }
+
+    /**
+     * @return descriptions of the telegrams differing from the recording
+     */
+    public synchronized List<String> getMismatches() {
+        return Collections.unmodifiableList(new ArrayList<>(mismatches));
+    }
+
+    @Override
+    public String toString() {
+        return "ReplayTransport{replayed=" + getReplayedCount() + "/" + getRecordedCount() + ", diverged=" + isDiverged() + "}";
+    }
+
+}
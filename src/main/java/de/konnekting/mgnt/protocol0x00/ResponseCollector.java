@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2015 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of slicKnx.
+ *
+ *   slicKnx is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   slicKnx is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with slicKnx.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.protocol0x00;
+
+import de.root1.slicknx.KnxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Collects all answers of one type to a broadcast query (f.i. "who is in
+ * programming mode?"), where the number of answers is not known in advance.
+ * Finishes early as soon as the {@link CollectPolicy} is satisfied.
+ *
+ * @author achristian
+ */
+class ResponseCollector<T extends ProgMessage> {
+
+    private final byte answerType;
+    private final Class<T> answerClass;
+    private final AddressOf<T> addressOf;
+    private final CollectPolicy policy;
+    private final RttEstimator estimator;
+    private volatile long sentNanos;
+    private final List<T> answers = new ArrayList<>();
+    private final List<String> addresses = new ArrayList<>();
+    private final CompletableFuture<List<T>> future = new CompletableFuture<>();
+    private volatile ScheduledFuture<?> timeoutTask;
+    private ScheduledFuture<?> quietTask;
+
+    /**
+     * Extracts the address of the answering device
+     */
+    interface AddressOf<T> {
+
+        String getAddress(T msg) throws KnxException;
+    }
+
+    /**
+     * @param answerType type of answer messages to collect
+     * @param answerClass class of answer messages to collect
+     * @param addressOf address of the device which sent an answer
+     * @param policy decides when the collector is done
+     * @param estimator gets the time until the first device answered, may be
+     * <code>null</code>
+     */
+    ResponseCollector(byte answerType, Class<T> answerClass, AddressOf<T> addressOf, CollectPolicy policy, RttEstimator estimator) {
+        this.answerType = answerType;
+        this.answerClass = answerClass;
+        this.addressOf = addressOf;
+        this.policy = policy;
+        this.estimator = estimator;
+    }
+
+    /**
+     * Called when the query has been sent, answers are measured from now on
+     */
+    void sent() {
+        sentNanos = System.nanoTime();
+    }
+
+    boolean accepts(byte type) {
+        return type == answerType;
+    }
+
+    /**
+     * Adds an answer
+     *
+     * @param msg
+     * @return true if collector is done
+     */
+    synchronized boolean offer(ProgMessage msg) {
+        if (future.isDone()) {
+            return true;
+        }
+        T answer = answerClass.cast(msg);
+        answers.add(answer);
+        try {
+            String address = addressOf.getAddress(answer);
+            if (addresses.contains(address)) {
+                // repeated telegram
+                return false;
+            }
+            addresses.add(address);
+            long sent = sentNanos;
+            if (addresses.size() == 1 && estimator != null && sent != 0) {
+                estimator.sample((System.nanoTime() - sent) / 1e6);
+            }
+        } catch (KnxException ex) {
+            return false;
+        }
+        if (policy.isDone(addresses)) {
+            finish();
+            return true;
+        }
+        return false;
+    }
+
+    int getQuietPeriod() {
+        return policy.getQuietPeriod();
+    }
+
+    /**
+     * Replaces the task finishing the collector after the quiet period
+     *
+     * @param quietTask
+     */
+    synchronized void setQuietTask(ScheduledFuture<?> quietTask) {
+        if (this.quietTask != null) {
+            this.quietTask.cancel(false);
+        }
+        this.quietTask = quietTask;
+    }
+
+    synchronized void finish() {
+        if (timeoutTask != null) {
+            timeoutTask.cancel(false);
+        }
+        if (quietTask != null) {
+            quietTask.cancel(false);
+        }
+        future.complete(new ArrayList<>(answers));
+    }
+
+    void fail(Throwable t) {
+        future.completeExceptionally(t);
+    }
+
+    void setTimeoutTask(ScheduledFuture<?> timeoutTask) {
+        this.timeoutTask = timeoutTask;
+    }
+
+    CompletableFuture<List<T>> getFuture() {
+        return future;
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2015 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of slicKnx.
+ *
+ *   slicKnx is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   slicKnx is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with slicKnx.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.protocol0x00;
+
+import static de.konnekting.mgnt.protocol0x00.ProgProtocol0x00.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides if and when a single request is sent again: after a timeout, or
+ * after a NACK with one of the configured error codes. Only idempotent
+ * requests are repeated, i.e. parameter/comobject writes, setting the
+ * programming mode and all reads. Restart and writing the individual address
+ * are never repeated automatically.
+ * <p>
+ * The n-th retry waits <code>initialBackoff * 2^(n-1)</code>, at most
+ * <code>maxBackoff</code>, randomly varied by +/- <code>jitter</code>, so
+ * that several tools on one line don't retry in lockstep.
+ *
+ * @author achristian
+ */
+public final class RetryPolicy {
+
+    /**
+     * Two retries, starting with 50ms backoff. NACKs are not retried.
+     */
+    public static final RetryPolicy DEFAULT = new RetryPolicy(2, 50, 1000, 0.5);
+
+    /**
+     * Never retry
+     */
+    public static final RetryPolicy NONE = new RetryPolicy(0, 0, 0, 0);
+
+    private final int maxRetries;
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final double jitter;
+    private final boolean[] retryableErrorCodes = new boolean[256];
+
+    /**
+     * @param maxRetries max. number of retries per request, 0 = no retries
+     * @param initialBackoff delay before first retry in ms
+     * @param maxBackoff upper bound for the delay in ms
+     * @param jitter random variation of the delay, 0..1
+     * @param retryableErrorCodes NACK error codes which are worth a retry,
+     * f.i. a device reporting to be busy
+     */
+    public RetryPolicy(int maxRetries, long initialBackoff, long maxBackoff, double jitter, byte... retryableErrorCodes) {
+        if (maxRetries < 0 || initialBackoff < 0 || maxBackoff < initialBackoff) {
+            throw new IllegalArgumentException("Invalid retry settings: maxRetries=" + maxRetries + " initialBackoff=" + initialBackoff + " maxBackoff=" + maxBackoff);
+        }
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("jitter must be 0..1");
+        }
+        this.maxRetries = maxRetries;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.jitter = jitter;
+        for (byte errorCode : retryableErrorCodes) {
+            this.retryableErrorCodes[errorCode & 0xff] = true;
+        }
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * @param requestType message type of the request
+     * @return true if sending the request twice has the same effect as
+     * sending it once
+     */
+    public static boolean isIdempotent(byte requestType) {
+        switch (requestType) {
+            case MSGTYPE_WRITE_PARAMETER:
+            case MSGTYPE_WRITE_COM_OBJECT:
+            case MSGTYPE_WRITE_PROGRAMMING_MODE:
+            case MSGTYPE_READ_PARAMETER:
+            case MSGTYPE_READ_COM_OBJECT:
+            case MSGTYPE_READ_DEVICE_INFO:
+                return true;
+            default:
+                // restart, individual address: device state changes or
+                // depends on the prog button
+                return false;
+        }
+    }
+
+    /**
+     * @param failure why the request failed
+     * @return true if the request may succeed when sent again
+     */
+    public boolean isRetryable(Throwable failure) {
+        if (failure instanceof AnswerTimeoutException) {
+            return true;
+        }
+        if (failure instanceof NackException) {
+            return retryableErrorCodes[((NackException) failure).getErrorCode() & 0xff];
+        }
+        return false;
+    }
+
+    /**
+     * @param retry number of the retry, starting with 1
+     * @return delay before sending the retry in ms
+     */
+    public long getBackoff(int retry) {
+        long backoff = initialBackoff << Math.min(retry - 1, 30);
+        if (backoff > maxBackoff || backoff < 0) {
+            backoff = maxBackoff;
+        }
+        double variation = jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        return Math.max(0, Math.round(backoff * (1 + variation)));
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy{maxRetries=" + maxRetries + ", initialBackoff=" + initialBackoff + "ms, maxBackoff=" + maxBackoff + "ms, jitter=" + jitter + "}";
+    }
+
+}
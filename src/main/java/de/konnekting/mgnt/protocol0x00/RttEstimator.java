@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2015 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of slicKnx.
+ *
+ *   slicKnx is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   slicKnx is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with slicKnx.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.protocol0x00;
+
+/**
+ * Estimates the answer timeout for one kind of request from measured round
+ * trip times, the same way TCP calculates its retransmission timeout: smoothed
+ * RTT plus four times the RTT variance. Each timeout doubles the next timeout
+ * until an answer is received again.
+ *
+ * @author achristian
+ */
+public class RttEstimator {
+
+    private static final double ALPHA = 1d / 8;
+    private static final double BETA = 1d / 4;
+    private static final int K = 4;
+    private static final int MAX_BACKOFF_SHIFT = 6;
+
+    /**
+     * lower bound for the variance term, so that a device answering always
+     * with exactly the same delay does not get a timeout of exactly that delay
+     */
+    private static final double GRANULARITY = 10;
+
+    private final int initialTimeout;
+    private final int minTimeout;
+    private final int maxTimeout;
+
+    private double srtt = -1;
+    private double rttvar;
+    private int backoffShift;
+    private long samples;
+
+    /**
+     * @param initialTimeout timeout in ms used until first sample is known
+     * @param minTimeout lower bound for timeout in ms
+     * @param maxTimeout upper bound for timeout in ms
+     */
+    public RttEstimator(int initialTimeout, int minTimeout, int maxTimeout) {
+        this.initialTimeout = initialTimeout;
+        this.minTimeout = minTimeout;
+        this.maxTimeout = maxTimeout;
+    }
+
+    /**
+     * Adds a measured round trip time
+     *
+     * @param rttMillis
+     */
+    public synchronized void sample(double rttMillis) {
+        if (srtt < 0) {
+            srtt = rttMillis;
+            rttvar = rttMillis / 2;
+        } else {
+            rttvar = (1 - BETA) * rttvar + BETA * Math.abs(srtt - rttMillis);
+            srtt = (1 - ALPHA) * srtt + ALPHA * rttMillis;
+        }
+        backoffShift = 0;
+        samples++;
+    }
+
+    /**
+     * Called if no answer was received within {@link #getTimeout()}. Doubles
+     * the timeout for the next request.
+     */
+    public synchronized void timedOut() {
+        if (backoffShift < MAX_BACKOFF_SHIFT) {
+            backoffShift++;
+        }
+    }
+
+    /**
+     * Sets smoothed RTT and variance, f.i. from a persisted profile
+     *
+     * @param srtt smoothed rtt in ms
+     * @param rttvar rtt variance in ms
+     */
+    public synchronized void restore(double srtt, double rttvar) {
+        this.srtt = srtt;
+        this.rttvar = rttvar;
+        backoffShift = 0;
+    }
+
+    /**
+     * @return timeout in ms to use for the next request
+     */
+    public synchronized int getTimeout() {
+        double timeout = srtt < 0 ? initialTimeout : srtt + Math.max(GRANULARITY, K * rttvar);
+        timeout *= 1 << backoffShift;
+        return (int) Math.max(minTimeout, Math.min(maxTimeout, Math.ceil(timeout)));
+    }
+
+    /**
+     * @return smoothed rtt in ms, or -1 if nothing measured yet
+     */
+    public synchronized double getSmoothedRtt() {
+        return srtt;
+    }
+
+    public synchronized double getRttVariance() {
+        return rttvar;
+    }
+
+    /**
+     * @return true if rtt is known, either measured or restored
+     */
+    public synchronized boolean hasEstimate() {
+        return srtt >= 0;
+    }
+
+    /**
+     * @return number of measured round trip times
+     */
+    public synchronized long getSampleCount() {
+        return samples;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "RttEstimator{srtt=" + String.format("%.1f", srtt) + "ms, rttvar=" + String.format("%.1f", rttvar) + "ms, timeout=" + getTimeout() + "ms}";
+    }
+
+}
@@ -0,0 +1,324 @@
+/*
+ * Copyright (C) 2015 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of slicKnx.
+ *
+ *   slicKnx is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   slicKnx is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with slicKnx.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.protocol0x00;
+
+import de.root1.slicknx.KnxException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends the programming telegrams of one {@link TelegramTransport} within a
+ * bus-load budget. All {@link ProgProtocol0x00} instances on the same
+ * connection share one scheduler (owned by their {@link ProtocolDispatcher}),
+ * so together they do not send more than <code>telegramsPerSecond</code>
+ * (token bucket with <code>burst</code> tokens). Interactive telegrams are sent before queued bulk telegrams.
+ *
+ * @author achristian
+ */
+public class SendScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(SendScheduler.class);
+
+    /**
+     * Default budget: a TP1 line transports about 40 telegrams per second at
+     * most, leave room for the regular bus traffic
+     */
+    public static final double DEFAULT_TELEGRAMS_PER_SECOND = 20;
+    public static final int DEFAULT_BURST = 5;
+
+    /**
+     * Throughput is measured over this many seconds, from the send times of
+     * up to {@link #THROUGHPUT_SAMPLES} telegrams
+     */
+    private static final int THROUGHPUT_WINDOW_SECONDS = 5;
+    private static final int THROUGHPUT_SAMPLES = 512;
+
+    public enum Priority {
+        /**
+         * handshakes the user or a running session waits for, f.i. setting
+         * programming mode
+         */
+        INTERACTIVE,
+        /**
+         * mass telegrams like parameter writes or inventory scans
+         */
+        BULK
+    }
+
+    private final TelegramTransport transport;
+    private final PriorityBlockingQueue<SendTask> queue = new PriorityBlockingQueue<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Thread sender;
+    private volatile boolean stopped;
+    private volatile TelegramJournal journal;
+
+    private double telegramsPerSecond = DEFAULT_TELEGRAMS_PER_SECOND;
+    private int burst = DEFAULT_BURST;
+    private double tokens = DEFAULT_BURST;
+    private long lastRefill = System.nanoTime();
+
+    private final AtomicLong sentCount = new AtomicLong();
+
+    /**
+     * Send times of the last telegrams, ring buffer indexed by sent count
+     */
+    private final AtomicLongArray sendTimes = new AtomicLongArray(THROUGHPUT_SAMPLES);
+    private final AtomicLong throttledCount = new AtomicLong();
+    private final AtomicLong throttleDelayNanos = new AtomicLong();
+    private final AtomicLong queueDelayNanos = new AtomicLong();
+    private volatile int maxQueueDepth;
+
+    /**
+     * @param transport transport to send with
+     * @param name name of sender thread
+     */
+    SendScheduler(TelegramTransport transport, String name) {
+        this.transport = transport;
+        sender = new Thread(this::sendLoop, name);
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /**
+     * Stops the sender thread. Telegrams not yet sent fail with a
+     * {@link KnxException}.
+     */
+    void stop() {
+        stopped = true;
+        sender.interrupt();
+    }
+
+    /**
+     * Queues a telegram for sending to {@link ProgProtocol0x00#PROG_GA}
+     *
+     * @param data telegram data
+     * @param priority
+     * @return future, completed when telegram has been handed to the
+     * connection, or exceptionally with {@link KnxException}
+     */
+    public CompletableFuture<Void> send(byte[] data, Priority priority) {
+        SendTask task = new SendTask(data, priority, sequence.incrementAndGet());
+        if (stopped) {
+            task.future.completeExceptionally(new KnxException("Scheduler has been stopped"));
+            return task.future;
+        }
+        queue.add(task);
+        if (stopped) {
+            // stopped meanwhile, the sender may already have drained the queue
+            failQueued();
+            return task.future;
+        }
+        int depth = queue.size();
+        if (depth > maxQueueDepth) {
+            maxQueueDepth = depth;
+        }
+        return task.future;
+    }
+
+    private void sendLoop() {
+        while (true) {
+            SendTask task;
+            try {
+                task = queue.take();
+                if (stopped) {
+                    // stop() may have been called while sending, and its interrupt got lost
+                    queue.add(task);
+                    break;
+                }
+                long wait = acquireToken();
+                if (wait > 0) {
+                    // give back, a more important telegram may arrive while waiting
+                    queue.add(task);
+                    throttledCount.incrementAndGet();
+                    throttleDelayNanos.addAndGet(wait);
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                    continue;
+                }
+            } catch (InterruptedException ex) {
+                log.debug("Sender interrupted, stopping");
+                break;
+            }
+
+            queueDelayNanos.addAndGet(System.nanoTime() - task.queuedAt);
+            try {
+                // count and journal before sending, the answer may arrive before send() returns
+                long sent = sentCount.incrementAndGet();
+                sendTimes.set((int) ((sent - 1) % THROUGHPUT_SAMPLES), System.nanoTime());
+                TelegramJournal j = journal;
+                if (j != null) {
+                    j.record(TelegramJournal.SENT, task.data);
+                }
+                transport.send(task.data);
+                task.future.complete(null);
+            } catch (KnxException | RuntimeException ex) {
+                task.future.completeExceptionally(ex);
+            }
+        }
+        failQueued();
+    }
+
+    /**
+     * Fails all telegrams still queued. Called by the sender when stopping,
+     * and by {@link #send} if it queued after that.
+     */
+    private void failQueued() {
+        KnxException stopped = new KnxException("Scheduler has been stopped");
+        SendTask task;
+        while ((task = queue.poll()) != null) {
+            task.future.completeExceptionally(stopped);
+        }
+    }
+
+    /**
+     * Takes a token from the bucket
+     *
+     * @return 0 if token was taken, otherwise nanoseconds until next token is
+     * available
+     */
+    private synchronized long acquireToken() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefill) * telegramsPerSecond / TimeUnit.SECONDS.toNanos(1));
+        lastRefill = now;
+        if (tokens >= 1) {
+            tokens--;
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) * TimeUnit.SECONDS.toNanos(1) / telegramsPerSecond);
+    }
+
+    void setJournal(TelegramJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * @param telegramsPerSecond max. average send rate
+     */
+    public synchronized void setTelegramsPerSecond(double telegramsPerSecond) {
+        if (telegramsPerSecond <= 0) {
+            throw new IllegalArgumentException("telegramsPerSecond must be positive");
+        }
+        this.telegramsPerSecond = telegramsPerSecond;
+    }
+
+    public synchronized double getTelegramsPerSecond() {
+        return telegramsPerSecond;
+    }
+
+    /**
+     * @param burst max. number of telegrams sent back-to-back after an idle
+     * period
+     */
+    public synchronized void setBurst(int burst) {
+        if (burst < 1) {
+            throw new IllegalArgumentException("burst must be at least 1");
+        }
+        this.burst = burst;
+        tokens = Math.min(tokens, burst);
+    }
+
+    public synchronized int getBurst() {
+        return burst;
+    }
+
+    /**
+     * @return number of telegrams waiting to be sent
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    /**
+     * @return telegrams sent per second during the last
+     * {@value #THROUGHPUT_WINDOW_SECONDS} seconds
+     */
+    public double getThroughput() {
+        long since = System.nanoTime() - TimeUnit.SECONDS.toNanos(THROUGHPUT_WINDOW_SECONDS);
+        int samples = (int) Math.min(sentCount.get(), THROUGHPUT_SAMPLES);
+        int count = 0;
+        for (int i = 0; i < samples; i++) {
+            if (sendTimes.get(i) - since > 0) {
+                count++;
+            }
+        }
+        return (double) count / THROUGHPUT_WINDOW_SECONDS;
+    }
+
+    /**
+     * @return how often the sender had to wait for the budget
+     */
+    public long getThrottledCount() {
+        return throttledCount.get();
+    }
+
+    /**
+     * @return total time the sender waited for the budget
+     */
+    public long getThrottleDelayMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(throttleDelayNanos.get());
+    }
+
+    /**
+     * @return average time a telegram waited in the queue
+     */
+    public double getAverageQueueDelayMillis() {
+        long sent = sentCount.get();
+        return sent == 0 ? 0 : queueDelayNanos.get() / 1000000d / sent;
+    }
+
+    @Override
+    public String toString() {
+        return "SendScheduler{telegramsPerSecond=" + getTelegramsPerSecond() + ", burst=" + getBurst() + ", queueDepth=" + getQueueDepth()
+            + ", sent=" + getSentCount() + ", throttled=" + getThrottledCount() + ", throttleDelay=" + getThrottleDelayMillis() + "ms}";
+    }
+
+    private static class SendTask implements Comparable<SendTask> {
+
+        private final byte[] data;
+        private final Priority priority;
+        private final long sequence;
+        private final long queuedAt = System.nanoTime();
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        SendTask(byte[] data, Priority priority, long sequence) {
+            this.data = data;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(SendTask o) {
+            int c = priority.compareTo(o.priority);
+            return c != 0 ? c : Long.compare(sequence, o.sequence);
+        }
+    }
+
+}
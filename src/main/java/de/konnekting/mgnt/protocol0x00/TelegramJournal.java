@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) 2015 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of slicKnx.
+ *
+ *   slicKnx is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   slicKnx is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with slicKnx.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.protocol0x00;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Binary journal of all telegrams sent and received on
+ * {@link ProgProtocol0x00#PROG_GA}. Records have a fixed size and are written
+ * to a memory mapped file without formatting or allocation, so full capture
+ * can stay switched on. When a file is full, the next one is started; only the
+ * newest <code>maxFiles</code> files are kept.
+ * <p>
+ * File layout: 4 bytes magic "KTJ" plus version, 4 bytes record size, then
+ * records of {@link #RECORD_SIZE} bytes: 8 bytes timestamp (ms since epoch),
+ * 1 byte direction, 1 byte telegram length, 14 bytes telegram. Unused space at
+ * the end of a file is zero. Use {@link TelegramJournalDecoder} to render a
+ * journal, {@link #read(java.io.File)} to process it.
+ *
+ * @author achristian
+ */
+public class TelegramJournal implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(TelegramJournal.class);
+
+    static final int MAGIC = 0x4b544a01; // "KTJ" + version 1
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_SIZE = 24;
+    static final byte SENT = 1;
+    static final byte RECEIVED = 2;
+    static final String FILE_PREFIX = "telegrams-";
+    static final String FILE_SUFFIX = ".ktj";
+
+    public static final int DEFAULT_FILE_SIZE = 4 * 1024 * 1024;
+    public static final int DEFAULT_MAX_FILES = 8;
+
+    private final File directory;
+    private final int fileSize;
+    private final int maxFiles;
+
+    private MappedByteBuffer buffer;
+    private int fileIndex;
+    private boolean closed;
+    private boolean failed;
+
+    private final AtomicLong recordCount = new AtomicLong();
+    private final AtomicLong lostCount = new AtomicLong();
+
+    /**
+     * Opens a journal with {@link #DEFAULT_FILE_SIZE} and
+     * {@link #DEFAULT_MAX_FILES}
+     *
+     * @param directory directory for the journal files, created if necessary
+     * @throws IOException if first file can't be created
+     */
+    public TelegramJournal(File directory) throws IOException {
+        this(directory, DEFAULT_FILE_SIZE, DEFAULT_MAX_FILES);
+    }
+
+    /**
+     * @param directory directory for the journal files, created if necessary
+     * @param fileSize size of each file in bytes
+     * @param maxFiles number of files kept, older ones are deleted
+     * @throws IOException if first file can't be created
+     */
+    public TelegramJournal(File directory, int fileSize, int maxFiles) throws IOException {
+        if (fileSize < HEADER_SIZE + RECORD_SIZE) {
+            throw new IllegalArgumentException("fileSize too small: " + fileSize);
+        }
+        if (maxFiles < 1) {
+            throw new IllegalArgumentException("maxFiles must be at least 1");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create journal directory " + directory);
+        }
+        this.directory = directory;
+        this.fileSize = fileSize;
+        this.maxFiles = maxFiles;
+
+        File[] existing = listFiles(directory);
+        if (existing.length > 0) {
+            fileIndex = indexOf(existing[existing.length - 1]);
+        }
+        openNextFile();
+    }
+
+    /**
+     * Appends a record. Never throws; if the journal can't be written, records
+     * are counted as lost.
+     *
+     * @param direction {@link #SENT} or {@link #RECEIVED}
+     * @param telegram 14 bytes telegram data
+     */
+    synchronized void record(byte direction, byte[] telegram) {
+        if (closed) {
+            return;
+        }
+        if (failed) {
+            lostCount.incrementAndGet();
+            return;
+        }
+        if (buffer.remaining() < RECORD_SIZE) {
+            try {
+                openNextFile();
+            } catch (IOException ex) {
+                log.error("Cannot continue telegram journal in " + directory + ", further telegrams are not recorded", ex);
+                lostCount.incrementAndGet();
+                failed = true;
+                return;
+            }
+        }
+        int length = Math.min(telegram.length, Frame.LENGTH);
+        buffer.putLong(System.currentTimeMillis());
+        buffer.put(direction);
+        buffer.put((byte) length);
+        buffer.put(telegram, 0, length);
+        for (int i = length; i < Frame.LENGTH; i++) {
+            buffer.put((byte) 0);
+        }
+        recordCount.incrementAndGet();
+    }
+
+    private void openNextFile() throws IOException {
+        if (buffer != null) {
+            buffer.force();
+            buffer = null;
+        }
+        fileIndex++;
+        File file = new File(directory, String.format("%s%08d%s", FILE_PREFIX, fileIndex, FILE_SUFFIX));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(fileSize);
+            // mapping stays valid after channel is closed
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+        }
+        buffer.putInt(MAGIC);
+        buffer.putInt(RECORD_SIZE);
+        log.debug("Writing telegram journal to {}", file);
+        deleteOldFiles();
+    }
+
+    private void deleteOldFiles() {
+        File[] files = listFiles(directory);
+        for (int i = 0; i < files.length - maxFiles; i++) {
+            if (!files[i].delete()) {
+                log.warn("Cannot delete old journal file {}", files[i]);
+            }
+        }
+    }
+
+    /**
+     * @param directory
+     * @return journal files in directory, oldest first
+     */
+    static File[] listFiles(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX));
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static int indexOf(File file) {
+        String name = file.getName();
+        try {
+            return Integer.parseInt(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    /**
+     * Reads a journal file, or all journal files of a directory in the order
+     * they have been written
+     *
+     * @param fileOrDirectory
+     * @return all records
+     * @throws IOException if a file can't be read or is no journal
+     */
+    public static List<Record> read(File fileOrDirectory) throws IOException {
+        File[] files = fileOrDirectory.isDirectory() ? listFiles(fileOrDirectory) : new File[]{fileOrDirectory};
+        List<Record> records = new ArrayList<>();
+        for (File file : files) {
+            readFile(file, records);
+        }
+        return records;
+    }
+
+    private static void readFile(File file, List<Record> records) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a telegram journal: " + file);
+        }
+        int recordSize = buffer.getInt();
+        if (recordSize < RECORD_SIZE) {
+            throw new IOException("Invalid record size " + recordSize + " in " + file);
+        }
+
+        while (buffer.remaining() >= recordSize) {
+            int start = buffer.position();
+            long timestamp = buffer.getLong();
+            byte direction = buffer.get();
+            int length = buffer.get() & 0xff;
+            if (direction == 0) {
+                // unused rest of file
+                break;
+            }
+            byte[] telegram = new byte[Frame.LENGTH];
+            buffer.get(telegram, 0, Math.min(length, Frame.LENGTH));
+            buffer.position(start + recordSize);
+            records.add(new Record(timestamp, direction == SENT, telegram));
+        }
+    }
+
+    /**
+     * One recorded telegram
+     */
+    public static class Record {
+
+        private final long timestamp;
+        private final boolean sent;
+        private final byte[] telegram;
+
+        public Record(long timestamp, boolean sent, byte[] telegram) {
+            this.timestamp = timestamp;
+            this.sent = sent;
+            this.telegram = telegram;
+        }
+
+        /**
+         * @return ms since epoch
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * @return true if sent by us, false if received
+         */
+        public boolean isSent() {
+            return sent;
+        }
+
+        public byte[] getTelegram() {
+            return telegram;
+        }
+
+        @Override
+        public String toString() {
+            return (sent ? ">> " : "<< ") + ProgMessage.fromData(telegram);
+        }
+    }
+
+    /**
+     * Writes all records to disk
+     */
+    public synchronized void flush() {
+        if (buffer != null) {
+            buffer.force();
+        }
+    }
+
+    /**
+     * Flushes and stops recording. The journal has to be removed from the
+     * protocol before.
+     */
+    @Override
+    public synchronized void close() {
+        flush();
+        buffer = null;
+        closed = true;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return number of records written
+     */
+    public long getRecordCount() {
+        return recordCount.get();
+    }
+
+    /**
+     * @return number of records lost because the journal couldn't be written
+     */
+    public long getLostCount() {
+        return lostCount.get();
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2015 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of slicKnx.
+ *
+ *   slicKnx is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   slicKnx is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with slicKnx.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.protocol0x00;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Renders a {@link TelegramJournal} as text, one line per telegram, using the
+ * message classes of the protocol.
+ * <p>
+ * Usage: <code>java de.konnekting.mgnt.protocol0x00.TelegramJournalDecoder
+ * &lt;journal directory or file&gt;</code>
+ *
+ * @author achristian
+ */
+public class TelegramJournalDecoder {
+
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: TelegramJournalDecoder <journal directory or file>");
+            System.exit(1);
+        }
+        new TelegramJournalDecoder().decode(new File(args[0]), System.out);
+    }
+
+    /**
+     * Decodes a journal file, or all journal files of a directory in the order
+     * they have been written
+     *
+     * @param fileOrDirectory
+     * @param out
+     * @return number of decoded telegrams
+     * @throws IOException if a file can't be read or is no journal
+     */
+    public int decode(File fileOrDirectory, PrintStream out) throws IOException {
+        List<TelegramJournal.Record> records = TelegramJournal.read(fileOrDirectory);
+        for (TelegramJournal.Record record : records) {
+            out.println(format(record));
+        }
+        return records.size();
+    }
+
+    /**
+     * @param record
+     * @return one line of text
+     */
+    String format(TelegramJournal.Record record) {
+        byte[] telegram = record.getTelegram();
+        String msg;
+        if (telegram[0] == ProgProtocol0x00.PROTOCOL_VERSION) {
+            msg = ProgMessage.fromData(telegram).toString();
+        } else {
+            msg = new Frame().wrap(telegram).toString();
+        }
+        return dateFormat.format(new Date(record.getTimestamp())) + (record.isSent() ? " >> " : " << ") + msg;
+    }
+
+}
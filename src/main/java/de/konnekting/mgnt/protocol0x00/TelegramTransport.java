@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2015 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of slicKnx.
+ *
+ *   slicKnx is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   slicKnx is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with slicKnx.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.protocol0x00;
+
+import de.root1.slicknx.KnxException;
+
+/**
+ * Carries the telegrams of {@link ProgProtocol0x00#PROG_GA}. Normally this is
+ * a {@link KnxTransport} on a KNX connection; a {@link ReplayTransport} plays
+ * back a recorded session instead.
+ *
+ * @author achristian
+ */
+public interface TelegramTransport {
+
+    /**
+     * Gets the telegrams received on {@link ProgProtocol0x00#PROG_GA}
+     */
+    interface Receiver {
+
+        /**
+         * @param telegram telegram data, may be reused after the call returns
+         */
+        void received(byte[] telegram);
+    }
+
+    /**
+     * Starts delivering received telegrams
+     *
+     * @param receiver
+     */
+    void open(Receiver receiver);
+
+    /**
+     * Stops delivering received telegrams
+     */
+    void close();
+
+    /**
+     * Sends a telegram to {@link ProgProtocol0x00#PROG_GA}
+     *
+     * @param telegram
+     * @throws KnxException if sending failed
+     */
+    void send(byte[] telegram) throws KnxException;
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2015 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of slicKnx.
+ *
+ *   slicKnx is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   slicKnx is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with slicKnx.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.protocol0x00;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The learned answer timeouts of one device, one {@link RttEstimator} per
+ * request message type.
+ *
+ * @author achristian
+ */
+public class TimeoutProfile {
+
+    private final int minTimeout;
+    private final int maxTimeout;
+    private final Map<Byte, RttEstimator> estimators = new TreeMap<>();
+
+    /**
+     * @param minTimeout lower bound for all timeouts in ms
+     * @param maxTimeout upper bound for all timeouts in ms
+     */
+    public TimeoutProfile(int minTimeout, int maxTimeout) {
+        this.minTimeout = minTimeout;
+        this.maxTimeout = maxTimeout;
+    }
+
+    /**
+     * Returns the estimator for given request type, creates it if necessary
+     *
+     * @param requestType message type of the request, f.i.
+     * {@link ProgProtocol0x00#MSGTYPE_WRITE_PARAMETER}
+     * @param initialTimeout timeout used until first rtt is measured
+     * @return estimator
+     */
+    public synchronized RttEstimator getEstimator(byte requestType, int initialTimeout) {
+        RttEstimator estimator = estimators.get(requestType);
+        if (estimator == null) {
+            estimator = new RttEstimator(initialTimeout, minTimeout, maxTimeout);
+            estimators.put(requestType, estimator);
+        }
+        return estimator;
+    }
+
+    /**
+     * Sets the estimate for given request type, f.i. from a persisted profile.
+     * Estimators which already have measured values are not touched.
+     *
+     * @param requestType message type of the request
+     * @param srtt smoothed rtt in ms
+     * @param rttvar rtt variance in ms
+     */
+    public synchronized void restore(byte requestType, double srtt, double rttvar) {
+        RttEstimator estimator = getEstimator(requestType, maxTimeout);
+        if (estimator.getSampleCount() == 0) {
+            estimator.restore(srtt, rttvar);
+        }
+    }
+
+    /**
+     * @return all estimators by request type, read-only
+     */
+    public synchronized Map<Byte, RttEstimator> getEstimators() {
+        return Collections.unmodifiableMap(new TreeMap<>(estimators));
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "TimeoutProfile" + estimators;
+    }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2015 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of slicKnx.
+ *
+ *   slicKnx is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   slicKnx is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with slicKnx.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.protocol0x00;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes each snapshot as text block or as one JSON line to a writer, f.i.
+ * a log file
+ *
+ * @author achristian
+ */
+public class WriterMetricsExporter implements MetricsExporter {
+
+    private final Writer writer;
+    private final boolean json;
+
+    /**
+     * @param writer target, not closed by this exporter
+     * @param json true to write JSON lines, false for text
+     */
+    public WriterMetricsExporter(Writer writer, boolean json) {
+        this.writer = writer;
+        this.json = json;
+    }
+
+    @Override
+    public synchronized void export(MetricsSnapshot snapshot) throws IOException {
+        if (json) {
+            writer.write(snapshot.toJson());
+            writer.write('\n');
+        } else {
+            writer.write(snapshot.toText());
+        }
+        writer.flush();
+    }
+
+    @Override
+    public String toString() {
+        return "WriterMetricsExporter{json=" + json + "}";
+    }
+
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2015 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of slicKnx.
+ *
+ *   slicKnx is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   slicKnx is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with slicKnx.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.simulation;
+
+import static de.konnekting.mgnt.protocol0x00.ProgProtocol0x00.*;
+import de.root1.slicknx.KnxException;
+import de.root1.slicknx.Utils;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Device side of protocol 0x00, as implemented by the KONNEKTING device
+ * library: programming mode, individual address, device info, parameter and
+ * comobject memory, ACK/NACK and restart. Runs on a {@link VirtualBus}.
+ *
+ * @author achristian
+ */
+public class SimulatedDevice {
+
+    public static final byte ACK = 0x00;
+    public static final byte NACK = (byte) 0xFF;
+    public static final byte NO_INDEX = (byte) 0xFF;
+
+    /**
+     * NACK error code: parameter id out of range (simulation specific)
+     */
+    public static final byte ERROR_INVALID_PARAMETER = 0x01;
+    /**
+     * NACK error code: comobject id out of range (simulation specific)
+     */
+    public static final byte ERROR_INVALID_COM_OBJECT = 0x02;
+
+    private static final int VALUE_LENGTH = 11;
+
+    private final int manufacturerId;
+    private final short deviceId;
+    private final short revisionId;
+    private final byte[][] parameters;
+    private final int[] comObjectAddresses;
+    private final byte[] comObjectSettings;
+
+    private int individualAddress;
+    private boolean progMode;
+    private int restartCount;
+
+    private int latencyMillis;
+    private int jitterMillis;
+    private double lossRate;
+    private double duplicateRate;
+
+    /**
+     * @param individualAddress
+     * @param manufacturerId
+     * @param deviceId
+     * @param revisionId
+     * @param parameterCount number of parameters, ids 0..parameterCount-1
+     * @param comObjectCount number of comobjects, ids 0..comObjectCount-1
+     * @throws KnxException if address is invalid
+     */
+    public SimulatedDevice(String individualAddress, int manufacturerId, short deviceId, short revisionId, int parameterCount, int comObjectCount) throws KnxException {
+        this.individualAddress = toAddress(Utils.getIndividualAddress(individualAddress).toByteArray(), 0);
+        this.manufacturerId = manufacturerId;
+        this.deviceId = deviceId;
+        this.revisionId = revisionId;
+        this.parameters = new byte[parameterCount][VALUE_LENGTH];
+        this.comObjectAddresses = new int[comObjectCount];
+        this.comObjectSettings = new byte[comObjectCount];
+    }
+
+    /**
+     * Handles a telegram sent on the bus
+     *
+     * @param request 14 bytes telegram data
+     * @return answers of this device, may be empty
+     */
+    synchronized List<byte[]> handle(byte[] request) {
+        if (request.length != 14 || request[0] != PROTOCOL_VERSION) {
+            return Collections.emptyList();
+        }
+        boolean addressed = toAddress(request, 2) == individualAddress;
+        switch (request[1]) {
+            case MSGTYPE_READ_DEVICE_INFO:
+                return addressed ? answer(deviceInfo()) : none();
+            case MSGTYPE_WRITE_PROGRAMMING_MODE:
+                if (!addressed) {
+                    return none();
+                }
+                progMode = request[4] == 0x01;
+                return answer(ack(NO_INDEX));
+            case MSGTYPE_READ_PROGRAMMING_MODE:
+                return progMode ? answer(addressAnswer(MSGTYPE_ANSWER_PROGRAMMING_MODE)) : none();
+            case MSGTYPE_RESTART:
+                if (addressed) {
+                    progMode = false;
+                    restartCount++;
+                }
+                return none();
+        }
+
+        // everything else only for the device in programming mode
+        if (!progMode) {
+            return none();
+        }
+        int id = request[2] & 0xff;
+        switch (request[1]) {
+            case MSGTYPE_WRITE_INDIVIDUAL_ADDRESS:
+                individualAddress = toAddress(request, 2);
+                return answer(ack(NO_INDEX));
+            case MSGTYPE_READ_INDIVIDUAL_ADDRESS:
+                return answer(addressAnswer(MSGTYPE_ANSWER_INDIVIDUAL_ADDRESS));
+            case MSGTYPE_WRITE_PARAMETER:
+                if (id >= parameters.length) {
+                    return answer(nack(request[2], ERROR_INVALID_PARAMETER));
+                }
+                System.arraycopy(request, 3, parameters[id], 0, VALUE_LENGTH);
+                return answer(ack(request[2]));
+            case MSGTYPE_READ_PARAMETER:
+                if (id >= parameters.length) {
+                    return answer(nack(request[2], ERROR_INVALID_PARAMETER));
+                }
+                byte[] param = telegram(MSGTYPE_ANSWER_PARAMETER);
+                param[2] = request[2];
+                System.arraycopy(parameters[id], 0, param, 3, VALUE_LENGTH);
+                return answer(param);
+            case MSGTYPE_WRITE_COM_OBJECT:
+                if (id >= comObjectAddresses.length) {
+                    return answer(nack(request[2], ERROR_INVALID_COM_OBJECT));
+                }
+                comObjectAddresses[id] = toAddress(request, 3);
+                comObjectSettings[id] = request[5];
+                return answer(ack(request[2]));
+            case MSGTYPE_READ_COM_OBJECT:
+                if (id >= comObjectAddresses.length) {
+                    return answer(nack(request[2], ERROR_INVALID_COM_OBJECT));
+                }
+                byte[] co = telegram(MSGTYPE_ANSWER_COM_OBJECT);
+                co[2] = request[2];
+                co[3] = (byte) (comObjectAddresses[id] >> 8);
+                co[4] = (byte) comObjectAddresses[id];
+                co[5] = comObjectSettings[id];
+                return answer(co);
+            default:
+                return none();
+        }
+    }
+
+    private static List<byte[]> none() {
+        return Collections.emptyList();
+    }
+
+    private static List<byte[]> answer(byte[] telegram) {
+        List<byte[]> answers = new ArrayList<>(1);
+        answers.add(telegram);
+        return answers;
+    }
+
+    private static byte[] telegram(byte type) {
+        byte[] data = new byte[14];
+        data[0] = PROTOCOL_VERSION;
+        data[1] = type;
+        return data;
+    }
+
+    private static int toAddress(byte[] data, int offset) {
+        return ((data[offset] & 0xff) << 8) | (data[offset + 1] & 0xff);
+    }
+
+    private byte[] ack(byte index) {
+        byte[] data = telegram(MSGTYPE_ACK);
+        data[2] = ACK;
+        data[4] = index;
+        return data;
+    }
+
+    private byte[] nack(byte index, byte errorCode) {
+        byte[] data = telegram(MSGTYPE_ACK);
+        data[2] = NACK;
+        data[3] = errorCode;
+        data[4] = index;
+        return data;
+    }
+
+    private byte[] addressAnswer(byte type) {
+        byte[] data = telegram(type);
+        data[2] = (byte) (individualAddress >> 8);
+        data[3] = (byte) individualAddress;
+        return data;
+    }
+
+    private byte[] deviceInfo() {
+        byte[] data = telegram(MSGTYPE_ANSWER_DEVICE_INFO);
+        data[2] = (byte) (manufacturerId >> 8);
+        data[3] = (byte) manufacturerId;
+        data[4] = (byte) deviceId;
+        data[5] = (byte) revisionId;
+        data[7] = (byte) (individualAddress >> 8);
+        data[8] = (byte) individualAddress;
+        return data;
+    }
+
+    /**
+     * Simulates pressing (or releasing) the programming button
+     *
+     * @param progMode
+     */
+    public synchronized void setProgMode(boolean progMode) {
+        this.progMode = progMode;
+    }
+
+    public synchronized boolean isProgMode() {
+        return progMode;
+    }
+
+    public synchronized String getIndividualAddress() {
+        try {
+            return Utils.getIndividualAddress((byte) (individualAddress >> 8), (byte) individualAddress).toString();
+        } catch (KnxException ex) {
+            throw new IllegalStateException("Invalid address " + individualAddress, ex);
+        }
+    }
+
+    public int getManufacturerId() {
+        return manufacturerId;
+    }
+
+    public short getDeviceId() {
+        return deviceId;
+    }
+
+    public short getRevisionId() {
+        return revisionId;
+    }
+
+    /**
+     * @param id
+     * @return stored value of parameter
+     */
+    public synchronized byte[] getParameter(int id) {
+        return Arrays.copyOf(parameters[id], VALUE_LENGTH);
+    }
+
+    /**
+     * @param id
+     * @return stored group address of comobject, raw 2 bytes
+     */
+    public synchronized int getComObjectAddress(int id) {
+        return comObjectAddresses[id];
+    }
+
+    /**
+     * @param id
+     * @return true if comobject has been written as active
+     */
+    public synchronized boolean isComObjectActive(int id) {
+        return (comObjectSettings[id] & 0x80) == 0x80;
+    }
+
+    /**
+     * @return how often the device has been restarted
+     */
+    public synchronized int getRestartCount() {
+        return restartCount;
+    }
+
+    /**
+     * @param latencyMillis time the device needs to answer
+     * @param jitterMillis random extra time, 0..jitterMillis
+     */
+    public synchronized void setLatency(int latencyMillis, int jitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+    }
+
+    public synchronized int getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public synchronized int getJitterMillis() {
+        return jitterMillis;
+    }
+
+    /**
+     * @param lossRate probability 0..1 that an answer gets lost
+     */
+    public synchronized void setLossRate(double lossRate) {
+        this.lossRate = lossRate;
+    }
+
+    public synchronized double getLossRate() {
+        return lossRate;
+    }
+
+    /**
+     * @param duplicateRate probability 0..1 that an answer arrives twice
+     */
+    public synchronized void setDuplicateRate(double duplicateRate) {
+        this.duplicateRate = duplicateRate;
+    }
+
+    public synchronized double getDuplicateRate() {
+        return duplicateRate;
+    }
+
+    @Override
+    public String toString() {
+        return "SimulatedDevice{" + getIndividualAddress() + ", manufacturerId=" + String.format("0x%04x", manufacturerId)
+            + ", deviceId=" + String.format("0x%02x", deviceId) + ", revisionId=" + String.format("0x%02x", revisionId)
+            + ", progMode=" + isProgMode() + "}";
+    }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2015 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of slicKnx.
+ *
+ *   slicKnx is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   slicKnx is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with slicKnx.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.simulation;
+
+import de.konnekting.mgnt.protocol0x00.TelegramTransport;
+import de.root1.slicknx.KnxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for a KNX line with {@link SimulatedDevice}s on it. Use
+ * it as transport for {@link de.konnekting.mgnt.KonnektingManagement} or
+ * {@link de.konnekting.deviceconfig.Program} to test or benchmark without
+ * hardware.
+ * <p>
+ * Every telegram sent is handed to all devices. Their answers are delivered
+ * after the device's latency, and may get lost or duplicated according to the
+ * device's loss and duplicate rates. Random decisions use a seeded generator,
+ * so runs with the same seed and the same sequence of telegrams behave the
+ * same.
+ *
+ * @author achristian
+ */
+public class VirtualBus implements TelegramTransport {
+
+    private final List<SimulatedDevice> devices = new CopyOnWriteArrayList<>();
+    private final Random random;
+    private final ScheduledExecutorService delivery;
+    private volatile Receiver receiver;
+
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong answerCount = new AtomicLong();
+    private final AtomicLong lostCount = new AtomicLong();
+    private final AtomicLong duplicateCount = new AtomicLong();
+
+    public VirtualBus() {
+        this(0);
+    }
+
+    /**
+     * @param seed seed for loss, duplicate and jitter decisions
+     */
+    public VirtualBus(long seed) {
+        random = new Random(seed);
+        delivery = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "VirtualBus");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public void addDevice(SimulatedDevice device) {
+        devices.add(device);
+    }
+
+    public void removeDevice(SimulatedDevice device) {
+        devices.remove(device);
+    }
+
+    /**
+     * @param individualAddress
+     * @return device currently having this address, or <code>null</code>
+     */
+    public SimulatedDevice getDevice(String individualAddress) {
+        for (SimulatedDevice device : devices) {
+            if (device.getIndividualAddress().equals(individualAddress)) {
+                return device;
+            }
+        }
+        return null;
+    }
+
+    public List<SimulatedDevice> getDevices() {
+        return new ArrayList<>(devices);
+    }
+
+    @Override
+    public void open(Receiver receiver) {
+        this.receiver = receiver;
+    }
+
+    @Override
+    public void close() {
+        receiver = null;
+    }
+
+    /**
+     * Stops delivering answers, the bus can't be used afterwards
+     */
+    public void shutdown() {
+        close();
+        delivery.shutdownNow();
+    }
+
+    @Override
+    public void send(byte[] telegram) throws KnxException {
+        sentCount.incrementAndGet();
+        byte[] request = telegram.clone();
+        for (SimulatedDevice device : devices) {
+            for (byte[] answer : device.handle(request)) {
+                transmit(device, answer);
+            }
+        }
+    }
+
+    private void transmit(SimulatedDevice device, byte[] answer) {
+        int copies = 1;
+        long delay;
+        synchronized (random) {
+            if (random.nextDouble() < device.getLossRate()) {
+                lostCount.incrementAndGet();
+                return;
+            }
+            if (random.nextDouble() < device.getDuplicateRate()) {
+                duplicateCount.incrementAndGet();
+                copies = 2;
+            }
+            int jitter = device.getJitterMillis();
+            delay = device.getLatencyMillis() + (jitter > 0 ? random.nextInt(jitter + 1) : 0);
+        }
+        for (int i = 0; i < copies; i++) {
+            delivery.schedule(() -> deliver(answer), delay + i, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void deliver(byte[] answer) {
+        Receiver r = receiver;
+        if (r != null) {
+            answerCount.incrementAndGet();
+            r.received(answer.clone());
+        }
+    }
+
+    /**
+     * @return number of telegrams sent to the bus
+     */
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    /**
+     * @return number of answers delivered, including duplicates
+     */
+    public long getAnswerCount() {
+        return answerCount.get();
+    }
+
+    public long getLostCount() {
+        return lostCount.get();
+    }
+
+    public long getDuplicateCount() {
+        return duplicateCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "VirtualBus{devices=" + devices.size() + ", sent=" + getSentCount() + ", answers=" + getAnswerCount()
+            + ", lost=" + getLostCount() + ", duplicates=" + getDuplicateCount() + "}";
+    }
+
+}
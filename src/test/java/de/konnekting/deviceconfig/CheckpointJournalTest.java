@@ -0,0 +1,120 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.konnekting.deviceconfig;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author achristian
+ */
+public class CheckpointJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test of loading a checkpoint after acknowledged values, of class
+     * CheckpointJournal.
+     */
+    @Test
+    public void testLoad() throws IOException {
+        System.out.println("load");
+        File dir = folder.getRoot();
+        CheckpointJournal journal = new CheckpointJournal(dir);
+        assertNull(journal.load("1.1.1"));
+
+        try (Checkpoint checkpoint = journal.create("1.1.1", "abcd", true, true)) {
+            checkpoint.comObjectAcknowledged((byte) 200);
+            for (short id = 0; id < 280; id++) {
+                checkpoint.parameterAcknowledged(id);
+            }
+        }
+
+        try (Checkpoint loaded = journal.load("1.1.1")) {
+            assertEquals("abcd", loaded.getConfigurationHash());
+            assertTrue(loaded.isComObjects());
+            assertTrue(loaded.isParameters());
+            assertTrue(loaded.isComObjectAcknowledged((byte) 200));
+            assertFalse(loaded.isComObjectAcknowledged((byte) 1));
+            assertTrue(loaded.isParameterAcknowledged((short) 279));
+            assertFalse(loaded.isParameterAcknowledged((short) 280));
+            assertEquals(281, loaded.getAcknowledgedCount());
+
+            // resumed run appends to the same checkpoint
+            loaded.parameterAcknowledged((short) 280);
+        }
+        try (Checkpoint loaded = journal.load("1.1.1")) {
+            assertEquals(282, loaded.getAcknowledgedCount());
+        }
+
+        journal.remove("1.1.1");
+        assertNull(journal.load("1.1.1"));
+    }
+
+    /**
+     * Test of a checkpoint cut off while writing its last line, of class
+     * CheckpointJournal.
+     */
+    @Test
+    public void testTruncated() throws IOException {
+        System.out.println("truncated");
+        File dir = folder.getRoot();
+        CheckpointJournal journal = new CheckpointJournal(dir);
+        try (Checkpoint checkpoint = journal.create("1.1.2", "abcd", false, true)) {
+            checkpoint.parameterAcknowledged((short) 1);
+        }
+        try (OutputStream out = new FileOutputStream(new File(dir, "1.1.2.checkpoint"), true)) {
+            out.write("param=".getBytes(StandardCharsets.UTF_8));
+        }
+
+        try (Checkpoint loaded = journal.load("1.1.2")) {
+            assertFalse(loaded.isComObjects());
+            assertEquals(1, loaded.getAcknowledgedCount());
+            assertTrue(loaded.isParameterAcknowledged((short) 1));
+        }
+    }
+
+    /**
+     * Test of a checkpoint whose last entry has been cut off within its value,
+     * of class CheckpointJournal.
+     */
+    @Test
+    public void testTruncatedValue() throws IOException {
+        System.out.println("truncatedValue");
+        File dir = folder.getRoot();
+        CheckpointJournal journal = new CheckpointJournal(dir);
+        try (Checkpoint checkpoint = journal.create("1.1.3", "abcd", false, true)) {
+            checkpoint.parameterAcknowledged((short) 1);
+        }
+        // "param=281\n" cut off
+        try (OutputStream out = new FileOutputStream(new File(dir, "1.1.3.checkpoint"), true)) {
+            out.write("param=28".getBytes(StandardCharsets.UTF_8));
+        }
+
+        try (Checkpoint loaded = journal.load("1.1.3")) {
+            assertEquals(1, loaded.getAcknowledgedCount());
+            assertFalse(loaded.isParameterAcknowledged((short) 28));
+
+            // appended after the last complete line
+            loaded.parameterAcknowledged((short) 281);
+        }
+        try (Checkpoint loaded = journal.load("1.1.3")) {
+            assertEquals(2, loaded.getAcknowledgedCount());
+            assertTrue(loaded.isParameterAcknowledged((short) 281));
+            assertFalse(loaded.isParameterAcknowledged((short) 28));
+        }
+    }
+
+}
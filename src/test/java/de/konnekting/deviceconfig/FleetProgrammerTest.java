@@ -0,0 +1,114 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.konnekting.deviceconfig;
+
+import de.konnekting.mgnt.protocol0x00.RetryPolicy;
+import de.konnekting.mgnt.simulation.SimulatedDevice;
+import de.konnekting.mgnt.simulation.VirtualBus;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author achristian
+ */
+public class FleetProgrammerTest {
+
+    /**
+     * Device type of Test.kdevice.xml
+     */
+    private static final int MANUFACTURER = 0xDEAD;
+    private static final short DEVICE = 190;
+    private static final short REVISION = 175;
+
+    private static List<DeviceConfigContainer> createDevices(int count) throws Exception {
+        List<DeviceConfigContainer> devices = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            DeviceConfigContainer device = new DeviceConfigContainer(new File("Test.kdevice.xml"));
+            device.setIndividualAddress("1.1." + i);
+            devices.add(device);
+        }
+        return devices;
+    }
+
+    /**
+     * Test that a failed device neither stays in programming mode nor breaks
+     * the following devices, of class FleetProgrammer.
+     */
+    @Test
+    public void testFailure() throws Exception {
+        System.out.println("failure");
+        VirtualBus bus = new VirtualBus(42);
+        // too few parameters, writing parameter #2 fails
+        bus.addDevice(new SimulatedDevice("1.1.1", MANUFACTURER, DEVICE, REVISION, 2, 8));
+        bus.addDevice(new SimulatedDevice("1.1.2", MANUFACTURER, DEVICE, REVISION, 16, 8));
+        bus.addDevice(new SimulatedDevice("1.1.3", MANUFACTURER, DEVICE, REVISION, 16, 8));
+        List<DeviceConfigContainer> devices = createDevices(3);
+        FleetResult result;
+        try {
+            FleetProgrammer fleet = FleetProgrammer.forTransports(Collections.singletonMap(FleetProgrammer.ANY_LINE, bus));
+            fleet.setProgramConfigurator(program -> program.setRetryPolicy(RetryPolicy.NONE));
+            result = fleet.program(devices, true, true);
+        } finally {
+            bus.shutdown();
+        }
+        assertEquals(1, result.getFailed().size());
+        assertTrue(result.getFailed().containsKey(devices.get(0)));
+        assertEquals(devices.subList(1, 3), result.getSucceeded());
+
+        SimulatedDevice failed = bus.getDevice("1.1.1");
+        assertFalse(failed.isProgMode());
+        assertEquals(0, failed.getRestartCount());
+        for (String address : new String[]{"1.1.2", "1.1.3"}) {
+            SimulatedDevice device = bus.getDevice(address);
+            assertFalse(device.isProgMode());
+            assertEquals(1, device.getRestartCount());
+            assertEquals(2, device.getParameter(2)[0]);
+        }
+    }
+
+    /**
+     * Test of an abort right after the last write of a device, of class
+     * FleetProgrammer.
+     */
+    @Test
+    public void testAbortWhenDone() throws Exception {
+        System.out.println("abortWhenDone");
+        VirtualBus bus = new VirtualBus(42);
+        for (int i = 1; i <= 3; i++) {
+            bus.addDevice(new SimulatedDevice("1.1." + i, MANUFACTURER, DEVICE, REVISION, 16, 8));
+        }
+        List<DeviceConfigContainer> devices = createDevices(3);
+        FleetResult result;
+        try {
+            final FleetProgrammer fleet = FleetProgrammer.forTransports(Collections.singletonMap(FleetProgrammer.ANY_LINE, bus));
+            fleet.setProgramConfigurator(program -> program.addProgressListener(new ProgramProgressListener() {
+                @Override
+                public void onStatusMessage(String statusMsg) {
+                }
+
+                @Override
+                public void onProgressUpdate(int currentStep, int steps) {
+                    if (currentStep == steps) {
+                        // first device is completely programmed
+                        fleet.abort();
+                    }
+                }
+            }));
+            result = fleet.program(devices, true, true);
+        } finally {
+            bus.shutdown();
+        }
+        assertEquals(devices.subList(0, 1), result.getSucceeded());
+        assertEquals(2, result.getFailed().size());
+        assertEquals(0, bus.getDevice("1.1.2").getRestartCount());
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.konnekting.deviceconfig;
+
+import de.konnekting.mgnt.ComObject;
+import de.konnekting.mgnt.KonnektingManagement;
+import de.konnekting.mgnt.simulation.SimulatedDevice;
+import de.konnekting.mgnt.simulation.VirtualBus;
+import de.root1.slicknx.KnxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author achristian
+ */
+public class ProgramTest {
+
+    private static final int MANUFACTURER = 0xDEAD;
+    private static final short DEVICE = 1;
+    private static final short REVISION = 2;
+
+    /**
+     * Test of reading back values which differ from the stored ones, of class
+     * Program.
+     */
+    @Test
+    public void testReadBack() throws KnxException {
+        System.out.println("readBack");
+        VirtualBus bus = new VirtualBus(42);
+        bus.addDevice(new SimulatedDevice("1.1.1", MANUFACTURER, DEVICE, REVISION, 4, 4));
+        try (KonnektingManagement mgt = new KonnektingManagement(bus);
+            Program program = new Program(bus)) {
+            mgt.startProgramming("1.1.1", MANUFACTURER, DEVICE, REVISION);
+            mgt.writeParameter((short) 0, new byte[]{0x01, 0x02});
+            mgt.writeParameter((short) 1, new byte[]{0x03});
+            mgt.writeComObject(new ComObject((byte) 0, "1/2/3"));
+            mgt.writeComObject(new ComObject((byte) 1, "1/2/4"));
+            mgt.writeComObject(new ComObject((byte) 2, ""));
+
+            final byte[][] values = {{0x01, 0x02}, {0x04}, {0x00}, {0x05}};
+            List<Short> verified = new ArrayList<>();
+            List<Short> parameters = program.readBack(Arrays.asList((short) 0, (short) 1, (short) 2, (short) 3),
+                id -> mgt.readParameterAsync(id).thenApply(stored -> Program.isSame(values[id], stored)), verified::add);
+            assertEquals(Arrays.asList((short) 1, (short) 3), parameters);
+            assertEquals(Arrays.asList((short) 0, (short) 2), verified);
+
+            ComObject same = new ComObject((byte) 0, "1/2/3");
+            ComObject otherAddress = new ComObject((byte) 1, "1/2/5");
+            ComObject inactive = new ComObject((byte) 2, "");
+            // never written, so inactive in device
+            ComObject active = new ComObject((byte) 3, "1/2/6");
+            List<ComObject> verifiedComObjects = new ArrayList<>();
+            List<ComObject> comObjects = program.readBack(Arrays.asList(same, otherAddress, inactive, active),
+                comObject -> mgt.readComObjectAsync(comObject.getId()).thenApply(stored -> Program.isSame(comObject, stored)), verifiedComObjects::add);
+            assertEquals(Arrays.asList(otherAddress, active), comObjects);
+            assertEquals(Arrays.asList(same, inactive), verifiedComObjects);
+
+            // mostly different: stops reading, everything unverified is written
+            List<Short> all = program.readBack(Arrays.asList((short) 1, (short) 3, (short) 0, (short) 2),
+                id -> mgt.readParameterAsync(id).thenApply(stored -> Program.isSame(new byte[]{0x7f}, stored)), id -> fail("#" + id + " differs"));
+            assertEquals(4, all.size());
+            mgt.stopProgramming();
+        } finally {
+            bus.shutdown();
+        }
+    }
+
+}
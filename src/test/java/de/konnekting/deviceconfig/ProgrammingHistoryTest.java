@@ -0,0 +1,126 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.konnekting.deviceconfig;
+
+import de.konnekting.mgnt.ComObject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author achristian
+ */
+public class ProgrammingHistoryTest {
+
+    private static final int MANUFACTURER = 0xDEAD;
+    private static final short DEVICE = 1;
+    private static final short REVISION = 2;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ProgrammingHistory saveHistory() throws IOException {
+        ProgrammingHistory history = new ProgrammingHistory(folder.getRoot());
+        DeviceState state = new DeviceState("1.1.1", MANUFACTURER, DEVICE, REVISION);
+        state.setComObject(new ComObject((byte) 0, "1/2/3"));
+        state.setComObject(new ComObject((byte) 200, ""));
+        state.setParameter((short) 1, new byte[]{0x01, 0x02});
+        state.setParameter((short) 300, new byte[]{(byte) 0xff});
+        history.save(state);
+        return history;
+    }
+
+    /**
+     * Test of values stored in the device, of class ProgrammingHistory.
+     */
+    @Test
+    public void testUnchanged() throws IOException {
+        System.out.println("unchanged");
+        DeviceState state = saveHistory().load("1.1.1", MANUFACTURER, DEVICE, REVISION);
+        assertTrue(state.isUpToDate(new ComObject((byte) 0, "1/2/3")));
+        assertTrue(state.isUpToDate(new ComObject((byte) 200, "")));
+        assertTrue(state.isUpToDate((short) 1, new byte[]{0x01, 0x02}));
+        assertTrue(state.isUpToDate((short) 300, new byte[]{(byte) 0xff}));
+
+        // group address of an inactive comobject does not matter
+        ComObject inactive = new ComObject((byte) 200, "4/5/6");
+        inactive.setActive(false);
+        assertTrue(state.isUpToDate(inactive));
+    }
+
+    /**
+     * Test of changed and unknown values, of class ProgrammingHistory.
+     */
+    @Test
+    public void testChanged() throws IOException {
+        System.out.println("changed");
+        DeviceState state = saveHistory().load("1.1.1", MANUFACTURER, DEVICE, REVISION);
+        assertFalse(state.isUpToDate(new ComObject((byte) 0, "1/2/4")));
+        assertFalse(state.isUpToDate(new ComObject((byte) 0, "")));
+        assertFalse(state.isUpToDate(new ComObject((byte) 200, "1/2/3")));
+        assertFalse(state.isUpToDate(new ComObject((byte) 1, "1/2/3")));
+        assertFalse(state.isUpToDate((short) 1, new byte[]{0x01, 0x03}));
+        assertFalse(state.isUpToDate((short) 1, new byte[]{0x01}));
+        assertFalse(state.isUpToDate((short) 2, new byte[]{0x01, 0x02}));
+
+        // written values are up to date with the next run
+        state.setParameter((short) 1, new byte[]{0x01, 0x03});
+        new ProgrammingHistory(folder.getRoot()).save(state);
+        state = new ProgrammingHistory(folder.getRoot()).load("1.1.1", MANUFACTURER, DEVICE, REVISION);
+        assertTrue(state.isUpToDate((short) 1, new byte[]{0x01, 0x03}));
+        assertFalse(state.isUpToDate((short) 1, new byte[]{0x01, 0x02}));
+    }
+
+    /**
+     * Test of a history belonging to another device type, of class
+     * ProgrammingHistory.
+     */
+    @Test
+    public void testOtherDevice() throws IOException {
+        System.out.println("otherDevice");
+        ProgrammingHistory history = saveHistory();
+        assertTrue(history.load("1.1.1", MANUFACTURER, DEVICE, (short) (REVISION + 1)).getParameters().isEmpty());
+        assertTrue(history.load("1.1.1", MANUFACTURER, (short) (DEVICE + 1), REVISION).getComObjects().isEmpty());
+        assertTrue(history.load("1.1.1", MANUFACTURER + 1, DEVICE, REVISION).getParameters().isEmpty());
+        assertFalse(history.load("1.1.1", MANUFACTURER, DEVICE, REVISION).getParameters().isEmpty());
+
+        history.remove("1.1.1");
+        assertTrue(history.load("1.1.1", MANUFACTURER, DEVICE, REVISION).getParameters().isEmpty());
+    }
+
+    /**
+     * Test of missing and corrupt history files, of class ProgrammingHistory.
+     */
+    @Test
+    public void testCorrupt() throws IOException {
+        System.out.println("corrupt");
+        ProgrammingHistory history = new ProgrammingHistory(new File(folder.getRoot(), "missing"));
+        DeviceState state = history.load("1.1.1", MANUFACTURER, DEVICE, REVISION);
+        assertTrue(state.getParameters().isEmpty());
+        assertTrue(state.isDevice(MANUFACTURER, DEVICE, REVISION));
+
+        history = new ProgrammingHistory(folder.getRoot());
+        File file = new File(folder.getRoot(), "1.1.2.properties");
+        Files.write(file.toPath(), ("device=dead.01.02\nparam.1=0102\nparam.2=xyz\nparam.3=010\nparam.x=01\nco.0=1/2/3\n")
+            .getBytes(StandardCharsets.ISO_8859_1));
+        state = history.load("1.1.2", MANUFACTURER, DEVICE, REVISION);
+        assertTrue(state.isUpToDate((short) 1, new byte[]{0x01, 0x02}));
+        assertEquals(1, state.getParameters().size());
+        assertTrue(state.isUpToDate(new ComObject((byte) 0, "1/2/3")));
+
+        // malformed escape
+        Files.write(file.toPath(), "device=dead.01.02\nparam.1=\\u01".getBytes(StandardCharsets.ISO_8859_1));
+        state = history.load("1.1.2", MANUFACTURER, DEVICE, REVISION);
+        assertTrue(state.getParameters().isEmpty());
+    }
+
+}
@@ -0,0 +1,61 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.konnekting.mgnt;
+
+import de.konnekting.mgnt.simulation.SimulatedDevice;
+import de.konnekting.mgnt.simulation.VirtualBus;
+import de.root1.slicknx.KnxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author achristian
+ */
+public class InventoryScannerTest {
+
+    /**
+     * Test of scan method, of class InventoryScanner.
+     */
+    @Test
+    public void testScan() throws KnxException {
+        System.out.println("scan");
+        VirtualBus bus = new VirtualBus(42);
+        String[] addresses = {"1.1.1", "1.1.7", "1.1.8", "1.1.30"};
+        for (String address : addresses) {
+            SimulatedDevice device = new SimulatedDevice(address, 0xDEAD, (short) 1, (short) 2, 4, 4);
+            device.setLatency(5, 20);
+            bus.addDevice(device);
+        }
+        final List<String> reported = Collections.synchronizedList(new ArrayList<String>());
+        List<DeviceInfo> found;
+        try (InventoryScanner scanner = new InventoryScanner(bus)) {
+            scanner.setTelegramsPerSecond(1000);
+            scanner.setTimeout(100);
+            found = scanner.scan(InventoryScanner.addressRange("1.1.0", "1.1.31"), deviceInfo -> reported.add(deviceInfo.getIndividualAddress()));
+        } finally {
+            bus.shutdown();
+        }
+
+        Set<String> expected = new HashSet<>();
+        Collections.addAll(expected, addresses);
+        assertEquals(addresses.length, reported.size());
+        assertEquals(expected, new HashSet<>(reported));
+        assertEquals(addresses.length, found.size());
+        Set<String> foundAddresses = new HashSet<>();
+        for (DeviceInfo deviceInfo : found) {
+            foundAddresses.add(deviceInfo.getIndividualAddress());
+            assertEquals(0xDEAD, deviceInfo.getManufacturerId());
+        }
+        assertEquals(expected, foundAddresses);
+    }
+
+}
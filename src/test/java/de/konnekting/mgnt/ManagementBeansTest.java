@@ -0,0 +1,58 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.konnekting.mgnt;
+
+import de.konnekting.mgnt.simulation.SimulatedDevice;
+import de.konnekting.mgnt.simulation.VirtualBus;
+import java.lang.management.ManagementFactory;
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author achristian
+ */
+public class ManagementBeansTest {
+
+    /**
+     * Test of registering management and protocol beans, of class
+     * ManagementBeans.
+     */
+    @Test
+    public void testRegister() throws Exception {
+        System.out.println("register");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName managementName = new ObjectName("de.konnekting:type=KonnektingManagement,name=\"test\"");
+        ObjectName protocolName = new ObjectName("de.konnekting:type=ProgProtocol0x00,name=\"test\"");
+
+        VirtualBus bus = new VirtualBus(42);
+        bus.addDevice(new SimulatedDevice("1.1.7", 0xDEAD, (short) 1, (short) 2, 4, 4));
+        try {
+            try (KonnektingManagement mgt = new KonnektingManagement(bus)) {
+                mgt.registerMBeans("test");
+                assertEquals(Boolean.FALSE, server.getAttribute(managementName, "Programming"));
+
+                mgt.startProgramming("1.1.7", 0xDEAD, (short) 1, (short) 2);
+                assertEquals("1.1.7", server.getAttribute(managementName, "IndividualAddress"));
+                assertEquals("1.1.7", server.getAttribute(protocolName, "ProgModeAddress"));
+                assertTrue((Long) server.getAttribute(protocolName, "SentTelegramCount") >= 3);
+
+                // rate limit changed at runtime
+                server.setAttribute(protocolName, new Attribute("TelegramsPerSecond", 5d));
+                assertEquals(5d, (Double) server.getAttribute(protocolName, "TelegramsPerSecond"), 0);
+                mgt.stopProgramming();
+            }
+            assertFalse(server.isRegistered(managementName));
+            assertFalse(server.isRegistered(protocolName));
+        } finally {
+            bus.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.konnekting.mgnt;
+
+import de.konnekting.mgnt.protocol0x00.RetryPolicy;
+import de.konnekting.mgnt.simulation.SimulatedDevice;
+import de.konnekting.mgnt.simulation.VirtualBus;
+import de.root1.slicknx.KnxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author achristian
+ */
+public class ProgrammingSessionTest {
+
+    private static final int MANUFACTURER = 0xDEAD;
+    private static final short DEVICE = 1;
+    private static final short REVISION = 2;
+
+    /**
+     * Test of incremental writes and commit, of class ProgrammingSession.
+     */
+    @Test
+    public void testCommit() throws KnxException {
+        System.out.println("commit");
+        VirtualBus bus = new VirtualBus(42);
+        SimulatedDevice device = new SimulatedDevice("1.1.1", MANUFACTURER, DEVICE, REVISION, 8, 8);
+        bus.addDevice(device);
+        try (KonnektingManagement mgt = new KonnektingManagement(bus)) {
+            ProgrammingSession session = mgt.openSession("1.1.1", MANUFACTURER, DEVICE, REVISION);
+            assertSame(session, mgt.getSession());
+            for (int round = 1; round <= 3; round++) {
+                session.writeParameter((short) 1, new byte[]{(byte) round});
+                assertEquals(round, session.readParameter((short) 1)[0]);
+                assertTrue(device.isProgMode());
+                assertEquals(0, device.getRestartCount());
+            }
+            try {
+                mgt.stopProgramming();
+                fail("session must be committed or closed");
+            } catch (IllegalStateException expected) {
+            }
+
+            session.commit();
+            assertFalse(session.isOpen());
+            assertFalse(mgt.isProgramming());
+            assertNull(mgt.getSession());
+            assertFalse(device.isProgMode());
+            assertEquals(1, device.getRestartCount());
+
+            // closed without commit: no restart
+            session = mgt.openSession("1.1.1", MANUFACTURER, DEVICE, REVISION);
+            session.writeComObject(new ComObject((byte) 2, "1/2/3"));
+            session.close();
+            assertFalse(device.isProgMode());
+            assertEquals(1, device.getRestartCount());
+            try {
+                session.writeParameter((short) 1, new byte[]{1});
+                fail("session is closed");
+            } catch (IllegalStateException expected) {
+            }
+        } finally {
+            bus.shutdown();
+        }
+    }
+
+    /**
+     * Test of a session lost because the device does not acknowledge the
+     * keepalive, of class ProgrammingSession.
+     */
+    @Test
+    public void testKeepAlive() throws Exception {
+        System.out.println("keepAlive");
+        VirtualBus bus = new VirtualBus(42);
+        SimulatedDevice device = new SimulatedDevice("1.1.1", MANUFACTURER, DEVICE, REVISION, 8, 8);
+        bus.addDevice(device);
+        try (KonnektingManagement mgt = new KonnektingManagement(bus)) {
+            mgt.setRetryPolicy(RetryPolicy.NONE);
+            mgt.setKeepAliveInterval(50);
+            ProgrammingSession session = mgt.openSession("1.1.1", MANUFACTURER, DEVICE, REVISION);
+            // device restarted by someone else, keepalive sets prog mode again
+            device.setProgMode(false);
+            Thread.sleep(200);
+            assertTrue(device.isProgMode());
+            assertFalse(session.isLost());
+
+            bus.removeDevice(device);
+            for (int i = 0; i < 50 && !session.isLost(); i++) {
+                Thread.sleep(50);
+            }
+            assertTrue(session.isLost());
+            try {
+                session.writeParameter((short) 1, new byte[]{1});
+                fail("session is lost");
+            } catch (KnxException expected) {
+            }
+            session.close();
+            assertFalse(mgt.isProgramming());
+        } finally {
+            bus.shutdown();
+        }
+    }
+
+    /**
+     * Stress test of sessions on several connections programmed concurrently
+     * by a thread pool, of class ProgrammingSession.
+     */
+    @Test
+    public void testConcurrentSessions() throws Exception {
+        System.out.println("concurrentSessions");
+        final int connections = 4;
+        final int rounds = 5;
+        final int parameters = 8;
+        VirtualBus main = new VirtualBus(1);
+        final VirtualBus[] buses = new VirtualBus[connections];
+        final SimulatedDevice[] devices = new SimulatedDevice[connections];
+        for (int i = 0; i < connections; i++) {
+            buses[i] = new VirtualBus(100 + i);
+            devices[i] = new SimulatedDevice("1.1." + (i + 1), MANUFACTURER, DEVICE, REVISION, parameters, 8);
+            buses[i].addDevice(devices[i]);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(connections);
+        try (final KonnektingManagement mgt = new KonnektingManagement(main)) {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < connections; i++) {
+                final int index = i;
+                results.add(pool.submit(() -> {
+                    String address = "1.1." + (index + 1);
+                    for (int round = 1; round <= rounds; round++) {
+                        ProgrammingSession session = mgt.openSession(buses[index], address, MANUFACTURER, DEVICE, REVISION);
+                        try {
+                            // only one device per connection in prog mode
+                            mgt.openSession(buses[index], address, MANUFACTURER, DEVICE, REVISION).close();
+                            fail("second session on same connection must fail");
+                        } catch (KnxException expected) {
+                        }
+                        List<CompletableFuture<Void>> writes = new ArrayList<>();
+                        for (short id = 0; id < parameters; id++) {
+                            writes.add(session.writeParameterAsync(id, new byte[]{(byte) (index * 16 + round), (byte) id}));
+                        }
+                        CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).join();
+                        for (short id = 0; id < parameters; id++) {
+                            byte[] value = session.readParameter(id);
+                            assertEquals(index * 16 + round, value[0]);
+                            assertEquals(id, value[1]);
+                        }
+                        session.commit();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get(60, TimeUnit.SECONDS);
+            }
+            assertEquals(0, mgt.getSessionCount());
+            assertFalse(mgt.isProgramming());
+            for (int i = 0; i < connections; i++) {
+                assertFalse(devices[i].isProgMode());
+                assertEquals(rounds, devices[i].getRestartCount());
+            }
+        } finally {
+            pool.shutdownNow();
+            main.shutdown();
+            for (VirtualBus bus : buses) {
+                bus.shutdown();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.konnekting.mgnt;
+
+import de.konnekting.mgnt.protocol0x00.AnswerTimeoutException;
+import de.root1.slicknx.KnxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author achristian
+ */
+public class SlidingWindowTest {
+
+    private static final List<Integer> ITEMS = Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8);
+
+    /**
+     * Records the started items
+     */
+    private static class RecordingListener implements SlidingWindow.Listener<Integer> {
+
+        private final List<Integer> started = new ArrayList<>();
+        private final List<Integer> completed = new ArrayList<>();
+        private final List<Integer> retransmitted = new ArrayList<>();
+
+        @Override
+        public void onStarted(Integer item) {
+            started.add(item);
+        }
+
+        @Override
+        public void onCompleted(Integer item) {
+            completed.add(item);
+        }
+
+        @Override
+        public void onRetransmit(Integer item) {
+            retransmitted.add(item);
+        }
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable t) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(t);
+        return future;
+    }
+
+    /**
+     * Test of the number of operations in flight, of class SlidingWindow.
+     */
+    @Test
+    public void testWindowSize() throws KnxException {
+        System.out.println("windowSize");
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            AtomicInteger inFlight = new AtomicInteger();
+            AtomicInteger maxInFlight = new AtomicInteger();
+            SlidingWindow<Integer> instance = new SlidingWindow<>(3, 0);
+            boolean result = instance.run(ITEMS, item -> {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                CompletableFuture<Void> future = new CompletableFuture<>();
+                executor.schedule(() -> {
+                    inFlight.decrementAndGet();
+                    future.complete(null);
+                }, 10, TimeUnit.MILLISECONDS);
+                return future;
+            }, null);
+            assertTrue(result);
+            assertEquals(3, maxInFlight.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Test of the selective retransmission of timed out operations, of class
+     * SlidingWindow.
+     */
+    @Test
+    public void testRetransmit() throws KnxException {
+        System.out.println("retransmit");
+        Map<Integer, AtomicInteger> attempts = new ConcurrentHashMap<>();
+        RecordingListener listener = new RecordingListener();
+        SlidingWindow<Integer> instance = new SlidingWindow<>(4, 2);
+        boolean result = instance.run(ITEMS, item -> {
+            int attempt = attempts.computeIfAbsent(item, i -> new AtomicInteger()).incrementAndGet();
+            if ((item == 2 || item == 5) && attempt == 1) {
+                return failed(new AnswerTimeoutException("timeout " + item));
+            }
+            return CompletableFuture.completedFuture(null);
+        }, listener);
+        assertTrue(result);
+        for (Integer item : ITEMS) {
+            assertEquals("attempts of " + item, item == 2 || item == 5 ? 2 : 1, attempts.get(item).get());
+        }
+        assertEquals(Arrays.asList(2, 5), listener.retransmitted);
+        assertEquals(ITEMS.size(), listener.completed.size());
+
+        // still no answer after all retransmissions
+        attempts.clear();
+        try {
+            new SlidingWindow<Integer>(4, 2).run(ITEMS, item -> {
+                attempts.computeIfAbsent(item, i -> new AtomicInteger()).incrementAndGet();
+                return item == 3 ? failed(new AnswerTimeoutException("timeout")) : CompletableFuture.completedFuture(null);
+            }, null);
+            fail("item 3 never answers");
+        } catch (AnswerTimeoutException expected) {
+        }
+        assertEquals(3, attempts.get(3).get());
+        assertEquals(1, attempts.get(4).get());
+    }
+
+    /**
+     * Test of a failure other than a timeout, of class SlidingWindow.
+     */
+    @Test
+    public void testFailure() {
+        System.out.println("failure");
+        RecordingListener listener = new RecordingListener();
+        KnxException nack = new KnxException("nack");
+        try {
+            new SlidingWindow<Integer>(1, 2).run(ITEMS, item -> item == 3 ? failed(nack) : CompletableFuture.completedFuture(null), listener);
+            fail("failure expected");
+        } catch (KnxException ex) {
+            assertSame(nack, ex);
+        }
+        assertEquals(Arrays.asList(1, 2, 3), listener.started);
+        assertTrue(listener.retransmitted.isEmpty());
+    }
+
+    /**
+     * Test of abort method, of class SlidingWindow.
+     */
+    @Test
+    public void testAbort() throws KnxException {
+        System.out.println("abort");
+        final SlidingWindow<Integer> instance = new SlidingWindow<>(1, 2);
+        RecordingListener listener = new RecordingListener() {
+            @Override
+            public void onCompleted(Integer item) {
+                super.onCompleted(item);
+                if (item == 2) {
+                    instance.abort();
+                }
+            }
+        };
+        assertFalse(instance.run(ITEMS, item -> CompletableFuture.completedFuture(null), listener));
+        assertEquals(Arrays.asList(1, 2), listener.started);
+        assertEquals(Arrays.asList(1, 2), listener.completed);
+    }
+
+    /**
+     * Test of the constructor with invalid values, of class SlidingWindow.
+     */
+    @Test
+    public void testInvalid() {
+        System.out.println("invalid");
+        try {
+            new SlidingWindow<Integer>(0, 2);
+            fail("windowSize 0");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            new SlidingWindow<Integer>(1, -1);
+            fail("maxRetransmissions -1");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.konnekting.mgnt.protocol0x00;
+
+import de.konnekting.mgnt.simulation.SimulatedDevice;
+import de.konnekting.mgnt.simulation.VirtualBus;
+import de.root1.slicknx.KnxException;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author achristian
+ */
+public class CollectPolicyTest {
+
+    /**
+     * Well below the 500ms collect timeout
+     */
+    private static final long EARLY = 300;
+
+    private static VirtualBus createBus(int deviceCount, int inProgMode) throws KnxException {
+        VirtualBus bus = new VirtualBus(42);
+        for (int i = 1; i <= deviceCount; i++) {
+            SimulatedDevice device = new SimulatedDevice("1.1." + i, 0xDEAD, (short) 1, (short) 1, 4, 4);
+            device.setProgMode(i <= inProgMode);
+            bus.addDevice(device);
+        }
+        return bus;
+    }
+
+    private static long millisSince(long start) {
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    /**
+     * Test of finishing as soon as the second device answered, of class
+     * CollectPolicy.
+     */
+    @Test
+    public void testMoreThanOne() throws KnxException {
+        System.out.println("moreThanOne");
+        VirtualBus bus = createBus(5, 3);
+        try (ProgProtocol0x00 protocol = ProgProtocol0x00.getInstance(bus)) {
+            long start = System.nanoTime();
+            assertFalse(protocol.onlyOneDeviceInProgMode());
+            assertTrue(millisSince(start) < EARLY);
+
+            start = System.nanoTime();
+            List<String> addresses = protocol.readIndividualAddress(CollectPolicy.count(2));
+            assertTrue(millisSince(start) < EARLY);
+            assertEquals(2, addresses.size());
+        } finally {
+            bus.shutdown();
+        }
+    }
+
+    /**
+     * Test of finishing with the first matching device, of class
+     * CollectPolicy.
+     */
+    @Test
+    public void testFirstMatch() throws KnxException {
+        System.out.println("firstMatch");
+        VirtualBus bus = createBus(5, 5);
+        try (ProgProtocol0x00 protocol = ProgProtocol0x00.getInstance(bus)) {
+            long start = System.nanoTime();
+            List<String> addresses = protocol.readProgrammingMode(CollectPolicy.firstMatch(address -> address.equals("1.1.4")));
+            assertTrue(millisSince(start) < EARLY);
+            assertTrue(addresses.contains("1.1.4"));
+        } finally {
+            bus.shutdown();
+        }
+    }
+
+    /**
+     * Test of the quiet period after the last answer, of class CollectPolicy.
+     */
+    @Test
+    public void testQuietPeriod() throws KnxException {
+        System.out.println("quietPeriod");
+        VirtualBus bus = createBus(3, 1);
+        try (ProgProtocol0x00 protocol = ProgProtocol0x00.getInstance(bus)) {
+            long start = System.nanoTime();
+            assertEquals(1, protocol.readIndividualAddress(false).size());
+            long full = millisSince(start);
+            assertTrue(full >= 450);
+
+            protocol.setQuietPeriod(50);
+            start = System.nanoTime();
+            assertTrue(protocol.onlyOneDeviceInProgMode());
+            assertTrue(millisSince(start) < EARLY);
+
+            // no answer at all still waits for the timeout
+            bus.getDevice("1.1.1").setProgMode(false);
+            start = System.nanoTime();
+            assertTrue(protocol.readIndividualAddress(false).isEmpty());
+            assertTrue(millisSince(start) >= 450);
+        } finally {
+            bus.shutdown();
+        }
+    }
+
+    /**
+     * Test of the quiet period learned from the answer times, of class
+     * CollectPolicy.
+     */
+    @Test
+    public void testLearnedQuietPeriod() throws KnxException {
+        System.out.println("learnedQuietPeriod");
+        VirtualBus bus = createBus(3, 1);
+        try (ProgProtocol0x00 protocol = ProgProtocol0x00.getInstance(bus)) {
+            assertEquals(ProgProtocol0x00.QUIET_PERIOD_AUTO, protocol.getQuietPeriod());
+            // nothing measured yet
+            long start = System.nanoTime();
+            assertTrue(protocol.onlyOneDeviceInProgMode());
+            assertTrue(millisSince(start) >= 450);
+
+            // single device finishes early
+            start = System.nanoTime();
+            assertTrue(protocol.onlyOneDeviceInProgMode());
+            assertTrue(millisSince(start) < EARLY);
+            start = System.nanoTime();
+            assertEquals(1, protocol.readIndividualAddress(false).size());
+            assertTrue(millisSince(start) < EARLY);
+
+            // a second device answering as fast is not missed
+            bus.getDevice("1.1.2").setProgMode(true);
+            assertFalse(protocol.onlyOneDeviceInProgMode());
+            assertEquals(2, protocol.readIndividualAddress(false).size());
+
+            // fixed value replaces the learned one
+            protocol.setQuietPeriod(0);
+            bus.getDevice("1.1.2").setProgMode(false);
+            start = System.nanoTime();
+            assertTrue(protocol.onlyOneDeviceInProgMode());
+            assertTrue(millisSince(start) >= 450);
+        } finally {
+            bus.shutdown();
+        }
+    }
+
+}
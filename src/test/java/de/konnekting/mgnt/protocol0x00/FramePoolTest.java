@@ -0,0 +1,85 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.konnekting.mgnt.protocol0x00;
+
+import static de.konnekting.mgnt.protocol0x00.ProgProtocol0x00.*;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author achristian
+ */
+public class FramePoolTest {
+
+    private static byte[] answerParameter(int id, byte value) {
+        byte[] data = new byte[Frame.LENGTH];
+        data[0] = PROTOCOL_VERSION;
+        data[1] = MSGTYPE_ANSWER_PARAMETER;
+        data[2] = (byte) id;
+        for (int i = 3; i < Frame.LENGTH; i++) {
+            data[i] = value;
+        }
+        return data;
+    }
+
+    /**
+     * Test of acquiring more frames than the pool holds, of class FramePool.
+     */
+    @Test
+    public void testExhaustion() {
+        System.out.println("exhaustion");
+        FramePool pool = new FramePool(2);
+        Frame first = pool.acquire();
+        Frame second = pool.acquire();
+        assertEquals(2, pool.getCreatedCount());
+
+        // pool is empty, a new frame is created
+        Frame third = pool.acquire();
+        assertNotNull(third);
+        assertNotSame(first, third);
+        assertNotSame(second, third);
+        assertEquals(3, pool.getCreatedCount());
+
+        // only 2 fit back into the pool, the third is dropped
+        pool.release(first);
+        pool.release(second);
+        pool.release(third);
+        Frame reused1 = pool.acquire();
+        Frame reused2 = pool.acquire();
+        assertTrue(reused1 == first || reused1 == second);
+        assertTrue(reused2 == first || reused2 == second);
+        assertEquals(3, pool.getCreatedCount());
+        pool.acquire();
+        assertEquals(4, pool.getCreatedCount());
+    }
+
+    /**
+     * Test that a message keeps its data after the frame has been reused, of
+     * class Frame.
+     */
+    @Test
+    public void testToMessage() {
+        System.out.println("toMessage");
+        FramePool pool = new FramePool(1);
+        Frame frame = pool.acquire().wrap(answerParameter(5, (byte) 0x11));
+        MsgAnswerParameter message = (MsgAnswerParameter) frame.toMessage();
+        pool.release(frame);
+
+        Frame recycled = pool.acquire();
+        assertSame(frame, recycled);
+        recycled.wrap(answerParameter(6, (byte) 0x22));
+        assertEquals(6, recycled.getId());
+
+        assertEquals(MSGTYPE_ANSWER_PARAMETER, message.getType());
+        byte[] value = message.getParamValue();
+        assertEquals(11, value.length);
+        for (byte b : value) {
+            assertEquals(0x11, b);
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.konnekting.mgnt.protocol0x00;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author achristian
+ */
+public class MpscRingBufferTest {
+
+    /**
+     * Test of capacity method, of class MpscRingBuffer.
+     */
+    @Test
+    public void testCapacity() {
+        System.out.println("capacity");
+        assertEquals(128, new MpscRingBuffer<Integer>(128).capacity());
+        assertEquals(256, new MpscRingBuffer<Integer>(129).capacity());
+        assertEquals(2, new MpscRingBuffer<Integer>(1).capacity());
+    }
+
+    /**
+     * Test of offer and poll methods, of class MpscRingBuffer.
+     */
+    @Test
+    public void testOfferPoll() {
+        System.out.println("offerPoll");
+        MpscRingBuffer<Integer> instance = new MpscRingBuffer<>(4);
+        assertNull(instance.poll());
+
+        // wrap around several times
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(instance.offer(i));
+            }
+            assertFalse("full", instance.offer(99));
+            assertEquals(4, instance.size());
+            for (int i = 0; i < 4; i++) {
+                assertEquals(Integer.valueOf(i), instance.poll());
+            }
+            assertTrue(instance.isEmpty());
+        }
+    }
+
+    /**
+     * Test of concurrent offers, of class MpscRingBuffer.
+     */
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        System.out.println("concurrentProducers");
+        final MpscRingBuffer<Long> instance = new MpscRingBuffer<>(16);
+        final int producers = 4;
+        final int count = 10000;
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            threads[p] = new Thread(() -> {
+                for (long i = 1; i <= count; i++) {
+                    while (!instance.offer(i)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            threads[p].start();
+        }
+
+        AtomicLong sum = new AtomicLong();
+        long received = 0;
+        while (received < (long) producers * count) {
+            Long value = instance.poll();
+            if (value != null) {
+                sum.addAndGet(value);
+                received++;
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals((long) producers * count * (count + 1) / 2, sum.get());
+        assertTrue(instance.isEmpty());
+    }
+
+}
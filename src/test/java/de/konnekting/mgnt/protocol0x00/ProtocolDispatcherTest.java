@@ -0,0 +1,296 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.konnekting.mgnt.protocol0x00;
+
+import de.konnekting.mgnt.DeviceInfo;
+import de.root1.slicknx.KnxException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author achristian
+ */
+public class ProtocolDispatcherTest {
+
+    /**
+     * Transport without bus: records sent telegrams, answers are injected by
+     * the test
+     */
+    private static class ScriptedTransport implements TelegramTransport {
+
+        private final List<byte[]> sent = new CopyOnWriteArrayList<>();
+        private volatile Receiver receiver;
+        private volatile int openCount;
+        private volatile boolean closed;
+
+        @Override
+        public void open(Receiver receiver) {
+            this.receiver = receiver;
+            openCount++;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        @Override
+        public void send(byte[] telegram) throws KnxException {
+            sent.add(telegram);
+        }
+
+        void answer(byte[] telegram) {
+            receiver.received(telegram);
+        }
+
+        /**
+         * Waits until given number of telegrams has been sent
+         */
+        void awaitSent(int count) throws InterruptedException {
+            for (int i = 0; i < 200 && sent.size() < count; i++) {
+                Thread.sleep(5);
+            }
+            assertEquals(count, sent.size());
+        }
+    }
+
+    private static byte[] ack(int index) {
+        byte[] data = new byte[Frame.LENGTH];
+        data[1] = ProgProtocol0x00.MSGTYPE_ACK;
+        data[2] = MsgAck.ACK;
+        data[4] = (byte) index;
+        return data;
+    }
+
+    private static byte[] deviceInfo(int address, int deviceId) {
+        byte[] data = new byte[Frame.LENGTH];
+        data[1] = ProgProtocol0x00.MSGTYPE_ANSWER_DEVICE_INFO;
+        data[2] = (byte) 0xde;
+        data[3] = (byte) 0xad;
+        data[4] = (byte) deviceId;
+        data[7] = (byte) (address >> 8);
+        data[8] = (byte) address;
+        return data;
+    }
+
+    private static byte[] programmingMode(int address) {
+        byte[] data = new byte[Frame.LENGTH];
+        data[1] = ProgProtocol0x00.MSGTYPE_ANSWER_PROGRAMMING_MODE;
+        data[2] = (byte) (address >> 8);
+        data[3] = (byte) address;
+        return data;
+    }
+
+    /**
+     * Waits a little, so that a wrongly matched answer would have completed
+     * the future
+     */
+    private static void assertPending(CompletableFuture<?> future) throws InterruptedException {
+        Thread.sleep(20);
+        assertFalse(future.isDone());
+    }
+
+    /**
+     * @return true if the protocol thread of the transport is still running
+     */
+    private static boolean isLoopRunning(TelegramTransport transport) throws InterruptedException {
+        String name = "ProtocolDispatcher-" + Integer.toHexString(System.identityHashCode(transport));
+        for (int i = 0; i < 200; i++) {
+            boolean found = false;
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                found |= thread.getName().equals(name);
+            }
+            if (!found) {
+                return false;
+            }
+            Thread.sleep(5);
+        }
+        return true;
+    }
+
+    private static ProgProtocol0x00 createProtocol(ScriptedTransport transport) {
+        ProgProtocol0x00 protocol = ProgProtocol0x00.getInstance(transport);
+        protocol.setRetryPolicy(RetryPolicy.NONE);
+        return protocol;
+    }
+
+    /**
+     * Test of ACKs correlated by their index, of class ProtocolDispatcher.
+     */
+    @Test
+    public void testAckByIndex() throws Exception {
+        System.out.println("ackByIndex");
+        ScriptedTransport transport = new ScriptedTransport();
+        try (ProgProtocol0x00 protocol = createProtocol(transport)) {
+            CompletableFuture<Void> first = protocol.writeParameterAsync((byte) 1, new byte[]{1});
+            CompletableFuture<Void> second = protocol.writeParameterAsync((byte) 2, new byte[]{2});
+            transport.awaitSent(2);
+
+            transport.answer(ack(2));
+            second.get(1, TimeUnit.SECONDS);
+            assertPending(first);
+
+            transport.answer(ack(1));
+            first.get(1, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Test of answers with an index preferring the exact request over one
+     * accepting any index, of class ProtocolDispatcher.
+     */
+    @Test
+    public void testExactBeforeWildcard() throws Exception {
+        System.out.println("exactBeforeWildcard");
+        ScriptedTransport transport = new ScriptedTransport();
+        try (ProgProtocol0x00 protocol = createProtocol(transport)) {
+            // ACK of programming mode carries no index, request accepts any
+            CompletableFuture<Void> progMode = protocol.writeProgrammingModeAsync("1.1.1", true);
+            CompletableFuture<Void> parameter = protocol.writeParameterAsync((byte) 5, new byte[]{5});
+            transport.awaitSent(2);
+
+            transport.answer(ack(5));
+            parameter.get(1, TimeUnit.SECONDS);
+            assertPending(progMode);
+
+            // no exact request for index 7, falls back to the wildcard
+            transport.answer(ack(7));
+            progMode.get(1, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Test of device info answers matched by the address of the device, of
+     * class ProtocolDispatcher.
+     */
+    @Test
+    public void testDeviceInfoByAddress() throws Exception {
+        System.out.println("deviceInfoByAddress");
+        ScriptedTransport transport = new ScriptedTransport();
+        try (ProgProtocol0x00 protocol = createProtocol(transport)) {
+            CompletableFuture<DeviceInfo> first = protocol.readDeviceInfoAsync("1.1.1");
+            CompletableFuture<DeviceInfo> second = protocol.readDeviceInfoAsync("1.1.2");
+            transport.awaitSent(2);
+
+            transport.answer(deviceInfo(0x1102, 2));
+            assertEquals(2, second.get(1, TimeUnit.SECONDS).getDeviceId());
+            assertPending(first);
+
+            transport.answer(deviceInfo(0x1101, 1));
+            assertEquals(1, first.get(1, TimeUnit.SECONDS).getDeviceId());
+        }
+    }
+
+    /**
+     * Test of answers nobody waits for, of class ProtocolDispatcher.
+     */
+    @Test
+    public void testStale() throws Exception {
+        System.out.println("stale");
+        ScriptedTransport transport = new ScriptedTransport();
+        try (ProgProtocol0x00 protocol = createProtocol(transport)) {
+            CompletableFuture<Void> parameter = protocol.writeParameterAsync((byte) 1, new byte[]{1});
+            CompletableFuture<DeviceInfo> info = protocol.readDeviceInfoAsync("1.1.1");
+            transport.awaitSent(2);
+
+            // ACK of another parameter, device info of another device
+            transport.answer(ack(9));
+            transport.answer(deviceInfo(0x1105, 5));
+            assertPending(parameter);
+            assertPending(info);
+            assertEquals(2, protocol.getMetrics().getStaleCount());
+
+            // unknown message type
+            byte[] unknown = new byte[Frame.LENGTH];
+            unknown[1] = (byte) 0x7f;
+            transport.answer(unknown);
+            assertPending(parameter);
+            assertEquals(1, protocol.getMetrics().getUnknownCount());
+
+            transport.answer(ack(1));
+            parameter.get(1, TimeUnit.SECONDS);
+            transport.answer(deviceInfo(0x1101, 1));
+            assertEquals(1, info.get(1, TimeUnit.SECONDS).getDeviceId());
+        }
+    }
+
+    /**
+     * Test of protocols sharing one dispatcher and releasing it, of class
+     * ProtocolDispatcher.
+     */
+    @Test
+    public void testRelease() throws Exception {
+        System.out.println("release");
+        ScriptedTransport transport = new ScriptedTransport();
+        ProgProtocol0x00 first = createProtocol(transport);
+        ProgProtocol0x00 second = createProtocol(transport);
+        assertTrue(first.isSameConnection(second));
+        assertEquals(1, transport.openCount);
+
+        // releasing one keeps the other working
+        first.close();
+        assertFalse(transport.closed);
+        CompletableFuture<Void> written = second.writeParameterAsync((byte) 1, new byte[]{1});
+        transport.awaitSent(1);
+        transport.answer(ack(1));
+        written.get(1, TimeUnit.SECONDS);
+        try {
+            first.writeParameterAsync((byte) 2, new byte[]{2}).get(1, TimeUnit.SECONDS);
+            fail("first has been closed");
+        } catch (ExecutionException expected) {
+        }
+
+        // releasing the last one fails what is still waiting
+        CompletableFuture<Void> pending = second.writeParameterAsync((byte) 3, new byte[]{3});
+        transport.awaitSent(2);
+        second.close();
+        try {
+            pending.get(1, TimeUnit.SECONDS);
+            fail("protocol has been closed");
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof KnxException);
+            assertTrue(expected.getCause().getMessage().contains("closed"));
+        }
+        assertTrue(transport.closed);
+        assertFalse(isLoopRunning(transport));
+
+        // next instance gets a new dispatcher
+        try (ProgProtocol0x00 third = createProtocol(transport)) {
+            assertFalse(third.isSameConnection(second));
+            assertEquals(2, transport.openCount);
+        }
+    }
+
+    /**
+     * Test that the query of the fast start ends as soon as the device
+     * answered itself, of class ProtocolDispatcher.
+     */
+    @Test
+    public void testFastStartQuery() throws Exception {
+        System.out.println("fastStartQuery");
+        ScriptedTransport transport = new ScriptedTransport();
+        try (ProgProtocol0x00 protocol = createProtocol(transport)) {
+            CompletableFuture<DeviceInfo> info = protocol.enterProgrammingModeAsync("1.1.1");
+            transport.awaitSent(3);
+            transport.answer(ack(MsgAck.NO_INDEX));
+            transport.answer(programmingMode(0x1101));
+            transport.answer(deviceInfo(0x1101, 1));
+            assertEquals(1, info.get(1, TimeUnit.SECONDS).getDeviceId());
+
+            // query is over, a late answer is not collected anymore
+            transport.answer(programmingMode(0x1102));
+            Thread.sleep(20);
+            assertEquals(1, protocol.getMetrics().getStaleCount());
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.konnekting.mgnt.protocol0x00;
+
+import de.konnekting.mgnt.KonnektingManagement;
+import de.konnekting.mgnt.simulation.SimulatedDevice;
+import de.konnekting.mgnt.simulation.VirtualBus;
+import de.root1.slicknx.KnxException;
+import java.io.StringWriter;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author achristian
+ */
+public class ProtocolMetricsTest {
+
+    /**
+     * Test of percentile estimation, of class LatencyHistogram.
+     */
+    @Test
+    public void testHistogram() {
+        System.out.println("histogram");
+        LatencyHistogram instance = new LatencyHistogram();
+        assertEquals(0, instance.getPercentile(50), 0);
+        for (int i = 0; i < 98; i++) {
+            instance.record(15000000); // 15ms
+        }
+        instance.record(300000000); // 300ms
+        instance.record(7000000000L); // 7s
+        assertEquals(100, instance.getCount());
+        assertEquals(20, instance.getPercentile(50), 0);
+        assertEquals(500, instance.getPercentile(99), 0);
+        assertEquals(7000, instance.getPercentile(100), 0);
+        assertEquals(7000, instance.getMax(), 0);
+    }
+
+    /**
+     * Test of metrics collected while programming a simulated device.
+     */
+    @Test
+    public void testMetrics() throws KnxException {
+        System.out.println("metrics");
+        VirtualBus bus = new VirtualBus(42);
+        bus.addDevice(new SimulatedDevice("1.1.5", 0xDEAD, (short) 1, (short) 2, 4, 4));
+        try (KonnektingManagement mgt = new KonnektingManagement(bus)) {
+            mgt.startProgramming("1.1.5", 0xDEAD, (short) 1, (short) 2);
+            mgt.writeParameter((short) 1, new byte[]{0x01});
+            mgt.writeParameter((short) 2, new byte[]{0x02});
+            try {
+                mgt.writeParameter((short) 10, new byte[]{0x03});
+                fail("NACK expected");
+            } catch (KnxException ex) {
+                // expected
+            }
+            mgt.stopProgramming();
+
+            ProtocolMetrics metrics = mgt.getMetrics();
+            assertEquals(3, metrics.getLatency(ProgProtocol0x00.MSGTYPE_WRITE_PARAMETER).getCount());
+            assertEquals(1, metrics.getNackCount(SimulatedDevice.ERROR_INVALID_PARAMETER));
+            assertEquals(0, metrics.getStaleCount());
+            assertEquals(0, metrics.getTimeoutCount(ProgProtocol0x00.MSGTYPE_WRITE_PARAMETER));
+            assertTrue(metrics.getSentCount() >= 7);
+
+            MetricsSnapshot snapshot = metrics.snapshot();
+            assertEquals(3, snapshot.getLatencyByType().get("WRITE_PARAMETER").getCount());
+            assertTrue(snapshot.getLatencyByDevice().containsKey("1.1.5"));
+            assertEquals(Long.valueOf(1), snapshot.getNacksByErrorCode().get(1));
+
+            StringWriter out = new StringWriter();
+            metrics.addExporter(new WriterMetricsExporter(out, true));
+            metrics.export();
+            assertTrue(out.toString().startsWith("{\"timestamp\":"));
+            assertTrue(out.toString().contains("\"WRITE_PARAMETER\":{\"count\":3,"));
+        } finally {
+            bus.shutdown();
+        }
+    }
+
+}
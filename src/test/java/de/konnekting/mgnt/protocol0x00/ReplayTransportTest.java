@@ -0,0 +1,79 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.konnekting.mgnt.protocol0x00;
+
+import de.root1.slicknx.KnxException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author achristian
+ */
+public class ReplayTransportTest {
+
+    private static byte[] ack(int index) {
+        byte[] data = new byte[14];
+        data[1] = ProgProtocol0x00.MSGTYPE_ACK;
+        data[2] = MsgAck.ACK;
+        data[4] = (byte) index;
+        return data;
+    }
+
+    private static List<TelegramJournal.Record> recordSession() {
+        List<TelegramJournal.Record> records = new ArrayList<>();
+        long time = 1000;
+        for (int i = 0; i < 3; i++) {
+            records.add(new TelegramJournal.Record(time, true, new MsgWriteParameter((byte) i, new byte[]{(byte) i}).data));
+            records.add(new TelegramJournal.Record(time + 20, false, ack(i)));
+            time += 100;
+        }
+        return records;
+    }
+
+    /**
+     * Test of replaying the recorded writes, of class ReplayTransport.
+     */
+    @Test
+    public void testReplay() throws KnxException {
+        System.out.println("replay");
+        ReplayTransport transport = new ReplayTransport(recordSession(), 0.5);
+        try (ProgProtocol0x00 protocol = ProgProtocol0x00.getInstance(transport)) {
+            for (int i = 0; i < 3; i++) {
+                protocol.writeParameter((byte) i, new byte[]{(byte) i});
+            }
+        }
+        assertTrue(transport.isComplete());
+        assertFalse(transport.isDiverged());
+        assertEquals(3, transport.getReplayedCount());
+    }
+
+    /**
+     * Test of a session writing something else than recorded, of class
+     * ReplayTransport.
+     */
+    @Test
+    public void testDiverged() throws KnxException {
+        System.out.println("diverged");
+        ReplayTransport transport = new ReplayTransport(recordSession(), 0);
+        try (ProgProtocol0x00 protocol = ProgProtocol0x00.getInstance(transport)) {
+            // each retry would be one more mismatch
+            protocol.setRetryPolicy(RetryPolicy.NONE);
+            protocol.writeParameter((byte) 0, new byte[]{0});
+            try {
+                protocol.writeParameter((byte) 1, new byte[]{42});
+                fail("no answer expected after divergence");
+            } catch (AnswerTimeoutException expected) {
+            }
+        }
+        assertFalse(transport.isComplete());
+        assertTrue(transport.isDiverged());
+        assertEquals(1, transport.getMismatches().size());
+    }
+
+}
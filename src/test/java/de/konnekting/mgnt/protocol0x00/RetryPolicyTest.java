@@ -0,0 +1,191 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.konnekting.mgnt.protocol0x00;
+
+import de.konnekting.mgnt.simulation.SimulatedDevice;
+import de.konnekting.mgnt.simulation.VirtualBus;
+import de.root1.slicknx.KnxException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author achristian
+ */
+public class RetryPolicyTest {
+
+    /**
+     * Bus which swallows a number of ACKs and counts sent requests
+     */
+    private static class LossyTransport implements TelegramTransport {
+
+        private final VirtualBus bus;
+        private final AtomicInteger acksToDrop;
+        private final AtomicInteger sent = new AtomicInteger();
+
+        LossyTransport(VirtualBus bus, int acksToDrop) {
+            this.bus = bus;
+            this.acksToDrop = new AtomicInteger(acksToDrop);
+        }
+
+        @Override
+        public void open(Receiver receiver) {
+            bus.open(telegram -> {
+                if (telegram[1] != ProgProtocol0x00.MSGTYPE_ACK || acksToDrop.getAndDecrement() <= 0) {
+                    receiver.received(telegram);
+                }
+            });
+        }
+
+        @Override
+        public void close() {
+            bus.close();
+        }
+
+        @Override
+        public void send(byte[] telegram) throws KnxException {
+            sent.incrementAndGet();
+            bus.send(telegram);
+        }
+    }
+
+    private static VirtualBus createBus() throws KnxException {
+        VirtualBus bus = new VirtualBus(42);
+        SimulatedDevice device = new SimulatedDevice("1.1.1", 0xDEAD, (short) 1, (short) 2, 4, 4);
+        device.setProgMode(true);
+        bus.addDevice(device);
+        return bus;
+    }
+
+    /**
+     * Test of getBackoff method, of class RetryPolicy.
+     */
+    @Test
+    public void testBackoff() {
+        System.out.println("backoff");
+        RetryPolicy instance = new RetryPolicy(5, 100, 400, 0);
+        assertEquals(100, instance.getBackoff(1));
+        assertEquals(200, instance.getBackoff(2));
+        assertEquals(400, instance.getBackoff(3));
+        assertEquals(400, instance.getBackoff(4));
+
+        instance = new RetryPolicy(5, 100, 400, 0.5);
+        for (int i = 0; i < 100; i++) {
+            long backoff = instance.getBackoff(1);
+            assertTrue("backoff out of jitter range: " + backoff, backoff >= 50 && backoff <= 150);
+        }
+    }
+
+    /**
+     * Test of a parameter write whose first ACK got lost.
+     */
+    @Test
+    public void testRetryAfterTimeout() throws KnxException {
+        System.out.println("retryAfterTimeout");
+        VirtualBus bus = createBus();
+        LossyTransport transport = new LossyTransport(bus, 1);
+        try (ProgProtocol0x00 protocol = ProgProtocol0x00.getInstance(transport)) {
+            protocol.setRetryPolicy(new RetryPolicy(2, 10, 100, 0));
+            protocol.writeParameter((byte) 2, new byte[]{0x42});
+            assertEquals(2, transport.sent.get());
+            assertEquals(1, protocol.getMetrics().getRetryCount());
+        } finally {
+            bus.shutdown();
+        }
+        assertEquals(0x42, bus.getDevice("1.1.1").getParameter(2)[0]);
+    }
+
+    /**
+     * Test that the answer to a retry is not measured (Karn's algorithm): it
+     * may be the late answer of the first attempt.
+     */
+    @Test
+    public void testRetransmissionNotMeasured() throws KnxException {
+        System.out.println("retransmissionNotMeasured");
+        VirtualBus bus = createBus();
+        LossyTransport transport = new LossyTransport(bus, 0);
+        try (ProgProtocol0x00 protocol = ProgProtocol0x00.getInstance(transport)) {
+            protocol.setRetryPolicy(new RetryPolicy(2, 10, 100, 0));
+            protocol.writeProgrammingMode("1.1.1", true);
+            RttEstimator estimator = protocol.getTimeoutProfile("1.1.1").getEstimator(ProgProtocol0x00.MSGTYPE_WRITE_PARAMETER, 500);
+            estimator.restore(100, 25);
+            assertEquals(200, estimator.getTimeout());
+
+            transport.acksToDrop.set(1);
+            protocol.writeParameter((byte) 2, new byte[]{0x42});
+            assertEquals(1, protocol.getMetrics().getRetryCount());
+            assertEquals(0, estimator.getSampleCount());
+            // backoff is kept until a first attempt is answered
+            assertEquals(400, estimator.getTimeout());
+
+            protocol.writeParameter((byte) 2, new byte[]{0x43});
+            assertEquals(1, estimator.getSampleCount());
+            assertTrue(estimator.getTimeout() < 400);
+        } finally {
+            bus.shutdown();
+        }
+    }
+
+    /**
+     * Test of NACKs, only retried for configured error codes.
+     */
+    @Test
+    public void testNack() throws KnxException {
+        System.out.println("nack");
+        VirtualBus bus = createBus();
+        LossyTransport transport = new LossyTransport(bus, 0);
+        try (ProgProtocol0x00 protocol = ProgProtocol0x00.getInstance(transport)) {
+            try {
+                protocol.writeParameter((byte) 10, new byte[]{0x01});
+                fail("NACK expected");
+            } catch (NackException ex) {
+                assertEquals(SimulatedDevice.ERROR_INVALID_PARAMETER, ex.getErrorCode());
+            }
+            assertEquals(1, transport.sent.get());
+
+            protocol.setRetryPolicy(new RetryPolicy(2, 10, 100, 0, SimulatedDevice.ERROR_INVALID_PARAMETER));
+            try {
+                protocol.writeParameter((byte) 10, new byte[]{0x01});
+                fail("NACK expected");
+            } catch (NackException ex) {
+                assertEquals(SimulatedDevice.ERROR_INVALID_PARAMETER, ex.getErrorCode());
+            }
+            assertEquals(4, transport.sent.get());
+        } finally {
+            bus.shutdown();
+        }
+    }
+
+    /**
+     * Test that writing the individual address is not repeated.
+     */
+    @Test
+    public void testNotIdempotent() throws KnxException {
+        System.out.println("notIdempotent");
+        assertFalse(RetryPolicy.isIdempotent(ProgProtocol0x00.MSGTYPE_RESTART));
+        assertFalse(RetryPolicy.isIdempotent(ProgProtocol0x00.MSGTYPE_WRITE_INDIVIDUAL_ADDRESS));
+        assertTrue(RetryPolicy.isIdempotent(ProgProtocol0x00.MSGTYPE_WRITE_COM_OBJECT));
+
+        VirtualBus bus = createBus();
+        LossyTransport transport = new LossyTransport(bus, 100);
+        try (ProgProtocol0x00 protocol = ProgProtocol0x00.getInstance(transport)) {
+            protocol.setRetryPolicy(new RetryPolicy(2, 10, 100, 0));
+            try {
+                protocol.writeIndividualAddress("1.1.1");
+                fail("timeout expected");
+            } catch (AnswerTimeoutException ex) {
+                // expected
+            }
+            // read individual address, write individual address
+            assertEquals(2, transport.sent.get());
+            assertEquals(0, protocol.getMetrics().getRetryCount());
+        } finally {
+            bus.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.konnekting.mgnt.protocol0x00;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author achristian
+ */
+public class RttEstimatorTest {
+
+    /**
+     * Test of getTimeout method without samples, of class RttEstimator.
+     */
+    @Test
+    public void testInitialTimeout() {
+        System.out.println("initialTimeout");
+        RttEstimator instance = new RttEstimator(500, 30, 5000);
+        assertFalse(instance.hasEstimate());
+        assertEquals(500, instance.getTimeout());
+    }
+
+    /**
+     * Test of sample method, of class RttEstimator.
+     */
+    @Test
+    public void testSample() {
+        System.out.println("sample");
+        RttEstimator instance = new RttEstimator(500, 30, 5000);
+
+        // first sample: srtt=rtt, rttvar=rtt/2 --> 20 + 4*10
+        instance.sample(20);
+        assertEquals(60, instance.getTimeout());
+
+        // constant rtt lets variance decay down to the granularity bound
+        for (int i = 0; i < 100; i++) {
+            instance.sample(20);
+        }
+        assertEquals(20, instance.getSmoothedRtt(), 0.01);
+        assertEquals(30, instance.getTimeout());
+    }
+
+    /**
+     * Test of timeout bounds, of class RttEstimator.
+     */
+    @Test
+    public void testBounds() {
+        System.out.println("bounds");
+        RttEstimator instance = new RttEstimator(500, 30, 5000);
+
+        instance.sample(1);
+        for (int i = 0; i < 100; i++) {
+            instance.sample(1);
+        }
+        assertEquals("min timeout failed", 30, instance.getTimeout());
+
+        instance.sample(40000);
+        assertEquals("max timeout failed", 5000, instance.getTimeout());
+    }
+
+    /**
+     * Test of timedOut method, of class RttEstimator.
+     */
+    @Test
+    public void testTimedOut() {
+        System.out.println("timedOut");
+        RttEstimator instance = new RttEstimator(100, 30, 5000);
+
+        instance.timedOut();
+        assertEquals(200, instance.getTimeout());
+        instance.timedOut();
+        assertEquals(400, instance.getTimeout());
+
+        // answer resets backoff
+        instance.sample(20);
+        assertEquals(60, instance.getTimeout());
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.konnekting.mgnt.protocol0x00;
+
+import de.root1.slicknx.KnxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author achristian
+ */
+public class SendSchedulerTest {
+
+    private static class NullTransport implements TelegramTransport {
+
+        @Override
+        public void open(Receiver receiver) {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void send(byte[] telegram) throws KnxException {
+        }
+    }
+
+    /**
+     * Test that every telegram sent while stopping is completed, of class
+     * SendScheduler.
+     */
+    @Test
+    public void testStop() throws Exception {
+        System.out.println("stop");
+        for (int round = 0; round < 100; round++) {
+            final SendScheduler instance = new SendScheduler(new NullTransport(), "SendSchedulerTest");
+            instance.setTelegramsPerSecond(1000000);
+            final List<CompletableFuture<Void>> futures = new CopyOnWriteArrayList<>();
+            List<Thread> senders = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                Thread sender = new Thread(() -> {
+                    // keep sending until the stop is noticed
+                    CompletableFuture<Void> future;
+                    do {
+                        future = instance.send(new byte[Frame.LENGTH], SendScheduler.Priority.BULK);
+                        futures.add(future);
+                    } while (!future.isCompletedExceptionally());
+                });
+                sender.start();
+                senders.add(sender);
+            }
+            Thread.sleep(1);
+            instance.stop();
+            for (Thread sender : senders) {
+                sender.join();
+            }
+            for (CompletableFuture<Void> future : futures) {
+                try {
+                    future.get(1, TimeUnit.SECONDS);
+                } catch (ExecutionException expected) {
+                    assertTrue(expected.getCause() instanceof KnxException);
+                }
+            }
+        }
+    }
+
+}
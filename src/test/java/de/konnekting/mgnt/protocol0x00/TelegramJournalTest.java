@@ -0,0 +1,119 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.konnekting.mgnt.protocol0x00;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author achristian
+ */
+public class TelegramJournalTest {
+
+    /**
+     * three records per file
+     */
+    private static final int FILE_SIZE = TelegramJournal.HEADER_SIZE + 3 * TelegramJournal.RECORD_SIZE;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] telegram(int n) {
+        return new MsgWriteParameter((byte) n, new byte[]{(byte) n}).data;
+    }
+
+    private static void record(TelegramJournal journal, int from, int to) {
+        for (int n = from; n < to; n++) {
+            journal.record(n % 2 == 0 ? TelegramJournal.SENT : TelegramJournal.RECEIVED, telegram(n));
+        }
+    }
+
+    private static void assertRecords(List<TelegramJournal.Record> records, int from, int to) {
+        assertEquals(to - from, records.size());
+        for (int n = from; n < to; n++) {
+            TelegramJournal.Record record = records.get(n - from);
+            assertEquals(n % 2 == 0, record.isSent());
+            assertArrayEquals(telegram(n), record.getTelegram());
+        }
+    }
+
+    /**
+     * Test of writing, rotating and reading back, of class TelegramJournal.
+     */
+    @Test
+    public void testRead() throws IOException {
+        System.out.println("read");
+        File dir = folder.newFolder("journal");
+        try (TelegramJournal journal = new TelegramJournal(dir, FILE_SIZE, 10)) {
+            record(journal, 0, 7);
+            assertEquals(7, journal.getRecordCount());
+            assertEquals(0, journal.getLostCount());
+        }
+        File[] files = TelegramJournal.listFiles(dir);
+        assertEquals(3, files.length);
+        assertRecords(TelegramJournal.read(dir), 0, 7);
+        // single file
+        assertRecords(TelegramJournal.read(files[2]), 6, 7);
+    }
+
+    /**
+     * Test of deleting the oldest files, of class TelegramJournal.
+     */
+    @Test
+    public void testMaxFiles() throws IOException {
+        System.out.println("maxFiles");
+        File dir = folder.newFolder("journal");
+        try (TelegramJournal journal = new TelegramJournal(dir, FILE_SIZE, 2)) {
+            record(journal, 0, 10);
+        }
+        assertEquals(2, TelegramJournal.listFiles(dir).length);
+        // files of records 6-8 and 9
+        assertRecords(TelegramJournal.read(dir), 6, 10);
+    }
+
+    /**
+     * Test of continuing a journal after a restart, of class TelegramJournal.
+     */
+    @Test
+    public void testRestart() throws IOException {
+        System.out.println("restart");
+        File dir = folder.newFolder("journal");
+        try (TelegramJournal journal = new TelegramJournal(dir, FILE_SIZE, 3)) {
+            record(journal, 0, 4);
+        }
+        try (TelegramJournal journal = new TelegramJournal(dir, FILE_SIZE, 3)) {
+            record(journal, 4, 6);
+        }
+        File[] files = TelegramJournal.listFiles(dir);
+        assertEquals(3, files.length);
+        assertTrue(files[2].getName().endsWith("00000003" + TelegramJournal.FILE_SUFFIX));
+        assertRecords(TelegramJournal.read(dir), 0, 6);
+    }
+
+    /**
+     * Test of reading something else than a journal, of class
+     * TelegramJournal.
+     */
+    @Test
+    public void testNoJournal() throws IOException {
+        System.out.println("noJournal");
+        File file = folder.newFile("other.ktj");
+        Files.write(file.toPath(), "no journal".getBytes("UTF-8"));
+        try {
+            TelegramJournal.read(file);
+            fail("no journal");
+        } catch (IOException expected) {
+        }
+    }
+
+}
@@ -0,0 +1,223 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.konnekting.mgnt.simulation;
+
+import de.konnekting.mgnt.ComObject;
+import de.konnekting.mgnt.KonnektingManagement;
+import de.root1.slicknx.KnxException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author achristian
+ */
+public class VirtualBusTest {
+
+    private static final int MANUFACTURER = 0xDEAD;
+    private static final short DEVICE = 1;
+    private static final short REVISION = 2;
+
+    private static VirtualBus createBus(int deviceCount) throws KnxException {
+        VirtualBus bus = new VirtualBus(42);
+        for (int i = 1; i <= deviceCount; i++) {
+            bus.addDevice(new SimulatedDevice("1.1." + i, MANUFACTURER, DEVICE, REVISION, 16, 8));
+        }
+        return bus;
+    }
+
+    /**
+     * Test of programming one of many devices via the virtual bus.
+     */
+    @Test
+    public void testProgramming() throws KnxException {
+        System.out.println("programming");
+        VirtualBus bus = createBus(200);
+        try (KonnektingManagement mgt = new KonnektingManagement(bus)) {
+            mgt.startProgramming("1.1.100", MANUFACTURER, DEVICE, REVISION);
+            mgt.writeParameter((short) 3, new byte[]{0x12, 0x34});
+            mgt.writeComObject(new ComObject((byte) 5, "1/2/3"));
+            mgt.stopProgramming();
+        } finally {
+            bus.shutdown();
+        }
+        SimulatedDevice device = bus.getDevice("1.1.100");
+        assertEquals(0x12, device.getParameter(3)[0]);
+        assertEquals(0x34, device.getParameter(3)[1]);
+        assertEquals((1 << 11) | (2 << 8) | 3, device.getComObjectAddress(5));
+        assertTrue(device.isComObjectActive(5));
+        assertFalse(device.isProgMode());
+        // other devices untouched
+        assertEquals(0, bus.getDevice("1.1.99").getParameter(3)[0]);
+    }
+
+    /**
+     * Test of the fast start of programming.
+     */
+    @Test
+    public void testFastStart() throws KnxException {
+        System.out.println("fastStart");
+        VirtualBus bus = createBus(3);
+        try (KonnektingManagement mgt = new KonnektingManagement(bus)) {
+            mgt.setFastStart(true);
+            mgt.startProgramming("1.1.2", MANUFACTURER, DEVICE, REVISION);
+            mgt.writeParameter((short) 1, new byte[]{0x42});
+            mgt.stopProgramming();
+            assertEquals(0x42, bus.getDevice("1.1.2").getParameter(1)[0]);
+
+            try {
+                mgt.startProgramming("1.1.2", MANUFACTURER, DEVICE, (short) (REVISION + 1));
+                fail("revision does not match");
+            } catch (KnxException expected) {
+            }
+
+            // another device in prog mode fails without waiting for the timeout
+            bus.getDevice("1.1.3").setProgMode(true);
+            long start = System.currentTimeMillis();
+            try {
+                mgt.startProgramming("1.1.1", MANUFACTURER, DEVICE, REVISION);
+                fail("1.1.3 is in programming mode too");
+            } catch (KnxException expected) {
+                assertTrue(expected.getMessage().contains("1.1.3"));
+            }
+            assertTrue(System.currentTimeMillis() - start < 300);
+        } finally {
+            bus.shutdown();
+        }
+    }
+
+    /**
+     * Test that the fast start saves at least one answer window per device.
+     */
+    @Test
+    public void testFastStartTime() throws KnxException {
+        System.out.println("fastStartTime");
+        VirtualBus bus = createBus(3);
+        try (KonnektingManagement mgt = new KonnektingManagement(bus)) {
+            long start = System.nanoTime();
+            mgt.startProgramming("1.1.2", MANUFACTURER, DEVICE, REVISION);
+            mgt.stopProgramming();
+            long normal = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            mgt.setFastStart(true);
+            start = System.nanoTime();
+            mgt.startProgramming("1.1.2", MANUFACTURER, DEVICE, REVISION);
+            mgt.stopProgramming();
+            long fast = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            // answer window of the programming mode query: 500ms
+            assertTrue("normal " + normal + "ms, fast " + fast + "ms", normal - fast >= 400);
+        } finally {
+            bus.shutdown();
+        }
+    }
+
+    /**
+     * Test of NACK for a parameter the device does not have.
+     */
+    @Test
+    public void testNack() throws KnxException {
+        System.out.println("nack");
+        VirtualBus bus = createBus(1);
+        try (KonnektingManagement mgt = new KonnektingManagement(bus)) {
+            mgt.startProgramming("1.1.1", MANUFACTURER, DEVICE, REVISION);
+            try {
+                mgt.writeParameter((short) 20, new byte[]{1});
+                fail("parameter 20 does not exist");
+            } catch (KnxException expected) {
+            }
+        } finally {
+            bus.shutdown();
+        }
+    }
+
+    /**
+     * Test of writing the individual address to the device with pressed
+     * programming button.
+     */
+    @Test
+    public void testWriteIndividualAddress() throws KnxException {
+        System.out.println("writeIndividualAddress");
+        VirtualBus bus = createBus(3);
+        bus.getDevice("1.1.2").setProgMode(true);
+        try (KonnektingManagement mgt = new KonnektingManagement(bus)) {
+            List<String> inProgMode = mgt.readIndividualAddress(false);
+            assertEquals(1, inProgMode.size());
+            assertEquals("1.1.2", inProgMode.get(0));
+            mgt.writeIndividualAddress("1.1.20");
+        } finally {
+            bus.shutdown();
+        }
+        assertNotNull(bus.getDevice("1.1.20"));
+        assertNull(bus.getDevice("1.1.2"));
+    }
+
+    /**
+     * Test of writing the individual address as soon as the programming
+     * button is pressed.
+     */
+    @Test
+    public void testProgrammingButton() throws Exception {
+        System.out.println("programmingButton");
+        final VirtualBus bus = createBus(3);
+        try (KonnektingManagement mgt = new KonnektingManagement(bus)) {
+            Thread installer = new Thread(() -> {
+                try {
+                    Thread.sleep(700);
+                } catch (InterruptedException ex) {
+                }
+                bus.getDevice("1.1.3").setProgMode(true);
+            });
+            installer.start();
+            long start = System.currentTimeMillis();
+            mgt.writeIndividualAddress("1.1.30", 5000);
+            long elapsed = System.currentTimeMillis() - start;
+            // detected with the next query, then the rest of the answer window
+            assertTrue("took " + elapsed + "ms", elapsed < 700 + 1000 + 600);
+            installer.join();
+            bus.getDevice("1.1.30").setProgMode(false);
+
+            try {
+                start = System.currentTimeMillis();
+                mgt.writeIndividualAddress("1.1.40", 300);
+                fail("no device in prog mode");
+            } catch (KnxException expected) {
+                assertTrue(System.currentTimeMillis() - start < 1000);
+            }
+        } finally {
+            bus.shutdown();
+        }
+        assertNotNull(bus.getDevice("1.1.30"));
+    }
+
+    /**
+     * Test of duplicated answers, which must not confuse the protocol.
+     */
+    @Test
+    public void testDuplicates() throws KnxException {
+        System.out.println("duplicates");
+        VirtualBus bus = createBus(1);
+        SimulatedDevice device = bus.getDevice("1.1.1");
+        device.setDuplicateRate(1.0);
+        device.setLatency(5, 5);
+        try (KonnektingManagement mgt = new KonnektingManagement(bus)) {
+            mgt.startProgramming("1.1.1", MANUFACTURER, DEVICE, REVISION);
+            for (short id = 0; id < 16; id++) {
+                mgt.writeParameter(id, new byte[]{(byte) id});
+            }
+            mgt.stopProgramming();
+        } finally {
+            bus.shutdown();
+        }
+        for (int id = 0; id < 16; id++) {
+            assertEquals(id, device.getParameter(id)[0]);
+        }
+        assertTrue(bus.getDuplicateCount() > 0);
+    }
+
+}